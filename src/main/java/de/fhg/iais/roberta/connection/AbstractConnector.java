@@ -2,6 +2,13 @@ package de.fhg.iais.roberta.connection;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 import org.json.JSONObject;
 import org.slf4j.Logger;
@@ -13,14 +20,21 @@ import de.fhg.iais.roberta.util.PropertyHelper;
 public abstract class AbstractConnector<T extends IRobot> implements IConnector<T> {
     private static final Logger LOG = LoggerFactory.getLogger(AbstractConnector.class);
 
+    /**
+     * Poll interval for states that do not need to run again until the state changes.
+     */
+    protected static final long WAIT_FOR_TRANSITION = -1L;
+
     private final Collection<IOraListener<State>> listeners = new ArrayList<>();
+    private final BlockingQueue<State> transitions = new LinkedBlockingQueue<>();
+    private final Queue<Runnable> completions = new ConcurrentLinkedQueue<>();
 
     private final String defaultServerAddress;
     protected final ServerCommunicator serverCommunicator;
 
     protected JSONObject brickData = null;
 
-    protected State state = State.DISCOVER; // First state when program starts
+    protected volatile State state = State.DISCOVER; // First state when program starts
     protected String token = "";
     protected T robot;
 
@@ -32,34 +46,96 @@ public abstract class AbstractConnector<T extends IRobot> implements IConnector<
         this.robot = robot;
     }
 
-    private boolean running = false;
+    private volatile boolean running = true; // a connector that was closed before it started does not run
 
     @Override
     public final void run() {
-        this.running = true;
         LOG.info("Starting {} connector with server address {}", this.robot.getPrettyName(), this.defaultServerAddress);
         while ( this.running ) {
+            this.transitions.clear();
+            this.runCompletions();
             this.runLoopBody();
 
-            // Needed, otherwise the state change does not get through
             try {
-                Thread.sleep(1L);
+                this.awaitTransition(this.getPollInterval(this.state));
             } catch ( InterruptedException e ) {
                 LOG.error("Interrupt triggered inside run: {}", e.getMessage());
+                this.running = false;
             }
         }
     }
 
     protected abstract void runLoopBody();
 
+    /**
+     * Returns how long the connector waits in the given state before the loop body runs again.
+     * The wait ends early when the state changes, e.g. because the connect button was pressed.
+     * States that talk to the robot or the server run again immediately, the others wait for a transition.
+     *
+     * @param state the current state
+     * @return the interval in milliseconds, 0 to run again immediately or {@link #WAIT_FOR_TRANSITION} to wait for the next state change
+     */
+    protected long getPollInterval(State state) {
+        switch ( state ) {
+            case DISCOVER:
+            case CONNECT_BUTTON_IS_PRESSED:
+            case WAIT_FOR_CMD:
+            case WAIT_UPLOAD:
+            case WAIT_STOP_PROGRAM:
+            case WAIT_EXECUTION:
+                return 0L;
+            default:
+                return WAIT_FOR_TRANSITION;
+        }
+    }
+
+    /**
+     * Runs the task on the connector thread before the next loop body and wakes up the loop.
+     *
+     * @param task the task to run
+     */
+    protected void runOnLoop(Runnable task) {
+        this.completions.offer(task);
+        this.transitions.offer(this.state);
+    }
+
+    /**
+     * Continues the state machine on the connector thread when the future completes, e.g. an asynchronous push request.
+     * The loop can wait in a state without a poll interval until then.
+     *
+     * @param future the future to wait for
+     * @param continuation receives the result or the failure of the future
+     * @param <R> the type of the result
+     */
+    protected <R> void onCompletion(CompletableFuture<R> future, BiConsumer<? super R, ? super Throwable> continuation) {
+        future.whenComplete((result, throwable) -> this.runOnLoop(() -> continuation.accept(result, throwable)));
+    }
+
+    private void runCompletions() {
+        Runnable task;
+        while ( (task = this.completions.poll()) != null ) {
+            task.run();
+        }
+    }
+
+    private void awaitTransition(long interval) throws InterruptedException {
+        if ( interval == WAIT_FOR_TRANSITION ) {
+            this.transitions.take();
+        } else if ( interval > 0L ) {
+            this.transitions.poll(interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
     @Override
     public void connect() {
         this.state = State.CONNECT_BUTTON_IS_PRESSED;
+        this.transitions.offer(State.CONNECT_BUTTON_IS_PRESSED);
     }
 
     @Override
     public void close() {
         this.running = false;
+        this.transitions.offer(this.state);
     }
 
     @Override
@@ -113,7 +189,11 @@ public abstract class AbstractConnector<T extends IRobot> implements IConnector<
 
     @Override
     public void fire(State newState) {
+        State oldState = this.state;
         this.state = newState;
+        if ( oldState != newState ) {
+            this.transitions.offer(newState);
+        }
         for ( IOraListener<State> listener : this.listeners ) {
             listener.update(newState);
         }
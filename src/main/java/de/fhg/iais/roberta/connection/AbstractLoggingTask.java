@@ -17,7 +17,7 @@ public abstract class AbstractLoggingTask implements Callable<Void>, IOraListena
     public Void call() {
         while ( !Thread.currentThread().isInterrupted() ) {
             try {
-                Thread.sleep(TIMEOUT);
+                await();
 
                 log();
             } catch ( InterruptedException e ) {
@@ -28,6 +28,15 @@ public abstract class AbstractLoggingTask implements Callable<Void>, IOraListena
         return null;
     }
 
+    /**
+     * Waits before the next call of {@link #log()}. Polls every 100 ms by default, tasks whose log blocks until data is available need not wait.
+     *
+     * @throws InterruptedException if the task was cancelled while waiting
+     */
+    protected void await() throws InterruptedException {
+        Thread.sleep(TIMEOUT);
+    }
+
     protected abstract void log();
 
     protected abstract void finish();
@@ -42,6 +51,10 @@ public abstract class AbstractLoggingTask implements Callable<Void>, IOraListena
         this.listeners.remove(listener);
     }
 
+    protected boolean hasListeners() {
+        return !this.listeners.isEmpty();
+    }
+
     @Override
     public void fire(byte[] object) {
         for ( IOraListener<byte[]> listener : this.listeners ) {
@@ -16,4 +16,10 @@ public class AutoConnector extends AbstractConnector<IRobot> {
             this.fire(State.WAIT_FOR_CMD);
         }
     }
+
+    @Override
+    protected long getPollInterval(State state) {
+        // nothing to do after the robot was set to connected
+        return (state == State.DISCOVER) ? 0L : WAIT_FOR_TRANSITION;
+    }
 }
@@ -2,14 +2,39 @@ package de.fhg.iais.roberta.connection;
 
 import java.util.List;
 
+import de.fhg.iais.roberta.util.IOraListener;
+
 /**
  * The general interface for robot detectors. Every robot should implement a respective detector that looks for it on all platforms.
  */
 public interface IDetector {
+    long DEFAULT_INTERVAL = 1000L;
+
     /**
      * Checks whether robots targeted by this detector are available.
      *
      * @return a list of the available robots
      */
     List<IRobot> detectRobots();
+
+    /**
+     * Returns the time between two detection runs in milliseconds. Expensive detectors should run less often.
+     * The interval is increased while the detected robots do not change, if the detector signals changes, see {@link #registerChangeListener(IOraListener)}.
+     *
+     * @return the base interval in milliseconds
+     */
+    default long getInterval() {
+        return DEFAULT_INTERVAL;
+    }
+
+    /**
+     * Registers a listener that is notified when the detector notices a change before its next run, e.g. a plugged in device.
+     * The listener may run the detector again immediately. Does nothing by default.
+     *
+     * @param listener the listener, called with this detector
+     * @return whether the detector signals changes, only then its interval may be increased without delaying the detection of new robots
+     */
+    default boolean registerChangeListener(IOraListener<IDetector> listener) {
+        return false;
+    }
 }
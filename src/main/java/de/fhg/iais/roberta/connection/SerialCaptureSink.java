@@ -0,0 +1,281 @@
+package de.fhg.iais.roberta.connection;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.fhg.iais.roberta.util.IOraListener;
+
+/**
+ * Captures the serial output of a logging task to files.
+ * The output is copied into pooled chunks and handed over through a bounded queue to an own thread, so a slow disk never blocks the reader or the
+ * UI and a read allocates nothing once the pool is warm. If all chunks are queued the output is dropped and counted instead. A new file is started when the current file exceeds the maximum size or age. Each line can
+ * optionally be prefixed with the time it was written.
+ */
+public class SerialCaptureSink implements IOraListener<ByteBuffer>, AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(SerialCaptureSink.class);
+
+    private static final int QUEUE_CAPACITY = 1024; // chunks of a read each
+    private static final int CHUNK_SIZE = 4096; // the read size of the logging task, larger slices are split
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final long POLL_TIMEOUT = 500L;
+    private static final ByteBuffer CLOSE = ByteBuffer.allocate(0);
+    private static final DateTimeFormatter FILE_NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("'['yyyy-MM-dd HH:mm:ss.SSS'] '");
+
+    private final Path directory;
+    private final String prefix;
+    private final long maxFileSize;
+    private final long maxFileAge;
+    private final boolean timestamps;
+
+    private final BlockingQueue<ByteBuffer> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    // the chunks are allocated on demand, at most one per queue slot
+    private final BlockingQueue<ByteBuffer> pool = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicInteger allocated = new AtomicInteger();
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE);
+    private final Thread writer;
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile boolean running = true;
+
+    private FileChannel channel = null;
+    private Path file = null;
+    private long fileSize = 0L;
+    private long fileOpened = 0L;
+    private boolean lineStart = true;
+
+    /**
+     * Creates a sink and starts its writer thread. The first file is created with the first output.
+     *
+     * @param directory the directory the files are written to, it is created if necessary
+     * @param prefix the prefix of the file names
+     * @param maxFileSize the size in bytes after which a new file is started
+     * @param maxFileAge the time in milliseconds after which a new file is started
+     * @param timestamps whether each line is prefixed with a timestamp
+     */
+    public SerialCaptureSink(Path directory, String prefix, long maxFileSize, long maxFileAge, boolean timestamps) {
+        this.directory = directory;
+        this.prefix = prefix;
+        this.maxFileSize = maxFileSize;
+        this.maxFileAge = maxFileAge;
+        this.timestamps = timestamps;
+
+        this.writer = new Thread(this::run, "SerialCapture");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Copies the output into pooled chunks and queues them for writing, drops it if the writer does not keep up. Never blocks. The slice is not
+     * kept, so the reader may reuse it after the call.
+     *
+     * @param object the output, from its position to its limit
+     */
+    @Override
+    public void update(ByteBuffer object) {
+        ByteBuffer slice = object.duplicate();
+        while ( slice.hasRemaining() ) {
+            ByteBuffer chunk = this.running ? this.borrow() : null;
+            if ( chunk == null ) {
+                this.dropped.addAndGet(slice.remaining());
+                return;
+            }
+            int count = Math.min(slice.remaining(), chunk.remaining());
+            // Buffer methods, as ByteBuffer only overrides them since Java 9
+            Buffer view = slice;
+            Buffer chunkView = chunk;
+            int limit = slice.limit();
+            view.limit(slice.position() + count);
+            chunk.put(slice);
+            view.limit(limit);
+            chunkView.flip();
+            // there are never more chunks than queue slots, only the close marker can take the last one
+            if ( !this.queue.offer(chunk) ) {
+                this.dropped.addAndGet(count);
+                chunkView.clear();
+                this.pool.offer(chunk);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bytes written to files.
+     *
+     * @return the written bytes
+     */
+    public long getWritten() {
+        return this.written.get();
+    }
+
+    /**
+     * Returns the number of bytes that were dropped because the writer did not keep up.
+     *
+     * @return the dropped bytes
+     */
+    public long getDropped() {
+        return this.dropped.get();
+    }
+
+    /**
+     * Writes the queued output and closes the current file.
+     */
+    @Override
+    public void close() {
+        this.running = false;
+        // wakes up the writer, it is dropped if the queue is full, then the writer is busy anyway
+        this.queue.offer(CLOSE);
+        try {
+            this.writer.join();
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            while ( this.running || !this.queue.isEmpty() ) {
+                ByteBuffer chunk = this.queue.poll(POLL_TIMEOUT, TimeUnit.MILLISECONDS);
+                if ( (chunk != null) && (chunk != CLOSE) ) {
+                    this.append(chunk.array(), chunk.limit());
+                    // Buffer methods, as ByteBuffer only overrides them since Java 9
+                    Buffer view = chunk;
+                    view.clear();
+                    this.pool.offer(chunk);
+                }
+                // write what is there once the queue ran empty, so the files stay current
+                if ( (chunk == null) || this.queue.isEmpty() ) {
+                    this.flush();
+                    this.rotateIfNecessary();
+                }
+            }
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        } catch ( IOException e ) {
+            LOG.error("Could not write serial capture {}: {}", this.file, e.getMessage());
+            this.running = false;
+            this.queue.clear();
+        } finally {
+            this.closeFile();
+        }
+    }
+
+    private ByteBuffer borrow() {
+        ByteBuffer chunk = this.pool.poll();
+        if ( chunk != null ) {
+            return chunk;
+        }
+        if ( this.allocated.incrementAndGet() > QUEUE_CAPACITY ) {
+            this.allocated.decrementAndGet();
+            return null;
+        }
+        return ByteBuffer.allocate(CHUNK_SIZE);
+    }
+
+    private void append(byte[] chunk, int length) throws IOException {
+        int start = 0;
+        for ( int i = 0; i < length; i++ ) {
+            if ( this.timestamps && this.lineStart ) {
+                byte[] timestamp = LocalDateTime.now().format(TIMESTAMP_FORMAT).getBytes(StandardCharsets.UTF_8);
+                this.put(timestamp, 0, timestamp.length);
+                this.lineStart = false;
+            }
+            if ( chunk[i] == '\n' ) {
+                this.put(chunk, start, (i + 1) - start);
+                start = i + 1;
+                this.lineStart = true;
+                // prefer rotating between lines
+                this.rotateIfNecessary();
+            }
+        }
+        this.put(chunk, start, length - start);
+        // output without line breaks must not grow a file without limit either
+        this.rotateIfNecessary();
+    }
+
+    // the next file is opened with the next output
+    private void rotateIfNecessary() {
+        if ( this.channel == null ) {
+            return;
+        }
+        boolean full = (this.fileSize + this.writeBuffer.position()) >= this.maxFileSize;
+        boolean expired = (System.currentTimeMillis() - this.fileOpened) >= this.maxFileAge;
+        if ( full || expired ) {
+            this.closeFile();
+        }
+    }
+
+    private void put(byte[] bytes, int offset, int length) throws IOException {
+        if ( (this.channel == null) && (length > 0) ) {
+            this.openFile();
+        }
+        while ( length > 0 ) {
+            if ( !this.writeBuffer.hasRemaining() ) {
+                this.flush();
+            }
+            int count = Math.min(length, this.writeBuffer.remaining());
+            this.writeBuffer.put(bytes, offset, count);
+            offset += count;
+            length -= count;
+        }
+    }
+
+    private void flush() throws IOException {
+        if ( (this.channel == null) || (this.writeBuffer.position() == 0) ) {
+            return;
+        }
+        // Buffer methods, as ByteBuffer only overrides them since Java 9
+        Buffer view = this.writeBuffer;
+        view.flip();
+        while ( this.writeBuffer.hasRemaining() ) {
+            int count = this.channel.write(this.writeBuffer);
+            this.fileSize += count;
+            this.written.addAndGet(count);
+        }
+        view.clear();
+    }
+
+    private void openFile() throws IOException {
+        Files.createDirectories(this.directory);
+        LocalDateTime now = LocalDateTime.now();
+        String name = this.prefix + '-' + now.format(FILE_NAME_FORMAT);
+        Path next = this.directory.resolve(name + ".log");
+        for ( int i = 1; Files.exists(next); i++ ) {
+            next = this.directory.resolve(name + String.format("_%03d", i) + ".log"); // sorts after the first file
+        }
+        this.channel = FileChannel.open(next, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        this.file = next;
+        this.fileSize = 0L;
+        this.fileOpened = System.currentTimeMillis();
+        LOG.info("Capturing serial output to {}", next);
+    }
+
+    private void closeFile() {
+        if ( this.channel == null ) {
+            return;
+        }
+        try {
+            this.flush();
+            this.channel.close();
+        } catch ( IOException e ) {
+            LOG.error("Could not close serial capture {}: {}", this.file, e.getMessage());
+        }
+        this.channel = null;
+    }
+}
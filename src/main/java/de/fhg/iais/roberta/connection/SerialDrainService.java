@@ -0,0 +1,188 @@
+package de.fhg.iais.roberta.connection;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import de.fhg.iais.roberta.connection.SerialLoggingTask.SerialInput;
+import de.fhg.iais.roberta.util.ByteRingBuffer;
+
+/**
+ * Reads the serial output of a robot between uploads, so the buffers of the robot and the operating system do not fill up.
+ * The output is discarded, or the last bytes are retained and handed over to the serial monitor when it is opened. The reads block until data is
+ * available and lease the port shared, so uploads can take it over. Only one reader of a port should run, so the serial monitor suspends the
+ * service of its port while it is open.
+ */
+public final class SerialDrainService {
+    private static final Logger LOG = LoggerFactory.getLogger(SerialDrainService.class);
+
+    private static final long STOP_TIMEOUT = 1000L; // a read returns within its timeout
+    private static final Map<String, SerialDrainService> SERVICES = new ConcurrentHashMap<>();
+
+    private final String portName;
+    private final Supplier<SerialInput> inputs;
+    private final ByteRingBuffer buffer;
+    private final boolean retain;
+
+    private Thread thread = null;
+    private boolean started = false;
+    private boolean suspended = false;
+    private ByteRingBuffer target = null;
+
+    /**
+     * Creates a stopped service.
+     *
+     * @param portName the name of the port
+     * @param inputs creates the input for each run, it is opened and closed by the draining thread
+     * @param retainedBytes the number of the last bytes that are retained, 0 to discard all output
+     */
+    SerialDrainService(String portName, Supplier<SerialInput> inputs, int retainedBytes) {
+        this.portName = portName;
+        this.inputs = inputs;
+        this.retain = retainedBytes > 0;
+        this.buffer = new ByteRingBuffer(Math.max(1, retainedBytes));
+    }
+
+    /**
+     * Returns the service of the port, it is created on first use.
+     *
+     * @param portName the name of the port
+     * @param baudRate the baud rate of the port
+     * @param retainedBytes the number of the last bytes that are retained, 0 to discard all output
+     * @return the service of the port
+     */
+    public static SerialDrainService forPort(String portName, int baudRate, int retainedBytes) {
+        return SERVICES.computeIfAbsent(portName,
+            name -> new SerialDrainService(name, () -> new SerialLoggingTask.LeasedSerialInput(name, baudRate), retainedBytes));
+    }
+
+    /**
+     * Suspends the service of the port, if there is one, and moves its retained output to the target, e.g. when the serial monitor is opened.
+     *
+     * @param portName the name of the port
+     * @param target the buffer the retained output is appended to
+     */
+    public static void handOver(String portName, ByteRingBuffer target) {
+        SerialDrainService service = SERVICES.get(portName);
+        if ( service != null ) {
+            service.suspend(target);
+        }
+    }
+
+    /**
+     * Resumes the service of the port, if there is one, e.g. when the serial monitor is closed.
+     *
+     * @param portName the name of the port
+     */
+    public static void takeBack(String portName) {
+        SerialDrainService service = SERVICES.get(portName);
+        if ( service != null ) {
+            service.resume();
+        }
+    }
+
+    /**
+     * Starts reading, unless the service is suspended. Then it starts when it is resumed.
+     */
+    public synchronized void start() {
+        this.started = true;
+        if ( !this.suspended ) {
+            this.startThread();
+        }
+    }
+
+    /**
+     * Stops reading and waits until the port is released, e.g. before an upload.
+     */
+    public synchronized void stop() {
+        this.started = false;
+        this.stopThread();
+    }
+
+    /**
+     * Passes on output of the robot that was read by someone else, e.g. status messages during an upload. It goes where the output of the
+     * port goes: to the serial monitor while it is open, to the retained output otherwise.
+     *
+     * @param output the output
+     */
+    public void divert(byte[] output) {
+        ByteRingBuffer sink;
+        synchronized ( this ) {
+            sink = this.suspended ? this.target : (this.retain ? this.buffer : null);
+        }
+        if ( sink != null ) {
+            sink.write(output, 0, output.length);
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return this.thread != null;
+    }
+
+    /**
+     * Returns a copy of the retained output, it stays retained.
+     *
+     * @return the retained output, empty if the output is discarded
+     */
+    public byte[] getRetained() {
+        if ( !this.retain ) {
+            return new byte[0];
+        }
+        byte[] retained = new byte[this.buffer.available()];
+        int length = this.buffer.peek(retained, 0, retained.length);
+        return (length == retained.length) ? retained : Arrays.copyOf(retained, length);
+    }
+
+    synchronized void suspend(ByteRingBuffer target) {
+        this.suspended = true;
+        this.target = target;
+        this.stopThread();
+        if ( this.retain ) {
+            byte[] retained = new byte[this.buffer.available()];
+            int length = this.buffer.read(retained, 0, retained.length);
+            target.write(retained, 0, length);
+            LOG.info("Handed {} bytes of retained output of {} over", length, this.portName);
+        }
+    }
+
+    synchronized void resume() {
+        this.suspended = false;
+        this.target = null;
+        if ( this.started ) {
+            this.startThread();
+        }
+    }
+
+    private void startThread() {
+        if ( this.thread != null ) {
+            return;
+        }
+        SerialLoggingTask task = new SerialLoggingTask(this.buffer, this.inputs.get());
+        this.thread = new Thread(task::call, "Drain " + this.portName);
+        this.thread.setDaemon(true);
+        this.thread.start();
+        LOG.info("Start draining {}", this.portName);
+    }
+
+    private void stopThread() {
+        if ( this.thread == null ) {
+            return;
+        }
+        this.thread.interrupt();
+        try {
+            this.thread.join(STOP_TIMEOUT);
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+        if ( this.thread.isAlive() ) {
+            LOG.warn("Draining {} did not stop within {} ms", this.portName, STOP_TIMEOUT);
+        } else {
+            LOG.info("Stop draining {}", this.portName);
+        }
+        this.thread = null;
+    }
+}
@@ -1,49 +1,186 @@
 package de.fhg.iais.roberta.connection;
 
 import com.fazecast.jSerialComm.SerialPort;
+import de.fhg.iais.roberta.connection.wired.SerialPortBroker;
+import de.fhg.iais.roberta.connection.wired.SerialPortBroker.Lease;
+import de.fhg.iais.roberta.util.ByteRingBuffer;
 import de.fhg.iais.roberta.util.IOraListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.CopyOnWriteArrayList;
 
-// https://github.com/Fazecast/jSerialComm/wiki/Nonblocking-Reading-Usage-Example
+/**
+ * Reads the serial output of a robot.
+ * Reads are semi-blocking, they return as soon as data is available, so output arrives within milliseconds instead of in 100 ms bursts.
+ * The data is read into a preallocated chunk, appended to a ring buffer and published to slice listeners without allocating.
+ * The port is leased shared from the {@link SerialPortBroker} and handed over to uploads in between reads.
+ */
+// https://github.com/Fazecast/jSerialComm/wiki/Blocking-and-Semiblocking-Reading-Usage-Example
 public class SerialLoggingTask extends AbstractLoggingTask {
     private static final Logger LOG = LoggerFactory.getLogger(SerialLoggingTask.class);
 
-    private final SerialPort comPort;
+    private static final int READ_TIMEOUT = 100; // a read returns earlier as soon as data is available
+    private static final int CHUNK_SIZE = 4096;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Source of the serial data.
+     */
+    interface SerialInput {
+        /**
+         * Reads the available bytes, waits until at least one byte is available or the read timed out.
+         *
+         * @param buffer the buffer to read into
+         * @param length the maximum number of bytes to read
+         * @return the number of bytes read, 0 if the read timed out, -1 if the port is no longer available
+         */
+        int read(byte[] buffer, int length);
+
+        void close();
+    }
+
+    private final SerialInput input;
+    private final ByteRingBuffer buffer;
+    private final byte[] chunk = new byte[CHUNK_SIZE];
+    private final ByteBuffer slice = ByteBuffer.wrap(this.chunk).asReadOnlyBuffer();
+    private final Collection<IOraListener<ByteBuffer>> sliceListeners = new CopyOnWriteArrayList<>();
 
     public SerialLoggingTask(IOraListener<byte[]> listener, CharSequence port, int serialRate) {
+        this(new ByteRingBuffer(BUFFER_SIZE), port, serialRate);
         registerListener(listener);
+    }
+
+    /**
+     * Creates a task that appends the serial output to the given buffer. The buffer can be reused by consecutive tasks.
+     *
+     * @param buffer the ring buffer for the output
+     * @param port the name of the serial port
+     * @param serialRate the baud rate
+     */
+    public SerialLoggingTask(ByteRingBuffer buffer, CharSequence port, int serialRate) {
+        this(buffer, new LeasedSerialInput(port.toString(), serialRate));
+    }
+
+    SerialLoggingTask(ByteRingBuffer buffer, SerialInput input) {
+        this.buffer = buffer;
+        this.input = input;
+    }
+
+    /**
+     * Returns the ring buffer the serial output is appended to.
+     *
+     * @return the ring buffer
+     */
+    public ByteRingBuffer getBuffer() {
+        return this.buffer;
+    }
+
+    /**
+     * Registers a listener for the read data. The read-only slice is only valid during the call and must be copied if it is needed later.
+     *
+     * @param listener the listener for the slices
+     */
+    public void registerSliceListener(IOraListener<ByteBuffer> listener) {
+        this.sliceListeners.add(listener);
+    }
+
+    public void unregisterSliceListener(IOraListener<ByteBuffer> listener) {
+        this.sliceListeners.remove(listener);
+    }
 
-        SerialPort[] serialPorts = SerialPort.getCommPorts();
-        this.comPort =
-            Arrays.stream(serialPorts)
-                .filter(serialPort -> serialPort.getSystemPortName().contains(port))
-                .findFirst()
-                .orElseThrow(() -> new IllegalStateException("Port is not available!"));
-        this.comPort.setBaudRate(serialRate);
-        this.comPort.openPort(0);
-        LOG.info("SerialPort {} {} {} opened, logging with baud rate of {}",
-            this.comPort.getSystemPortName(),
-            this.comPort.getDescriptivePortName(),
-            this.comPort.getPortDescription(),
-            this.comPort.getBaudRate());
+    @Override
+    protected void await() {
+        // the read waits until data is available
     }
 
     @Override
     protected void log() {
-        try {
-            byte[] readBuffer = new byte[this.comPort.bytesAvailable()];
-            this.comPort.readBytes(readBuffer, readBuffer.length);
-            fire(readBuffer);
-        } catch (NegativeArraySizeException e) { // gets thrown if cable is disconnected
+        int read = this.input.read(this.chunk, this.chunk.length);
+        if ( read < 0 ) { // the cable was disconnected
             Thread.currentThread().interrupt();
+            return;
+        }
+        if ( read == 0 ) {
+            return;
+        }
+        this.buffer.write(this.chunk, 0, read);
+
+        // Buffer methods, as ByteBuffer only overrides them since Java 9
+        Buffer view = this.slice;
+        for ( IOraListener<ByteBuffer> listener : this.sliceListeners ) {
+            view.limit(read);
+            view.position(0);
+            listener.update(this.slice);
+        }
+        if ( hasListeners() ) {
+            fire(Arrays.copyOf(this.chunk, read));
         }
     }
 
     @Override
     protected void finish() {
-        this.comPort.closePort();
+        this.input.close();
+    }
+
+    /**
+     * Reads from a shared lease of the port. The lease is acquired by the reading thread and released whenever an upload waits for the port.
+     */
+    static final class LeasedSerialInput implements SerialInput {
+        private final String portName;
+        private final int serialRate;
+        private Lease lease = null;
+
+        LeasedSerialInput(String portName, int serialRate) {
+            this.portName = portName;
+            this.serialRate = serialRate;
+        }
+
+        @Override
+        public int read(byte[] buffer, int length) {
+            if ( (this.lease != null) && this.lease.isContended() ) {
+                LOG.debug("Handing serial port {} over", this.portName);
+                this.close();
+            }
+            if ( this.lease == null ) {
+                try {
+                    this.lease = SerialPortBroker.getInstance().acquireShared(this.portName, this.serialRate, READ_TIMEOUT);
+                } catch ( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    return 0;
+                } catch ( IllegalStateException e ) {
+                    LOG.error("Could not open serial port {}: {}", this.portName, e.getMessage());
+                    return -1;
+                }
+                if ( this.lease == null ) { // an upload is running
+                    return 0;
+                }
+                SerialPort comPort = this.lease.getPort();
+                // the timeouts are shared with the other users of the port
+                comPort.setComPortTimeouts(SerialPort.TIMEOUT_READ_SEMI_BLOCKING, READ_TIMEOUT, 0);
+                LOG.info("SerialPort {} {} {} leased, logging with baud rate of {}",
+                    comPort.getSystemPortName(),
+                    comPort.getDescriptivePortName(),
+                    comPort.getPortDescription(),
+                    comPort.getBaudRate());
+            }
+            SerialPort comPort = this.lease.getPort();
+            if ( comPort == null ) { // closed by the broker, e.g. unplugged
+                return -1;
+            }
+            return comPort.readBytes(buffer, length);
+        }
+
+        @Override
+        public void close() {
+            if ( this.lease != null ) {
+                this.lease.close();
+                this.lease = null;
+            }
+        }
     }
 }
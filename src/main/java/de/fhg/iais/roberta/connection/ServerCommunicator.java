@@ -1,46 +1,54 @@
 package de.fhg.iais.roberta.connection;
 
+import io.netty.handler.ssl.NotSslRecordException;
+
 import net.lingala.zip4j.ZipFile;
 import net.lingala.zip4j.exception.ZipException;
 
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.SystemUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
-import org.asynchttpclient.AsyncHttpClient;
-import org.asynchttpclient.Dsl;
+import org.apache.http.util.EntityUtils;
+import org.asynchttpclient.Response;
 import org.json.JSONObject;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
+import java.net.ConnectException;
 import java.net.MalformedURLException;
-import java.net.ProtocolException;
 import java.net.URL;
-import java.net.URLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
-import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLException;
 
 import de.fhg.iais.roberta.util.Pair;
 import de.fhg.iais.roberta.util.PropertyHelper;
@@ -48,7 +56,7 @@ import de.fhg.iais.roberta.util.PropertyHelper;
 /**
  * The server communicator runs the server protocol on behalf of the actual robot hardware.
  * This class provides access to push requests, downloads the user program and download system libraries for
- * the upload function.
+ * the upload function. Requests to the server share one keep-alive connection pool, see {@link ServerConnectionPool}.
  *
  * @author dpyka
  */
@@ -58,10 +66,9 @@ public class ServerCommunicator {
     private static final String PUSH_ADDRESS = "/rest/pushcmd";
     private static final String DOWNLOAD_ADDRESS = "/rest/download";
     private static final String UPDATE_ADDRESS = "/rest/update";
-    private static final int CONNECT_TIMEOUT = 5000;
-    private static final int READ_TIMEOUT = 300000;
+    private static final long TRANSFER_CHUNK_SIZE = 64L * 1024L;
 
-    private String serverAddress;
+    private volatile String serverAddress;
 
     private String serverUpdateAddress;
     private String serverUpdateChecksumAddress;
@@ -78,6 +85,16 @@ public class ServerCommunicator {
         this.httpclient = HttpClients.createDefault();
     }
 
+    /**
+     * Sizes the connection pool shared by all server communicators for the given number of concurrently running connectors, so their push requests do not
+     * wait for a connection.
+     *
+     * @param connectors the maximum number of concurrently running connectors
+     */
+    public static void reserveConnections(int connectors) {
+        ServerConnectionPool.ensureCapacity(connectors);
+    }
+
     public String getServerAddress() {
         return this.serverAddress;
     }
@@ -86,6 +103,19 @@ public class ServerCommunicator {
         this.serverAddress = serverAddress;
     }
 
+    /**
+     * Returns the scheme currently used for the server address, for diagnostics.
+     *
+     * @return https or http, or an empty string if the scheme is not decided yet
+     */
+    public String getCurrentScheme() {
+        if ( this.serverAddress.contains("localhost") ) {
+            return ServerSchemeCache.HTTP;
+        }
+        String scheme = ServerSchemeCache.getInstance().get(this.serverAddress);
+        return (scheme == null) ? "" : scheme;
+    }
+
     /**
      * Sends a push request to the open roberta server for registration or keeping the connection alive. This will be hold by the server for approximately 10
      * seconds and then answered.
@@ -95,72 +125,202 @@ public class ServerCommunicator {
      * @throws IOException if the server is unreachable for whatever reason.
      */
     public JSONObject pushRequest(JSONObject requestContent) throws IOException {
-        Map<String, String> requestProperties = new HashMap<>();
-        requestProperties.put("Accept", "application/json");
-
-        URLConnection conn = openURLConnection(this.serverAddress + PUSH_ADDRESS, "POST", requestProperties);
-        sendServerRequest(requestContent, conn);
-        String responseText = getServerResponse(conn);
-
-        return new JSONObject(responseText);
+        try (CloseableHttpResponse response = execute(PUSH_ADDRESS, url -> createPost(url, "application/json", requestContent))) {
+            return new JSONObject(EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8));
+        }
     }
 
-    private static URLConnection openURLConnection(String url, String requestMethod, Map<String, String> requestProperties) throws IOException {
-        URLConnection conn;
-        try {
-            if ( url.contains("localhost") ) { // workaround for HttpParser warning server side when connecting via localhost
-                conn = getHttpConnection(url, requestMethod, requestProperties);
+    /**
+     * Sends a push request like {@link #pushRequest(JSONObject)} without blocking the calling thread.
+     * The request runs on the event loop of the shared asynchronous client, the scheme is chosen and only a connect failure is repeated the same way
+     * as for blocking requests.
+     *
+     * @param requestContent data from the robot plus the token and the command send to the server (CMD_REGISTER or CMD_PUSH)
+     * @return the future response from the server, completes exceptionally with an {@link IOException} if the server is unreachable for whatever reason
+     */
+    public CompletableFuture<JSONObject> pushRequestAsync(JSONObject requestContent) {
+        ServerSchemeCache schemeCache = ServerSchemeCache.getInstance();
+        String currentServerAddress = this.serverAddress;
+        String address = currentServerAddress + PUSH_ADDRESS;
+
+        CompletableFuture<Response> response;
+        if ( address.contains("localhost") ) { // workaround for HttpParser warning server side when connecting via localhost
+            response = executeAsync(ServerSchemeCache.HTTP + "://" + address, requestContent);
+        } else {
+            String cachedScheme = schemeCache.get(currentServerAddress);
+            if ( cachedScheme != null ) {
+                response = orElseIfConnectFailed(executeAsync(cachedScheme + "://" + address, requestContent), () -> {
+                    LOG.info("Connecting with cached scheme {} failed", cachedScheme);
+                    schemeCache.invalidate(currentServerAddress);
+                    return probeAsync(currentServerAddress, address, requestContent);
+                });
             } else {
-                conn = getHttpsConnection(url, requestMethod, requestProperties);
+                response = probeAsync(currentServerAddress, address, requestContent);
             }
-            conn.connect();
-        } catch ( IOException ioException ) {
-            conn = getHttpConnection(url, requestMethod, requestProperties);
-            conn.connect();
         }
-        return conn;
+
+        CompletableFuture<JSONObject> result = new CompletableFuture<>();
+        response.whenComplete((r, throwable) -> {
+            if ( throwable != null ) {
+                Throwable cause = (throwable instanceof CompletionException) && (throwable.getCause() != null) ? throwable.getCause() : throwable;
+                result.completeExceptionally((cause instanceof IOException) ? cause : new IOException(cause));
+            } else if ( r.getStatusCode() >= 400 ) {
+                result.completeExceptionally(new IOException("Server returned HTTP response code: " + r.getStatusCode() + " for address: " + address));
+            } else {
+                try {
+                    result.complete(new JSONObject(r.getResponseBody(StandardCharsets.UTF_8)));
+                } catch ( RuntimeException e ) {
+                    result.completeExceptionally(e);
+                }
+            }
+        });
+        return result;
     }
 
-    private static HttpURLConnection getHttpConnection(String urlAddress, String requestMethod, Map<String, String> requestProperties) throws IOException {
-        URL url = new URL("http://" + urlAddress);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        setURLConnectionProperties(conn, requestMethod, requestProperties);
-        return conn;
+    private static CompletableFuture<Response> probeAsync(String serverAddress, String address, JSONObject requestContent) {
+        ServerSchemeCache schemeCache = ServerSchemeCache.getInstance();
+        CompletableFuture<Response> https = executeAsync(ServerSchemeCache.HTTPS + "://" + address, requestContent).thenApply(response -> {
+            schemeCache.put(serverAddress, ServerSchemeCache.HTTPS);
+            return response;
+        });
+        return orElseIfConnectFailed(https, () -> executeAsync(ServerSchemeCache.HTTP + "://" + address, requestContent).thenApply(response -> {
+            schemeCache.putHttpAfterHttpsFailure(serverAddress);
+            return response;
+        }));
     }
 
-    private static HttpsURLConnection getHttpsConnection(String urlAddress, String requestMethod, Map<String, String> requestProperties) throws IOException {
-        URL url = new URL("https://" + urlAddress);
-        HttpsURLConnection conn = (HttpsURLConnection) url.openConnection();
-        setURLConnectionProperties(conn, requestMethod, requestProperties);
-        return conn;
+    private static CompletableFuture<Response> executeAsync(String url, JSONObject requestContent) {
+        return ServerConnectionPool.getAsyncClient()
+            .preparePost(url)
+            .setHeader("Accept", "application/json")
+            .setHeader("Accept-Charset", "UTF-8")
+            .setHeader("Content-Type", "application/json")
+            .setCharset(StandardCharsets.UTF_8)
+            .setBody(requestContent.toString())
+            .execute()
+            .toCompletableFuture();
     }
 
-    private static void setURLConnectionProperties(HttpURLConnection conn, String requestMethod, Map<String, String> requestProperties)
-        throws ProtocolException {
-        conn.setConnectTimeout(CONNECT_TIMEOUT);
-        conn.setReadTimeout(READ_TIMEOUT);
-        conn.setDoOutput(true);
-        conn.setRequestMethod(requestMethod);
+    // like the blocking requests only a connect failure is repeated, a timed out long-poll may already have been processed by the server
+    private static <T> CompletableFuture<T> orElseIfConnectFailed(CompletableFuture<T> future, Supplier<CompletableFuture<T>> fallback) {
+        return future.handle((result, throwable) -> {
+            if ( throwable == null ) {
+                return CompletableFuture.completedFuture(result);
+            }
+            if ( isAsyncConnectFailure(throwable) ) {
+                return fallback.get();
+            }
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(throwable);
+            return failed;
+        }).thenCompose(Function.identity());
+    }
 
-        for ( Entry<String, String> property : requestProperties.entrySet() ) {
-            conn.setRequestProperty(property.getKey(), property.getValue());
+    // the asynchronous client wraps the cause, e.g. in a CompletionException
+    private static boolean isAsyncConnectFailure(Throwable throwable) {
+        for ( Throwable cause = throwable; cause != null; cause = cause.getCause() ) {
+            if ( isConnectFailure(cause) || (cause instanceof NotSslRecordException) ) {
+                return true;
+            }
         }
-        conn.setRequestProperty("Accept-Charset", "UTF-8");
-        conn.setRequestProperty("Content-Type", "application/json");
+        return false;
     }
 
-    private static String getServerResponse(URLConnection conn) throws IOException {
-        InputStream responseEntity = new BufferedInputStream(conn.getInputStream());
-        String responseText = IOUtils.toString(responseEntity, "UTF-8");
-        responseEntity.close();
-        return responseText;
+    /**
+     * Executes a request on the shared connection pool. The scheme that worked last time for the server address is used, see {@link ServerSchemeCache}.
+     * If it is unknown or fails to connect, https is tried first and if the connection fails the request is repeated with plain http. Other failures,
+     * e.g. an error status or a read timeout of a long-poll, are neither repeated, as the server may already have processed the request, nor do they
+     * change the cached scheme.
+     *
+     * @param path the rest path appended to the server address
+     * @param requestFactory creates the request for the given url
+     * @return the response of the server, has to be closed by the caller
+     * @throws IOException if the server is unreachable or answers with an error status
+     */
+    private CloseableHttpResponse execute(String path, Function<String, HttpUriRequest> requestFactory) throws IOException {
+        CloseableHttpClient client = ServerConnectionPool.getClient();
+        ServerSchemeCache schemeCache = ServerSchemeCache.getInstance();
+        String currentServerAddress = this.serverAddress;
+        String address = currentServerAddress + path;
+
+        if ( address.contains("localhost") ) { // workaround for HttpParser warning server side when connecting via localhost
+            return checkStatus(client.execute(requestFactory.apply(ServerSchemeCache.HTTP + "://" + address)), address);
+        }
+
+        String cachedScheme = schemeCache.get(currentServerAddress);
+        if ( cachedScheme != null ) {
+            CloseableHttpResponse response = null;
+            try {
+                response = client.execute(requestFactory.apply(cachedScheme + "://" + address));
+            } catch ( IOException e ) {
+                if ( !isConnectFailure(e) ) {
+                    throw e;
+                }
+                LOG.info("Connecting with cached scheme {} failed: {}", cachedScheme, e.getMessage());
+                schemeCache.invalidate(currentServerAddress);
+            }
+            if ( response != null ) {
+                return checkStatus(response, address);
+            }
+        }
+
+        CloseableHttpResponse response;
+        try {
+            response = client.execute(requestFactory.apply(ServerSchemeCache.HTTPS + "://" + address));
+            schemeCache.put(currentServerAddress, ServerSchemeCache.HTTPS);
+        } catch ( IOException ioException ) {
+            if ( !isConnectFailure(ioException) ) {
+                throw ioException;
+            }
+            LOG.debug("Connecting with https failed, trying http: {}", ioException.getMessage());
+            response = client.execute(requestFactory.apply(ServerSchemeCache.HTTP + "://" + address));
+            schemeCache.putHttpAfterHttpsFailure(currentServerAddress);
+        }
+        return checkStatus(response, address);
     }
 
-    private static void sendServerRequest(JSONObject requestContent, URLConnection conn) throws IOException {
-        try (OutputStream os = conn.getOutputStream()) {
-            os.write(requestContent.toString().getBytes(StandardCharsets.UTF_8));
-            os.flush();
+    /**
+     * Returns whether the request failed while connecting, i.e. before the server could process it, so it can be repeated with another scheme.
+     *
+     * A connect timeout includes the TLS handshake, e.g. with a plain http server that waits for a request. Waiting for a connection of the pool is no
+     * connect failure.
+     *
+     * @param throwable the failure of the request
+     * @return whether the connection was refused, timed out or the TLS handshake failed
+     */
+    static boolean isConnectFailure(Throwable throwable) {
+        // HttpHostConnectException is a ConnectException
+        return (throwable instanceof ConnectException)
+            || (throwable instanceof SSLException)
+            || ((throwable instanceof ConnectTimeoutException) && !(throwable instanceof ConnectionPoolTimeoutException));
+    }
+
+    private static CloseableHttpResponse checkStatus(CloseableHttpResponse response, String address) throws IOException {
+        int statusCode = response.getStatusLine().getStatusCode();
+        if ( statusCode >= 400 ) {
+            response.close();
+            throw new IOException("Server returned HTTP response code: " + statusCode + " for address: " + address);
         }
+        return response;
+    }
+
+    private static HttpPost createPost(String url, String accept, JSONObject requestContent) {
+        HttpPost post = new HttpPost(url);
+        setRequestHeaders(post, accept);
+        post.setEntity(new StringEntity(requestContent.toString(), ContentType.APPLICATION_JSON));
+        return post;
+    }
+
+    private static HttpGet createGet(String url, String accept) {
+        HttpGet get = new HttpGet(url);
+        setRequestHeaders(get, accept);
+        return get;
+    }
+
+    private static void setRequestHeaders(HttpUriRequest request, String accept) {
+        request.setHeader("Accept", accept);
+        request.setHeader("Accept-Charset", "UTF-8");
+        request.setHeader("Content-Type", "application/json");
     }
 
     /**
@@ -171,13 +331,39 @@ public class ServerCommunicator {
      * @throws IOException if the server is unreachable or something is wrong with the binary content.
      */
     public Pair<byte[], String> downloadProgram(JSONObject requestContent) throws IOException {
-        Map<String, String> requestProperties = new HashMap<>();
-        requestProperties.put("Accept", "application/octet-stream");
-
-        URLConnection conn = openURLConnection(this.serverAddress + DOWNLOAD_ADDRESS, "POST", requestProperties);
-        sendServerRequest(requestContent, conn);
+        try (CloseableHttpResponse response = execute(DOWNLOAD_ADDRESS, url -> createPost(url, "application/octet-stream", requestContent))) {
+            return getBinaryFileFromResponse(response);
+        }
+    }
 
-        return getBinaryFileFromResponse(conn);
+    /**
+     * Downloads a user program from the server and streams it directly into a new temporary file, without buffering the whole binary in memory.
+     * The file name consists of the prefix, the file name sent by the server and a random part. The caller is responsible for deleting the file.
+     *
+     * @param requestContent all the content of a standard push request.
+     * @param prefix the prefix of the temporary file name
+     * @return the path of the downloaded file
+     * @throws IOException if the server is unreachable or something went wrong while writing the file.
+     */
+    public Path downloadProgramToFile(JSONObject requestContent, String prefix) throws IOException {
+        try (CloseableHttpResponse response = execute(DOWNLOAD_ADDRESS, url -> createPost(url, "application/octet-stream", requestContent))) {
+            Header filename = response.getFirstHeader("Filename");
+            Path file = Files.createTempFile(prefix + ((filename == null) ? "" : filename.getValue()), "");
+            file.toFile().deleteOnExit();
+
+            try (ReadableByteChannel source = Channels.newChannel(response.getEntity().getContent());
+                 FileChannel target = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                long position = 0L;
+                long transferred;
+                while ( (transferred = target.transferFrom(source, position, TRANSFER_CHUNK_SIZE)) > 0L ) {
+                    position += transferred;
+                }
+            } catch ( IOException e ) {
+                Files.deleteIfExists(file);
+                throw e;
+            }
+            return file;
+        }
     }
 
     /**
@@ -188,18 +374,14 @@ public class ServerCommunicator {
      * @throws IOException if the server is unreachable or something is wrong with the binary content.
      */
     public Pair<byte[], String> downloadFirmwareFile(String fwFile) throws IOException {
-        Map<String, String> requestProperties = new HashMap<>();
-        requestProperties.put("Accept", "application/octet-stream");
-
-        URLConnection conn = openURLConnection(this.serverAddress + UPDATE_ADDRESS + '/' + fwFile, "GET", requestProperties);
-
-        return getBinaryFileFromResponse(conn);
+        try (CloseableHttpResponse response = execute(UPDATE_ADDRESS + '/' + fwFile, url -> createGet(url, "application/octet-stream"))) {
+            return getBinaryFileFromResponse(response);
+        }
     }
 
-    private static Pair<byte[], String> getBinaryFileFromResponse(URLConnection conn) throws IOException {
-        try (InputStream responseEntity = new BufferedInputStream(conn.getInputStream())) {
-            return new Pair<>(IOUtils.toByteArray(responseEntity), conn.getHeaderField("Filename"));
-        }
+    private static Pair<byte[], String> getBinaryFileFromResponse(HttpResponse response) throws IOException {
+        Header filename = response.getFirstHeader("Filename");
+        return new Pair<>(EntityUtils.toByteArray(response.getEntity()), (filename == null) ? null : filename.getValue());
     }
 
     /**
@@ -0,0 +1,193 @@
+package de.fhg.iais.roberta.connection;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.LayeredConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.asynchttpclient.AsyncHttpClient;
+import org.asynchttpclient.DefaultAsyncHttpClientConfig;
+import org.asynchttpclient.Dsl;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared, keep-alive http client for the communication with the Open Roberta server.
+ * All {@link ServerCommunicator}s use the same connection pool, so steady state push requests reuse an already established (TLS) connection instead of
+ * connecting and handshaking for every request. Idle connections are evicted in the background. A request that does not get a connection from the pool
+ * in time fails instead of blocking its caller, the pool is sized for the number of running connectors, see {@link #ensureCapacity(int)}. Proxy and TLS settings are taken from the system properties.
+ * Asynchronous requests share one {@link AsyncHttpClient} with a single event loop thread, so pending long-polls of many connectors only cost a socket each.
+ * The asynchronous client is also used for requests to robots, e.g. by the RNDIS detector, those set a shorter timeout per request.
+ */
+public final class ServerConnectionPool {
+    static final int CONNECT_TIMEOUT = 5000;
+    static final int READ_TIMEOUT = 300000;
+    static final int CONNECTION_REQUEST_TIMEOUT = 10000; // fail instead of waiting for a free connection while all are held by long-polls
+
+    private static final int MAX_TOTAL = 64; // all requests go to one server, every connected robot keeps a push request open
+    private static final int RESERVED_CONNECTIONS = 4; // for requests besides the push requests of the connectors, e.g. downloads
+    private static final long MAX_IDLE_TIME = 60L;
+    private static final long TIME_TO_LIVE = 10L;
+    private static final int VALIDATE_AFTER_INACTIVITY = 2000;
+    private static final int EVENT_LOOP_THREADS = 1;
+
+    private static final AtomicLong OPENED_CONNECTIONS = new AtomicLong();
+
+    private ServerConnectionPool() {
+    }
+
+    private static final class InstanceHolder {
+        private static final PoolingHttpClientConnectionManager connectionManager = createConnectionManager();
+        private static final CloseableHttpClient instance = createClient(connectionManager);
+    }
+
+    private static final class AsyncInstanceHolder {
+        private static final AsyncHttpClient instance = createAsyncClient();
+    }
+
+    /**
+     * Returns the shared http client. It must not be closed by the caller.
+     *
+     * @return the shared pooling http client
+     */
+    static CloseableHttpClient getClient() {
+        return InstanceHolder.instance;
+    }
+
+    /**
+     * Returns the shared asynchronous http client. It must not be closed by the caller.
+     *
+     * @return the shared asynchronous http client
+     */
+    public static AsyncHttpClient getAsyncClient() {
+        return AsyncInstanceHolder.instance;
+    }
+
+    /**
+     * Grows the pool so each of the given number of connectors can hold a push request without waiting for a connection. The pool never shrinks.
+     *
+     * @param connectors the number of concurrently running connectors
+     */
+    static synchronized void ensureCapacity(int connectors) {
+        PoolingHttpClientConnectionManager connectionManager = InstanceHolder.connectionManager;
+        int required = connectors + RESERVED_CONNECTIONS;
+        if ( connectionManager.getMaxTotal() < required ) {
+            connectionManager.setMaxTotal(required);
+            connectionManager.setDefaultMaxPerRoute(required);
+        }
+    }
+
+    /**
+     * Returns the maximum number of connections of the pool.
+     *
+     * @return the maximum number of connections
+     */
+    static int getMaxTotal() {
+        return InstanceHolder.connectionManager.getMaxTotal();
+    }
+
+    /**
+     * Returns the number of connections opened since startup. Every opened https connection costs one TLS handshake.
+     *
+     * @return the number of opened connections
+     */
+    static long getOpenedConnections() {
+        return OPENED_CONNECTIONS.get();
+    }
+
+    private static PoolingHttpClientConnectionManager createConnectionManager() {
+        Registry<ConnectionSocketFactory> socketFactoryRegistry = RegistryBuilder.<ConnectionSocketFactory> create()
+            .register("http", new CountingConnectionSocketFactory(PlainConnectionSocketFactory.getSocketFactory()))
+            .register("https", new CountingLayeredConnectionSocketFactory(SSLConnectionSocketFactory.getSocketFactory()))
+            .build();
+
+        PoolingHttpClientConnectionManager connectionManager =
+            new PoolingHttpClientConnectionManager(socketFactoryRegistry, null, null, null, TIME_TO_LIVE, TimeUnit.MINUTES);
+        connectionManager.setMaxTotal(MAX_TOTAL);
+        connectionManager.setDefaultMaxPerRoute(MAX_TOTAL);
+        connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY);
+        return connectionManager;
+    }
+
+    private static CloseableHttpClient createClient(PoolingHttpClientConnectionManager connectionManager) {
+        RequestConfig requestConfig = RequestConfig.custom()
+            .setConnectTimeout(CONNECT_TIMEOUT)
+            .setSocketTimeout(READ_TIMEOUT)
+            .setConnectionRequestTimeout(CONNECTION_REQUEST_TIMEOUT)
+            .build();
+
+        return HttpClients.custom()
+            .useSystemProperties()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(requestConfig)
+            .evictExpiredConnections()
+            .evictIdleConnections(MAX_IDLE_TIME, TimeUnit.SECONDS)
+            .disableAutomaticRetries()
+            .build();
+    }
+
+    private static AsyncHttpClient createAsyncClient() {
+        DefaultAsyncHttpClientConfig config = Dsl.config()
+            .setConnectTimeout(CONNECT_TIMEOUT)
+            .setReadTimeout(READ_TIMEOUT)
+            .setRequestTimeout(READ_TIMEOUT)
+            .setPooledConnectionIdleTimeout((int) TimeUnit.SECONDS.toMillis(MAX_IDLE_TIME))
+            .setConnectionTtl((int) TimeUnit.MINUTES.toMillis(TIME_TO_LIVE))
+            .setIoThreadsCount(EVENT_LOOP_THREADS)
+            .setThreadFactory(new DefaultThreadFactory("ServerEventLoop", true))
+            .build();
+        return Dsl.asyncHttpClient(config);
+    }
+
+    private static class CountingConnectionSocketFactory implements ConnectionSocketFactory {
+        private final ConnectionSocketFactory delegate;
+
+        CountingConnectionSocketFactory(ConnectionSocketFactory delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Socket createSocket(HttpContext context) throws IOException {
+            return this.delegate.createSocket(context);
+        }
+
+        @Override
+        public Socket connectSocket(
+            int connectTimeout,
+            Socket sock,
+            HttpHost host,
+            InetSocketAddress remoteAddress,
+            InetSocketAddress localAddress,
+            HttpContext context) throws IOException {
+            OPENED_CONNECTIONS.incrementAndGet();
+            return this.delegate.connectSocket(connectTimeout, sock, host, remoteAddress, localAddress, context);
+        }
+    }
+
+    private static class CountingLayeredConnectionSocketFactory extends CountingConnectionSocketFactory implements LayeredConnectionSocketFactory {
+        private final LayeredConnectionSocketFactory delegate;
+
+        CountingLayeredConnectionSocketFactory(LayeredConnectionSocketFactory delegate) {
+            super(delegate);
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Socket createLayeredSocket(Socket socket, String target, int port, HttpContext context) throws IOException {
+            return this.delegate.createLayeredSocket(socket, target, port, context);
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package de.fhg.iais.roberta.connection;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Remembers which scheme (https or http) worked for a server address.
+ * Prevents a failing TLS attempt before every request to plain http servers. A decision is dropped after a connect failure or when it is older than the
+ * time to live, the next request probes again. Http is only remembered after https failed to connect on consecutive probes, so a transient failure
+ * does not downgrade the following requests.
+ */
+final class ServerSchemeCache {
+    private static final Logger LOG = LoggerFactory.getLogger(ServerSchemeCache.class);
+
+    static final String HTTPS = "https";
+    static final String HTTP = "http";
+
+    private static final long DEFAULT_TIME_TO_LIVE = TimeUnit.MINUTES.toMillis(30L);
+    private static final int HTTPS_FAILURES_FOR_HTTP = 2;
+
+    private static final class InstanceHolder {
+        private static final ServerSchemeCache instance = new ServerSchemeCache(DEFAULT_TIME_TO_LIVE, System::currentTimeMillis);
+    }
+
+    private final Map<String, Decision> decisions = new ConcurrentHashMap<>();
+    private final Map<String, Integer> httpsFailures = new ConcurrentHashMap<>();
+    private final long timeToLive;
+    private final LongSupplier clock;
+
+    /**
+     * Creates a new scheme cache.
+     *
+     * @param timeToLive the time in milliseconds after which a decision is probed again
+     * @param clock the source of the current time in milliseconds
+     */
+    ServerSchemeCache(long timeToLive, LongSupplier clock) {
+        this.timeToLive = timeToLive;
+        this.clock = clock;
+    }
+
+    /**
+     * Returns the cache shared by all server communicators.
+     *
+     * @return the shared cache
+     */
+    static ServerSchemeCache getInstance() {
+        return InstanceHolder.instance;
+    }
+
+    /**
+     * Returns the scheme that worked for the given address.
+     *
+     * @param address the server address, e.g. lab.open-roberta.org:443
+     * @return the scheme, or null if none is known or the decision expired
+     */
+    String get(String address) {
+        Decision decision = this.decisions.get(address);
+        if ( decision == null ) {
+            return null;
+        }
+        if ( (this.clock.getAsLong() - decision.timestamp) > this.timeToLive ) {
+            this.decisions.remove(address, decision);
+            return null;
+        }
+        return decision.scheme;
+    }
+
+    /**
+     * Records the scheme that worked for the given address.
+     *
+     * @param address the server address
+     * @param scheme the working scheme
+     */
+    void put(String address, String scheme) {
+        this.httpsFailures.remove(address);
+        Decision previous = this.decisions.put(address, new Decision(scheme, this.clock.getAsLong()));
+        if ( (previous == null) || !previous.scheme.equals(scheme) ) {
+            LOG.info("Using {} for server address {}", scheme, address);
+        }
+    }
+
+    /**
+     * Records that https failed to connect to the given address while http worked. Http is remembered once this happened on consecutive probes.
+     *
+     * @param address the server address
+     */
+    void putHttpAfterHttpsFailure(String address) {
+        if ( this.httpsFailures.merge(address, 1, Integer::sum) >= HTTPS_FAILURES_FOR_HTTP ) {
+            this.put(address, HTTP);
+        }
+    }
+
+    /**
+     * Forgets the decision for the given address, e.g. after a request failed to connect.
+     *
+     * @param address the server address
+     */
+    void invalidate(String address) {
+        if ( this.decisions.remove(address) != null ) {
+            LOG.info("Scheme for server address {} will be probed again", address);
+        }
+    }
+
+    private static final class Decision {
+        private final String scheme;
+        private final long timestamp;
+
+        private Decision(String scheme, long timestamp) {
+            this.scheme = scheme;
+            this.timestamp = timestamp;
+        }
+    }
+}
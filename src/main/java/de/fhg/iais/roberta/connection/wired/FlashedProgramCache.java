@@ -0,0 +1,162 @@
+package de.fhg.iais.roberta.connection.wired;
+
+import com.fazecast.jSerialComm.SerialPort;
+import org.apache.commons.codec.binary.Hex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import de.fhg.iais.roberta.util.Metrics;
+import de.fhg.iais.roberta.util.Pair;
+
+/**
+ * Remembers the content hash of the last program that was successfully flashed to a wired robot, identified by its port and type and the USB
+ * serial number of the board. Used to skip flashing when the same program is downloaded again. A robot is forgotten when it is unplugged, as
+ * boards without a serial number cannot be told apart otherwise.
+ */
+public final class FlashedProgramCache {
+    private static final Logger LOG = LoggerFactory.getLogger(FlashedProgramCache.class);
+
+    static final String UNKNOWN_SERIAL_NUMBER = "";
+
+    private static final Map<String, FlashedProgram> FLASHED_PROGRAMS = new ConcurrentHashMap<>();
+
+    private FlashedProgramCache() {
+    }
+
+    /**
+     * Calculates the SHA-256 hash of the given file.
+     *
+     * @param file the program file
+     * @return the hex encoded hash
+     * @throws IOException if the file could not be read
+     */
+    public static String hash(Path file) throws IOException {
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[8192];
+            int read;
+            while ( (read = inputStream.read(buffer)) != -1 ) {
+                digest.update(buffer, 0, read);
+            }
+            return Hex.encodeHexString(digest.digest());
+        } catch ( NoSuchAlgorithmException e ) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Looks up the USB serial number of the board at the given port.
+     *
+     * @param port the port of the robot
+     * @return the serial number, {@link #UNKNOWN_SERIAL_NUMBER} if the board has none or the port is not found
+     */
+    public static String getSerialNumber(String port) {
+        for ( SerialPort serialPort : SerialPort.getCommPorts() ) {
+            if ( port.equals(serialPort.getSystemPortName()) || port.equals(serialPort.getSystemPortPath()) ) {
+                String serialNumber = serialPort.getSerialNumber();
+                return ((serialNumber == null) || "Unknown".equals(serialNumber)) ? UNKNOWN_SERIAL_NUMBER : serialNumber;
+            }
+        }
+        return UNKNOWN_SERIAL_NUMBER;
+    }
+
+    /**
+     * Flashes the program, unless it is the last one that was flashed to the robot. Then the robot is only restarted, if that fails it is flashed
+     * after all.
+     *
+     * @param robot the robot
+     * @param serialNumber the USB serial number of the robot
+     * @param program the program file
+     * @param restart restarts the robot, returns whether that was successful
+     * @param flash flashes the program to the robot, returns 0 and an empty message if that was successful
+     * @return the result of the upload
+     * @throws IOException if the program could not be read
+     */
+    public static Pair<Integer, String> flashUnlessIdentical(
+        IWiredRobot robot,
+        String serialNumber,
+        Path program,
+        BooleanSupplier restart,
+        Supplier<Pair<Integer, String>> flash) throws IOException {
+        String hash = hash(program);
+        if ( isFlashed(robot, serialNumber, hash) ) {
+            LOG.info("Program is already on the robot, skip flashing");
+            if ( restart.getAsBoolean() ) {
+                Metrics.increment("identicalUpload.hit");
+                return new Pair<>(0, "");
+            }
+            LOG.info("Restarting the robot failed, flashing the program");
+            Metrics.increment("identicalUpload.restartFailed");
+            invalidate(robot);
+        } else {
+            Metrics.increment("identicalUpload.miss");
+        }
+
+        Pair<Integer, String> result = flash.get();
+        if ( result.getFirst() == 0 ) {
+            setFlashed(robot, serialNumber, hash);
+        } else {
+            invalidate(robot);
+        }
+        return result;
+    }
+
+    /**
+     * Checks whether the program with the given hash is the last one that was flashed to the robot.
+     *
+     * @param robot the robot
+     * @param serialNumber the USB serial number of the robot
+     * @param hash the hash of the program
+     * @return whether the program is already on the robot
+     */
+    static boolean isFlashed(IWiredRobot robot, String serialNumber, String hash) {
+        FlashedProgram flashed = FLASHED_PROGRAMS.get(getKey(robot));
+        return (flashed != null) && flashed.serialNumber.equals(serialNumber) && flashed.hash.equals(hash);
+    }
+
+    /**
+     * Records that the program with the given hash was successfully flashed to the robot.
+     *
+     * @param robot the robot
+     * @param serialNumber the USB serial number of the robot
+     * @param hash the hash of the program
+     */
+    static void setFlashed(IWiredRobot robot, String serialNumber, String hash) {
+        FLASHED_PROGRAMS.put(getKey(robot), new FlashedProgram(Objects.requireNonNull(serialNumber), hash));
+    }
+
+    /**
+     * Forgets the program of the robot, e.g. after a failed upload or when the robot is unplugged.
+     *
+     * @param robot the robot
+     */
+    public static void invalidate(IWiredRobot robot) {
+        FLASHED_PROGRAMS.remove(getKey(robot));
+    }
+
+    private static String getKey(IWiredRobot robot) {
+        return robot.getPort() + ':' + robot.getType();
+    }
+
+    private static final class FlashedProgram {
+        private final String serialNumber;
+        private final String hash;
+
+        FlashedProgram(String serialNumber, String hash) {
+            this.serialNumber = serialNumber;
+            this.hash = hash;
+        }
+    }
+}
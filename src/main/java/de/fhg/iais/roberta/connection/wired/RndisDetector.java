@@ -2,68 +2,130 @@ package de.fhg.iais.roberta.connection.wired;
 
 import org.apache.http.entity.ContentType;
 import org.asynchttpclient.AsyncCompletionHandler;
-import org.asynchttpclient.AsyncHttpClient;
-import org.asynchttpclient.Dsl;
-import org.asynchttpclient.ListenableFuture;
 import org.asynchttpclient.Response;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import de.fhg.iais.roberta.connection.IDetector;
 import de.fhg.iais.roberta.connection.IRobot;
+import de.fhg.iais.roberta.connection.ServerConnectionPool;
 import de.fhg.iais.roberta.connection.wired.ev3.Ev3;
+import de.fhg.iais.roberta.util.Metrics;
 import de.fhg.iais.roberta.util.PropertyHelper;
 
 import static de.fhg.iais.roberta.connection.IConnector.CMD_REGISTER;
 import static de.fhg.iais.roberta.connection.IConnector.KEY_CMD;
 
+/**
+ * Detector for robots connected via RNDIS, i.e. the EV3 with leJOS.
+ * All candidate addresses are probed in parallel with the shared asynchronous http client of the {@link ServerConnectionPool}, a detection cycle
+ * takes at most the probe timeout. The latency of every probe is recorded in the {@link Metrics} counters rndis.probe.count, rndis.probe.nanos and
+ * rndis.probe.failed, they are logged when the connector exits.
+ */
 public class RndisDetector implements IDetector {
     private static final Logger LOG = LoggerFactory.getLogger(RndisDetector.class);
 
+    private static final long PROBE_TIMEOUT = Long.parseLong(PropertyHelper.getInstance().getProperty("rndisProbeTimeout"));
+    private static final long INTERVAL = 2000L;
+
     private static final Map<String, Class<? extends AbstractWiredRobot>> DEVICES = new HashMap<>(1);
     static {
         DEVICES.put(PropertyHelper.getInstance().getProperty("brickIp"), Ev3.class);
     }
 
+    private final Map<String, Class<? extends AbstractWiredRobot>> candidates;
+    private final long probeTimeout;
+
+    public RndisDetector() {
+        this(DEVICES, PROBE_TIMEOUT);
+    }
+
+    /**
+     * Creates a detector for the given candidate addresses.
+     *
+     * @param candidates the robot classes by the address of their brickinfo service
+     * @param probeTimeout the deadline of a detection cycle in milliseconds
+     */
+    RndisDetector(Map<String, Class<? extends AbstractWiredRobot>> candidates, long probeTimeout) {
+        this.candidates = candidates;
+        this.probeTimeout = probeTimeout;
+    }
+
+    @Override
+    public long getInterval() {
+        return INTERVAL;
+    }
+
     @Override
     public List<IRobot> detectRobots() {
-        try (AsyncHttpClient client = Dsl.asyncHttpClient()) {
-            JSONObject request = new JSONObject();
-            request.put(KEY_CMD, CMD_REGISTER);
-
-            List<IRobot> robots = new ArrayList<>(5);
-            for ( Entry<String, Class<? extends AbstractWiredRobot>> entry : DEVICES.entrySet() ) {
-                ListenableFuture<String>
-                    name =
-                    client.preparePost("http://" + entry.getKey() + "/brickinfo")
-                          .addHeader("ContentType", ContentType.APPLICATION_JSON)
-                          .setBody(request.toString())
-                          .execute(new StringAsyncCompletionHandler());
-                robots.add(entry.getValue().getConstructor(String.class).newInstance(name.get()));
-            }
-            return robots;
-        } catch ( IOException e ) {
-            LOG.error("Could not close async client: {}", e.getMessage());
+        JSONObject request = new JSONObject();
+        request.put(KEY_CMD, CMD_REGISTER);
+
+        Map<String, CompletableFuture<String>> probes = new LinkedHashMap<>(this.candidates.size());
+        for ( String address : this.candidates.keySet() ) {
+            probes.put(address, this.probe(address, request.toString()));
+        }
+
+        try {
+            CompletableFuture.allOf(probes.values().toArray(new CompletableFuture<?>[0])).get(this.probeTimeout, TimeUnit.MILLISECONDS);
         } catch ( InterruptedException e ) {
             LOG.error("Robot request was interrupted: {}", e.getMessage());
-        } catch ( ExecutionException e ) {
-            LOG.info("Could not find RNDIS robot: {}", e.getMessage());
-        } catch ( InstantiationException | InvocationTargetException | NoSuchMethodException | IllegalAccessException e ) {
-            LOG.error("Robot not implemented: {}", e.getMessage());
+            Thread.currentThread().interrupt();
+            probes.values().forEach(probe -> probe.cancel(true));
+            return Collections.emptyList();
+        } catch ( ExecutionException | TimeoutException e ) {
+            // at least one candidate did not answer in time, the others are checked below
         }
 
-        return Collections.emptyList();
+        List<IRobot> robots = new ArrayList<>(probes.size());
+        for ( Entry<String, CompletableFuture<String>> entry : probes.entrySet() ) {
+            CompletableFuture<String> probe = entry.getValue();
+            if ( !probe.isDone() || probe.isCompletedExceptionally() ) {
+                probe.cancel(true);
+                continue;
+            }
+            try {
+                robots.add(this.candidates.get(entry.getKey()).getConstructor(String.class).newInstance(probe.join()));
+            } catch ( InstantiationException | InvocationTargetException | NoSuchMethodException | IllegalAccessException e ) {
+                LOG.error("Robot not implemented: {}", e.getMessage());
+            }
+        }
+        return robots;
+    }
+
+    private CompletableFuture<String> probe(String address, String request) {
+        long start = System.nanoTime();
+        return ServerConnectionPool.getAsyncClient().preparePost("http://" + address + "/brickinfo")
+            .addHeader("ContentType", ContentType.APPLICATION_JSON)
+            .setBody(request)
+            .setRequestTimeout((int) this.probeTimeout)
+            .execute(new StringAsyncCompletionHandler())
+            .toCompletableFuture()
+            .whenComplete((name, e) -> {
+                long latency = System.nanoTime() - start;
+                Metrics.increment("rndis.probe.count");
+                Metrics.add("rndis.probe.nanos", latency);
+                if ( e == null ) {
+                    LOG.debug("RNDIS robot {} at {} answered after {} ms", name, address, TimeUnit.NANOSECONDS.toMillis(latency));
+                } else {
+                    Metrics.increment("rndis.probe.failed");
+                    LOG.info("Could not find RNDIS robot at {} after {} ms: {}", address, TimeUnit.NANOSECONDS.toMillis(latency), e.getMessage());
+                }
+            });
     }
 
     private static class StringAsyncCompletionHandler extends AsyncCompletionHandler<String> {
@@ -0,0 +1,384 @@
+package de.fhg.iais.roberta.connection.wired;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.fazecast.jSerialComm.SerialPort;
+import com.fazecast.jSerialComm.SerialPortDataListener;
+import com.fazecast.jSerialComm.SerialPortEvent;
+import com.fazecast.jSerialComm.SerialPortInvalidPortException;
+
+import de.fhg.iais.roberta.util.IOraListenable;
+import de.fhg.iais.roberta.util.IOraListener;
+
+/**
+ * Owns one open handle per serial port and leases it to its users, so the port is not closed and opened again around every upload.
+ * An exclusive lease is given to uploaders, shared leases to readers like the serial monitor. Shared holders should check
+ * {@link Lease#isContended()} regularly and release their lease when an exclusive lease is waiting. A closed lease keeps the port closed for
+ * external flashing tools. If a device is unplugged, its handle is closed and listeners are notified with the port name. A port is forgotten once
+ * its handle is closed and nobody holds or waits for a lease.
+ */
+public final class SerialPortBroker implements IOraListenable<String> {
+    private static final Logger LOG = LoggerFactory.getLogger(SerialPortBroker.class);
+
+    public static final long HANDOVER_TIMEOUT = 2000L; // shared holders release their lease within a read
+
+    private static final class InstanceHolder {
+        private static final SerialPortBroker instance = new SerialPortBroker();
+    }
+
+    /**
+     * Opens serial ports, the default implementation opens the port of the system.
+     */
+    interface PortOpener {
+        /**
+         * Opens the port.
+         *
+         * @param portName the name of the port, e.g. ttyACM0 or COM3
+         * @return the opened port, null if it could not be opened
+         */
+        SerialPort open(String portName);
+    }
+
+    private final Collection<IOraListener<String>> listeners = new CopyOnWriteArrayList<>();
+
+    private final PortOpener opener;
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    private SerialPortBroker() {
+        this.opener = this::openPort;
+    }
+
+    SerialPortBroker(PortOpener opener) {
+        this.opener = opener;
+    }
+
+    public static SerialPortBroker getInstance() {
+        return InstanceHolder.instance;
+    }
+
+    /**
+     * Leases the port exclusively, e.g. for an upload. Waits until all other leases are released.
+     *
+     * @param portName the name of the port
+     * @param baudRate the baud rate the port is set to, 0 to keep the current rate
+     * @param timeout the maximum time to wait in milliseconds
+     * @return the lease, it has to be closed by the same thread, null if the port is still leased after the timeout
+     * @throws InterruptedException if the thread was interrupted while waiting
+     * @throws IllegalStateException if the port could not be opened
+     */
+    public Lease acquireExclusive(String portName, int baudRate, long timeout) throws InterruptedException {
+        return this.acquire(portName, baudRate, timeout, true, true);
+    }
+
+    /**
+     * Leases the port for reading, e.g. for the serial monitor. Waits only for an exclusive lease to be released.
+     *
+     * @param portName the name of the port
+     * @param baudRate the baud rate the port is set to, 0 to keep the current rate
+     * @param timeout the maximum time to wait in milliseconds
+     * @return the lease, it has to be closed by the same thread, null if the port is still leased after the timeout
+     * @throws InterruptedException if the thread was interrupted while waiting
+     * @throws IllegalStateException if the port could not be opened
+     */
+    public Lease acquireShared(String portName, int baudRate, long timeout) throws InterruptedException {
+        return this.acquire(portName, baudRate, timeout, false, true);
+    }
+
+    /**
+     * Leases the port exclusively and closes its handle, e.g. for external flashing tools like avrdude. The port is opened again with the next
+     * lease after this one is released.
+     *
+     * @param portName the name of the port
+     * @param timeout the maximum time to wait in milliseconds
+     * @return the lease without a port, it has to be closed by the same thread, null if the port is still leased after the timeout
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public Lease acquireClosed(String portName, long timeout) throws InterruptedException {
+        return this.acquire(portName, 0, timeout, true, false);
+    }
+
+    /**
+     * Closes the handle of the port, e.g. when its robot is no longer used. Waits like an upload for shared holders to hand the port over, if it
+     * is still leased after that, the handle is closed when the last lease is released.
+     *
+     * @param portName the name of the port
+     */
+    public void closePort(String portName) {
+        synchronized ( this.entries ) {
+            if ( !this.entries.containsKey(portName) ) {
+                return;
+            }
+        }
+        Lease lease = null;
+        try {
+            lease = this.acquireClosed(portName, HANDOVER_TIMEOUT);
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+        if ( lease != null ) {
+            lease.close();
+            return;
+        }
+        synchronized ( this.entries ) {
+            Entry entry = this.entries.get(portName);
+            if ( entry == null ) {
+                return;
+            }
+            if ( entry.users > 0 ) {
+                LOG.info("Serial port {} is still leased, it is closed with the last lease", portName);
+                entry.closeWhenReleased = true;
+            } else { // released since the attempt
+                entry.closePort(null);
+                entry.removeIfUnused();
+            }
+        }
+    }
+
+    @Override
+    public void registerListener(IOraListener<String> listener) {
+        this.listeners.add(listener);
+    }
+
+    @Override
+    public void unregisterListener(IOraListener<String> listener) {
+        this.listeners.remove(listener);
+    }
+
+    @Override
+    public void fire(String object) {
+        for ( IOraListener<String> listener : this.listeners ) {
+            listener.update(object);
+        }
+    }
+
+    /**
+     * Closes the handle of an unplugged device and notifies the listeners.
+     *
+     * @param portName the name of the port
+     * @param port the handle that reported the disconnect, stale handles are ignored
+     */
+    void disconnected(String portName, SerialPort port) {
+        Entry entry;
+        synchronized ( this.entries ) {
+            entry = this.entries.get(portName);
+        }
+        if ( (entry != null) && entry.closePort(port) ) {
+            LOG.info("Serial port {} was disconnected", portName);
+            synchronized ( this.entries ) {
+                entry.removeIfUnused();
+            }
+            this.fire(portName);
+        }
+    }
+
+    /**
+     * Returns whether the broker keeps an entry for the port, i.e. its handle is open or the port is leased.
+     *
+     * @param portName the name of the port
+     * @return whether the port is known
+     */
+    boolean isKnown(String portName) {
+        synchronized ( this.entries ) {
+            return this.entries.containsKey(portName);
+        }
+    }
+
+    private Lease acquire(String portName, int baudRate, long timeout, boolean exclusive, boolean open) throws InterruptedException {
+        Entry entry;
+        synchronized ( this.entries ) {
+            entry = this.entries.computeIfAbsent(portName, Entry::new);
+            entry.users++;
+        }
+        Lock lock = exclusive ? entry.lock.writeLock() : entry.lock.readLock();
+        boolean locked = false;
+        try {
+            if ( exclusive ) {
+                entry.exclusiveWaiters.incrementAndGet();
+                try {
+                    locked = lock.tryLock(timeout, TimeUnit.MILLISECONDS);
+                } finally {
+                    entry.exclusiveWaiters.decrementAndGet();
+                }
+            } else {
+                locked = lock.tryLock(timeout, TimeUnit.MILLISECONDS);
+            }
+        } finally {
+            if ( !locked ) {
+                entry.release();
+            }
+        }
+        if ( !locked ) {
+            LOG.debug("Serial port {} is still leased", portName);
+            return null;
+        }
+        try {
+            if ( open ) {
+                entry.openPort(portName, baudRate);
+            } else {
+                entry.closePort(null);
+            }
+        } catch ( RuntimeException e ) {
+            lock.unlock();
+            entry.release();
+            throw e;
+        }
+        return new Lease(entry, lock, exclusive);
+    }
+
+    private SerialPort openPort(String portName) {
+        SerialPort port;
+        try {
+            port = SerialPort.getCommPort((SystemUtils.IS_OS_WINDOWS ? "" : "/dev/") + portName);
+        } catch ( SerialPortInvalidPortException e ) {
+            LOG.error("Serial port {} does not exist: {}", portName, e.getMessage());
+            return null;
+        }
+        if ( !port.openPort() ) {
+            return null;
+        }
+        port.addDataListener(new DisconnectListener(portName, port));
+        LOG.info("Serial port {} {} opened", port.getSystemPortName(), port.getDescriptivePortName());
+        return port;
+    }
+
+    private final class Entry {
+        private final String portName;
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        // the queue of the lock also holds readers waiting behind an exclusive lease, so exclusive attempts are counted separately
+        private final AtomicInteger exclusiveWaiters = new AtomicInteger();
+        private SerialPort port = null;
+        // guarded by the entries, holders and waiters of a lease
+        private int users = 0;
+        private boolean closeWhenReleased = false;
+
+        Entry(String portName) {
+            this.portName = portName;
+        }
+
+        // called for every lease and failed attempt, after the lock is released
+        void release() {
+            synchronized ( SerialPortBroker.this.entries ) {
+                this.users--;
+                if ( (this.users == 0) && this.closeWhenReleased ) {
+                    this.closeWhenReleased = false;
+                    this.closePort(null);
+                }
+                this.removeIfUnused();
+            }
+        }
+
+        // has to be called while holding the entries
+        void removeIfUnused() {
+            if ( (this.users == 0) && (this.getPort() == null) ) {
+                SerialPortBroker.this.entries.remove(this.portName, this);
+            }
+        }
+
+        synchronized SerialPort getPort() {
+            return this.port;
+        }
+
+        // keeps the open handle, it is only replaced if the device was unplugged or the port closed
+        synchronized void openPort(String portName, int baudRate) {
+            if ( this.port == null ) {
+                this.port = SerialPortBroker.this.opener.open(portName);
+                if ( this.port == null ) {
+                    throw new IllegalStateException("Port " + portName + " is not available!");
+                }
+            }
+            if ( (baudRate > 0) && (this.port.getBaudRate() != baudRate) ) {
+                this.port.setBaudRate(baudRate);
+            }
+        }
+
+        synchronized boolean closePort(SerialPort expected) {
+            if ( (this.port == null) || ((expected != null) && (this.port != expected)) ) {
+                return false;
+            }
+            this.port.removeDataListener();
+            this.port.closePort();
+            this.port = null;
+            return true;
+        }
+    }
+
+    /**
+     * Access to a serial port, it has to be closed by the thread that acquired it.
+     */
+    public static final class Lease implements AutoCloseable {
+        private final Entry entry;
+        private final Lock lock;
+        private final boolean exclusive;
+        private boolean released = false;
+
+        private Lease(Entry entry, Lock lock, boolean exclusive) {
+            this.entry = entry;
+            this.lock = lock;
+            this.exclusive = exclusive;
+        }
+
+        /**
+         * Returns the port. Settings like timeouts are shared with the other users of the port and should be set after acquiring the lease.
+         *
+         * @return the port, null for a closed lease or if the port was closed
+         */
+        public SerialPort getPort() {
+            return this.entry.getPort();
+        }
+
+        public boolean isExclusive() {
+            return this.exclusive;
+        }
+
+        /**
+         * Returns whether an exclusive lease is waiting for this shared lease to be released.
+         *
+         * @return whether the lease should be released
+         */
+        public boolean isContended() {
+            return !this.exclusive && (this.entry.exclusiveWaiters.get() > 0);
+        }
+
+        @Override
+        public void close() {
+            if ( !this.released ) {
+                this.released = true;
+                this.lock.unlock();
+                this.entry.release();
+            }
+        }
+    }
+
+    private final class DisconnectListener implements SerialPortDataListener {
+        private final String portName;
+        private final SerialPort port;
+
+        DisconnectListener(String portName, SerialPort port) {
+            this.portName = portName;
+            this.port = port;
+        }
+
+        @Override
+        public int getListeningEvents() {
+            return SerialPort.LISTENING_EVENT_PORT_DISCONNECTED;
+        }
+
+        @Override
+        public void serialEvent(SerialPortEvent event) {
+            if ( event.getEventType() == SerialPort.LISTENING_EVENT_PORT_DISCONNECTED ) {
+                SerialPortBroker.this.disconnected(this.portName, this.port);
+            }
+        }
+    }
+}
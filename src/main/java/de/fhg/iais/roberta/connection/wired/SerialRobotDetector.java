@@ -2,23 +2,17 @@ package de.fhg.iais.roberta.connection.wired;
 
 import de.fhg.iais.roberta.connection.wired.mBot2.Mbot2;
 import de.fhg.iais.roberta.connection.wired.spike.Spike;
-import static de.fhg.iais.roberta.util.WiredRobotIdFileHelper.load;
 
 import java.io.BufferedReader;
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.nio.file.Files;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import org.apache.commons.codec.Charsets;
 import org.apache.commons.lang3.SystemUtils;
@@ -29,32 +23,47 @@ import de.fhg.iais.roberta.connection.IDetector;
 import de.fhg.iais.roberta.connection.IRobot;
 import de.fhg.iais.roberta.connection.wired.arduino.Arduino;
 import de.fhg.iais.roberta.connection.wired.microbit.Microbit;
-import de.fhg.iais.roberta.util.Pair;
+import de.fhg.iais.roberta.util.IOraListener;
 import de.fhg.iais.roberta.util.SerialDevice;
+import de.fhg.iais.roberta.util.WiredRobotIdFileHelper;
+import de.fhg.iais.roberta.util.WiredRobotIdTable;
 
 public class SerialRobotDetector implements IDetector {
     private static final Logger LOG = LoggerFactory.getLogger(SerialRobotDetector.class);
 
-    private Map<SerialDevice, WiredRobotType> supportedRobots;
-    private Map<Integer, String> readIdFileErrors;
+    private static final long LINUX_INTERVAL = 500L; // only reads the device snapshot
+    private static final long INTERVAL = 1000L; // starts a process to list the devices
+
+    private WiredRobotIdTable supportedRobots;
 
     public SerialRobotDetector() {
-        Pair<Map<SerialDevice, WiredRobotType>, Map<Integer, String>> loadIdsResult = load();
-        this.supportedRobots = loadIdsResult.getFirst();
-        this.readIdFileErrors = loadIdsResult.getSecond();
+        this.supportedRobots = WiredRobotIdFileHelper.getTable();
     }
 
     public Map<Integer, String> getReadIdFileErrors() {
-        return new HashMap<>(this.readIdFileErrors);
+        return new HashMap<>(this.supportedRobots.getErrors());
+    }
+
+    @Override
+    public long getInterval() {
+        return SystemUtils.IS_OS_LINUX ? LINUX_INTERVAL : INTERVAL;
+    }
+
+    @Override
+    public boolean registerChangeListener(IOraListener<IDetector> listener) {
+        if ( SystemUtils.IS_OS_LINUX ) {
+            UsbDeviceMonitor monitor = UsbDeviceMonitor.getInstance();
+            monitor.registerListener(devices -> listener.update(this));
+            return monitor.isWatching();
+        }
+        return false;
     }
 
     @Override
     public List<IRobot> detectRobots() {
         List<IRobot> detectedRobots = new ArrayList<>(20);
 
-        Pair<Map<SerialDevice, WiredRobotType>, Map<Integer, String>> loadIdsResult = load();
-        this.supportedRobots = loadIdsResult.getFirst();
-        this.readIdFileErrors = loadIdsResult.getSecond();
+        this.supportedRobots = WiredRobotIdFileHelper.getTable();
 
         List<SerialDevice> devices = getUsbDevices();
 
@@ -96,8 +105,7 @@ public class SerialRobotDetector implements IDetector {
     }
 
     public static String getPortOfConnectedRobotType(WiredRobotType wiredRobotTypeToLookup) {
-        Pair<Map<SerialDevice, WiredRobotType>, Map<Integer, String>> loadIdsResult = load();
-        Map<SerialDevice, WiredRobotType> supportedRobots = loadIdsResult.getFirst();
+        WiredRobotIdTable supportedRobots = WiredRobotIdFileHelper.getTable();
         List<SerialDevice> devices = getUsbDevices();
         for ( SerialDevice device : devices ) {
             WiredRobotType wiredRobotType = supportedRobots.get(device);
@@ -123,47 +131,7 @@ public class SerialRobotDetector implements IDetector {
     }
 
     private static List<SerialDevice> getUsbDevicesLinux() {
-        List<SerialDevice> devices = new ArrayList<>(5);
-        File devicesDir = new File("/sys/bus/usb/devices");
-
-        // check every usb device
-        for ( File deviceDir : Objects.requireNonNull(devicesDir.listFiles()) ) {
-            File idVendorFile = new File(deviceDir, "idVendor");
-            File idProductFile = new File(deviceDir, "idProduct");
-
-            // if the id files exist check the content
-            if ( idVendorFile.exists() && idProductFile.exists() ) {
-                try (Stream<String> vendorLines = Files.lines(idVendorFile.toPath()); Stream<String> productLines = Files.lines(idProductFile.toPath())) {
-
-                    String idVendor = vendorLines.findFirst().orElseThrow(() -> new IllegalStateException("Vendor id could not be read"));
-                    String idProduct = productLines.findFirst().orElseThrow(() -> new IllegalStateException("Product id could not be read"));
-
-                    // recover the tty portname of the device
-                    // it can be found in the subdirectory with the same name as the device
-                    String[] port = new String[1];
-                    for ( File subDir : deviceDir.listFiles() ) {
-                        if ( subDir.getName().contains(deviceDir.getName()) ) {
-                            List<File> subSubDirs = Arrays.asList(subDir.listFiles());
-
-                            // look for a directory containing tty, in case its only called tty look into it to find the real name
-                            subSubDirs
-                                .stream()
-                                .filter(file -> file.getName().contains("tty"))
-                                .findFirst()
-                                .ifPresent(file -> port[0] = file.getName().equals("tty") ? file.list()[0] : file.getName());
-                        }
-                    }
-
-                    if ( port[0] != null ) {
-                        devices.add(new SerialDevice(idVendor, idProduct, port[0], ""));
-                    }
-
-                } catch ( IOException e ) {
-                    // continue if id files do not exist
-                }
-            }
-        }
-        return devices;
+        return UsbDeviceMonitor.getInstance().getDevices();
     }
 
     private static List<SerialDevice> getUsbDevicesWindows() {
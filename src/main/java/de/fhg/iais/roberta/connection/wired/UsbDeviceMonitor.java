@@ -0,0 +1,318 @@
+package de.fhg.iais.roberta.connection.wired;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import de.fhg.iais.roberta.util.IOraListenable;
+import de.fhg.iais.roberta.util.IOraListener;
+import de.fhg.iais.roberta.util.PropertyHelper;
+import de.fhg.iais.roberta.util.SerialDevice;
+
+/**
+ * Keeps an in memory snapshot of the USB serial devices on Linux.
+ * The sysfs device tree is only scanned again when a tty node in /dev is created or removed, so detection cycles read the snapshot instead of walking
+ * sysfs. Only /dev is watched, sysfs does not produce inotify events. Devices without a node in /dev are not part of the snapshot, as the node of an
+ * unplugged device may be removed before its sysfs entry. If /dev cannot be watched, or the usbMonitorMode property is set to poll, the tree is
+ * scanned periodically. Listeners are notified with the new snapshot whenever it changes.
+ */
+public final class UsbDeviceMonitor implements IOraListenable<List<SerialDevice>> {
+    private static final Logger LOG = LoggerFactory.getLogger(UsbDeviceMonitor.class);
+
+    private static final Path SYSFS_USB_DEVICES = Paths.get("/sys/bus/usb/devices");
+    private static final Path DEV = Paths.get("/dev");
+
+    private static final long POLL_INTERVAL = 1000L;
+    private static final long RESYNC_INTERVAL = 30000L; // safety net for missed events
+    private static final long SETTLE_TIME = 50L; // a device creates several nodes in quick succession
+
+    private static final class InstanceHolder {
+        private static final UsbDeviceMonitor instance =
+            new UsbDeviceMonitor(SYSFS_USB_DEVICES, DEV, "poll".equals(PropertyHelper.getInstance().getProperty("usbMonitorMode")));
+    }
+
+    private final Collection<IOraListener<List<SerialDevice>>> listeners = new CopyOnWriteArrayList<>();
+
+    private final Path sysfsDevices;
+    private final Path dev;
+    private final boolean forcePolling;
+
+    private volatile List<SerialDevice> devices = Collections.emptyList();
+    private volatile boolean running = false;
+    private Thread thread = null;
+    private WatchService watchService = null;
+
+    /**
+     * Creates a device monitor. It does not run until {@link #start()} is called.
+     *
+     * @param sysfsDevices the sysfs usb device directory, usually /sys/bus/usb/devices
+     * @param dev the device node directory, usually /dev
+     * @param forcePolling whether the tree should be scanned periodically instead of watching /dev
+     */
+    UsbDeviceMonitor(Path sysfsDevices, Path dev, boolean forcePolling) {
+        this.sysfsDevices = sysfsDevices;
+        this.dev = dev;
+        this.forcePolling = forcePolling;
+    }
+
+    /**
+     * Returns the monitor for the system's device directories, it is started on first use.
+     *
+     * @return the started system monitor
+     */
+    public static UsbDeviceMonitor getInstance() {
+        UsbDeviceMonitor monitor = InstanceHolder.instance;
+        monitor.start();
+        return monitor;
+    }
+
+    /**
+     * Scans the devices once and starts watching for changes in the background. Does nothing if the monitor is already running.
+     */
+    public synchronized void start() {
+        if ( this.running ) {
+            return;
+        }
+        this.running = true;
+        if ( !Files.isDirectory(this.sysfsDevices) ) {
+            LOG.warn("{} does not exist, no USB serial devices will be found", this.sysfsDevices);
+        }
+        this.devices = this.scanConnected();
+
+        if ( !this.forcePolling ) {
+            try {
+                this.watchService = FileSystems.getDefault().newWatchService();
+                this.dev.register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE);
+            } catch ( IOException | UnsupportedOperationException e ) {
+                LOG.warn("Could not watch {}, polling instead: {}", this.dev, e.getMessage());
+                this.closeWatchService();
+            }
+        }
+
+        this.thread = new Thread(this::run, "UsbDeviceMonitor");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Stops monitoring. The last snapshot stays available.
+     */
+    public synchronized void close() {
+        this.running = false;
+        this.closeWatchService();
+        if ( this.thread != null ) {
+            this.thread.interrupt();
+            this.thread = null;
+        }
+    }
+
+    /**
+     * Returns whether the monitor watches /dev, false if it polls.
+     *
+     * @return whether events are used
+     */
+    public boolean isWatching() {
+        return this.watchService != null;
+    }
+
+    /**
+     * Returns the current snapshot of the connected USB serial devices.
+     *
+     * @return an unmodifiable list of the devices
+     */
+    public List<SerialDevice> getDevices() {
+        return this.devices;
+    }
+
+    @Override
+    public void registerListener(IOraListener<List<SerialDevice>> listener) {
+        this.listeners.add(listener);
+    }
+
+    @Override
+    public void unregisterListener(IOraListener<List<SerialDevice>> listener) {
+        this.listeners.remove(listener);
+    }
+
+    @Override
+    public void fire(List<SerialDevice> object) {
+        for ( IOraListener<List<SerialDevice>> listener : this.listeners ) {
+            listener.update(object);
+        }
+    }
+
+    private void run() {
+        WatchService currentWatchService = this.watchService;
+        try {
+            while ( this.running ) {
+                if ( currentWatchService == null ) {
+                    Thread.sleep(POLL_INTERVAL);
+                } else if ( !this.awaitChange(currentWatchService) ) {
+                    continue;
+                }
+                this.update();
+            }
+        } catch ( InterruptedException | ClosedWatchServiceException e ) {
+            // closed
+        }
+    }
+
+    private boolean awaitChange(WatchService currentWatchService) throws InterruptedException {
+        WatchKey key = currentWatchService.poll(RESYNC_INTERVAL, TimeUnit.MILLISECONDS);
+        if ( key == null ) {
+            return true;
+        }
+        boolean relevant = false;
+        do {
+            for ( WatchEvent<?> event : key.pollEvents() ) {
+                relevant |= isRelevant(event);
+            }
+            key.reset();
+            // let the device settle, collect the events of the other nodes
+            key = currentWatchService.poll(SETTLE_TIME, TimeUnit.MILLISECONDS);
+        } while ( key != null );
+        return relevant;
+    }
+
+    private static boolean isRelevant(WatchEvent<?> event) {
+        if ( event.kind() == StandardWatchEventKinds.OVERFLOW ) {
+            return true;
+        }
+        return event.context().toString().startsWith("tty");
+    }
+
+    private void update() {
+        List<SerialDevice> scanned = this.scanConnected();
+        if ( !isSameSnapshot(this.devices, scanned) ) {
+            this.devices = scanned;
+            LOG.debug("USB serial devices changed: {}", scanned.size());
+            this.fire(scanned);
+        }
+    }
+
+    private List<SerialDevice> scanConnected() {
+        List<SerialDevice> scanned = scan(this.sysfsDevices);
+        List<SerialDevice> connected = new ArrayList<>(scanned.size());
+        for ( SerialDevice device : scanned ) {
+            if ( Files.exists(this.dev.resolve(device.port)) ) {
+                connected.add(device);
+            }
+        }
+        return Collections.unmodifiableList(connected);
+    }
+
+    private void closeWatchService() {
+        if ( this.watchService != null ) {
+            try {
+                this.watchService.close();
+            } catch ( IOException e ) {
+                // ok
+            }
+            this.watchService = null;
+        }
+    }
+
+    // SerialDevice equality ignores the port, a snapshot also changes when a device moves to another port
+    private static boolean isSameSnapshot(List<SerialDevice> first, List<SerialDevice> second) {
+        if ( first.size() != second.size() ) {
+            return false;
+        }
+        for ( int i = 0; i < first.size(); i++ ) {
+            if ( !first.get(i).equals(second.get(i)) || !first.get(i).port.equals(second.get(i).port) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Scans the sysfs usb device tree for devices with a tty.
+     *
+     * @param sysfsDevices the sysfs usb device directory
+     * @return an unmodifiable list of the found devices, sorted by port
+     */
+    static List<SerialDevice> scan(Path sysfsDevices) {
+        List<SerialDevice> devices = new ArrayList<>(5);
+        if ( !Files.isDirectory(sysfsDevices) ) {
+            return Collections.emptyList();
+        }
+
+        // check every usb device
+        try (DirectoryStream<Path> deviceDirs = Files.newDirectoryStream(sysfsDevices)) {
+            for ( Path deviceDir : deviceDirs ) {
+                Path idVendorFile = deviceDir.resolve("idVendor");
+                Path idProductFile = deviceDir.resolve("idProduct");
+
+                // if the id files exist check the content
+                if ( Files.exists(idVendorFile) && Files.exists(idProductFile) ) {
+                    try {
+                        String idVendor = readFirstLine(idVendorFile);
+                        String idProduct = readFirstLine(idProductFile);
+                        String port = findPort(deviceDir);
+                        if ( (idVendor != null) && (idProduct != null) && (port != null) ) {
+                            devices.add(new SerialDevice(idVendor, idProduct, port, ""));
+                        }
+                    } catch ( IOException e ) {
+                        // continue if the device was removed while reading
+                    }
+                }
+            }
+        } catch ( IOException e ) {
+            LOG.error("Could not list usb devices: {}", e.getMessage());
+        }
+        devices.sort((first, second) -> first.port.compareTo(second.port));
+        return Collections.unmodifiableList(devices);
+    }
+
+    // the tty port name can be found in the interface subdirectory with the same name as the device
+    private static String findPort(Path deviceDir) throws IOException {
+        String deviceName = deviceDir.getFileName().toString();
+        try (DirectoryStream<Path> subDirs = Files.newDirectoryStream(deviceDir, path -> path.getFileName().toString().contains(deviceName))) {
+            String port = null;
+            for ( Path subDir : subDirs ) {
+                if ( !Files.isDirectory(subDir) ) {
+                    continue;
+                }
+                // look for a directory containing tty, in case its only called tty look into it to find the real name
+                try (DirectoryStream<Path> ttyDirs = Files.newDirectoryStream(subDir, path -> path.getFileName().toString().contains("tty"))) {
+                    for ( Path ttyDir : ttyDirs ) {
+                        port = ttyDir.getFileName().toString().equals("tty") ? getFirstEntry(ttyDir) : ttyDir.getFileName().toString();
+                        break;
+                    }
+                }
+            }
+            return port;
+        }
+    }
+
+    private static String getFirstEntry(Path dir) throws IOException {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+            for ( Path entry : entries ) {
+                return entry.getFileName().toString();
+            }
+        }
+        return null;
+    }
+
+    private static String readFirstLine(Path file) throws IOException {
+        List<String> lines = Files.readAllLines(file);
+        return lines.isEmpty() ? null : lines.get(0).trim();
+    }
+}
@@ -17,7 +17,11 @@ import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fazecast.jSerialComm.SerialPort;
+
 import de.fhg.iais.roberta.connection.wired.IWiredRobot;
+import de.fhg.iais.roberta.connection.wired.SerialPortBroker;
+import de.fhg.iais.roberta.connection.wired.SerialPortBroker.Lease;
 import de.fhg.iais.roberta.connection.wired.SerialRobotDetector;
 import de.fhg.iais.roberta.connection.wired.WiredRobotType;
 import de.fhg.iais.roberta.util.Pair;
@@ -27,6 +31,8 @@ import de.fhg.iais.roberta.util.ZipHelper;
 class ArduinoCommunicator {
     private static final Logger LOG = LoggerFactory.getLogger(ArduinoCommunicator.class);
 
+    private static final long RESET_PULSE = 250L;
+
     private final String avrdudePath;
     private final String avrdudeConfPath;
     private final String bossacPath;
@@ -82,6 +88,20 @@ class ArduinoCommunicator {
     }
 
     Pair<Integer, String> uploadFile(String portName, String filePath) {
+        // the flashing tools open the port themselves, it is kept closed until they finished
+        try ( Lease lease = SerialPortBroker.getInstance().acquireClosed(portName, SerialPortBroker.HANDOVER_TIMEOUT) ) {
+            if ( lease == null ) {
+                LOG.error("Serial port {} is still in use", portName);
+                return new Pair<>(1, "Something went wrong while uploading the file.");
+            }
+            return this.flash(portName, filePath);
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            return new Pair<>(1, "Something went wrong while uploading the file.");
+        }
+    }
+
+    private Pair<Integer, String> flash(String portName, String filePath) {
         portName = (SystemUtils.IS_OS_WINDOWS ? "" : "/dev/") + portName; // to hide the parameter, which should not be used
         ArgsAdder args = new ArgsAdder();
         try {
@@ -166,6 +186,65 @@ class ArduinoCommunicator {
         }
     }
 
+    /**
+     * Checks whether the board can be restarted over the serial port, without flashing it again.
+     *
+     * @return whether {@link #resetBoard(String)} is supported for the robot type
+     */
+    boolean isResetSupported() {
+        switch ( this.robot.getType() ) {
+            case UNO:
+            case NANO:
+            case MEGA:
+            case BOTNROLL:
+            case MBOT:
+            case FESTOBIONIC:
+            case FESTOBIONICFLOWER:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Restarts the board by toggling the serial control lines, the same way the flashing tools do after an upload.
+     * The auto reset circuit of Arduinos is connected to DTR, the enable pin of the ESP32 boards to RTS.
+     *
+     * @param portName the port of the robot
+     * @return whether the reset was successful
+     */
+    boolean resetBoard(String portName) {
+        LOG.info("Restarting {} on {} without flashing", this.robot.getType(), portName);
+        // the port stays open afterwards, it is only leased exclusively
+        try ( Lease lease = SerialPortBroker.getInstance().acquireExclusive(portName, 0, SerialPortBroker.HANDOVER_TIMEOUT) ) {
+            if ( lease == null ) {
+                LOG.error("Serial port {} is still in use", portName);
+                return false;
+            }
+            SerialPort serialPort = lease.getPort();
+            if ( (this.robot.getType() == WiredRobotType.FESTOBIONIC) || (this.robot.getType() == WiredRobotType.FESTOBIONICFLOWER) ) {
+                serialPort.clearDTR();
+                serialPort.setRTS();
+                Thread.sleep(RESET_PULSE);
+                serialPort.clearRTS();
+            } else {
+                serialPort.clearDTR();
+                serialPort.clearRTS();
+                Thread.sleep(RESET_PULSE);
+                serialPort.setDTR();
+                serialPort.setRTS();
+                Thread.sleep(RESET_PULSE);
+            }
+            return true;
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch ( IllegalStateException e ) {
+            LOG.error("Could not open {} to restart the board: {}", portName, e.getMessage());
+            return false;
+        }
+    }
+
     /**
      * add the avrdudePath and some standard parameter to the arg list
      *
@@ -1,18 +1,21 @@
 package de.fhg.iais.roberta.connection.wired.arduino;
 
+import org.apache.commons.io.FileUtils;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.Supplier;
 
 import de.fhg.iais.roberta.connection.AbstractConnector;
+import de.fhg.iais.roberta.connection.wired.FlashedProgramCache;
+import de.fhg.iais.roberta.connection.wired.SerialPortBroker;
 import de.fhg.iais.roberta.util.OraTokenGenerator;
 import de.fhg.iais.roberta.util.Pair;
+import de.fhg.iais.roberta.util.PropertyHelper;
 
 /**
  * Connector class for Arduino robots. Handles state and communication between robot, connector and server.
@@ -20,6 +23,8 @@ import de.fhg.iais.roberta.util.Pair;
 public class ArduinoConnector extends AbstractConnector<Arduino> {
     private static final Logger LOG = LoggerFactory.getLogger(ArduinoConnector.class);
 
+    private static final boolean SKIP_IDENTICAL_UPLOAD = Boolean.parseBoolean(PropertyHelper.getInstance().getProperty("skipIdenticalUpload"));
+
     private ArduinoCommunicator arduinoCommunicator = null;
 
     ArduinoConnector(Arduino arduino) {
@@ -75,34 +80,25 @@ public class ArduinoConnector extends AbstractConnector<Arduino> {
                         break;
                     } else if ( cmdKey.equals(CMD_DOWNLOAD) ) {
                         LOG.info("Download user program");
+                        Path program = null;
                         try {
-                            Pair<byte[], String> program = this.serverCommunicator.downloadProgram(this.brickData);
-                            File temp = File.createTempFile(program.getSecond(), "");
-                            temp.deleteOnExit();
-
-                            if ( !temp.exists() ) {
-                                throw new FileNotFoundException("File " + temp.getAbsolutePath() + " does not exist.");
-                            }
-
-                            try (FileOutputStream os = new FileOutputStream(temp)) {
-                                os.write(program.getFirst());
-                            }
+                            program = this.serverCommunicator.downloadProgramToFile(this.brickData, "");
 
                             this.fire(State.WAIT_UPLOAD);
-                            Pair<Integer, String> result = this.arduinoCommunicator.uploadFile(this.robot.getPort(), temp.getAbsolutePath());
+                            Pair<Integer, String> result = this.uploadProgram(program);
                             if (result.getFirst() != 0) {
                                 this.fire(State.ERROR_UPLOAD_TO_ROBOT.setAdditionalInfo(result.getSecond()));
                                 this.fire(State.WAIT_FOR_CMD);
                             }
-                        } catch ( FileNotFoundException e ) {
-                            LOG.info("File not found: {}", e.getMessage());
-                            this.fire(State.ERROR_UPLOAD_TO_ROBOT);
-                            this.fire(State.WAIT_FOR_CMD);
                         } catch ( IOException io ) {
                             LOG.info("Download and run failed: {}", io.getMessage());
                             LOG.info("Do not give up yet - make the next push request");
                             this.fire(State.ERROR_UPLOAD_TO_ROBOT);
                             this.fire(State.WAIT_FOR_CMD);
+                        } finally {
+                            if ( program != null ) {
+                                FileUtils.deleteQuietly(program.toFile());
+                            }
                         }
                     } else if ( cmdKey.equals(CMD_CONFIGURATION) ) {
                         LOG.info("Configuration");
@@ -124,4 +120,30 @@ public class ArduinoConnector extends AbstractConnector<Arduino> {
                 break;
         }
     }
+
+    /**
+     * Flashes the program to the robot. If enabled, flashing is skipped when the program is identical to the last flashed one and the board is only
+     * restarted.
+     *
+     * @param program the downloaded program
+     * @return the result of the upload
+     * @throws IOException if the program could not be read
+     */
+    private Pair<Integer, String> uploadProgram(Path program) throws IOException {
+        String port = this.robot.getPort();
+        Supplier<Pair<Integer, String>> flash = () -> this.arduinoCommunicator.uploadFile(port, program.toString());
+        if ( SKIP_IDENTICAL_UPLOAD && this.arduinoCommunicator.isResetSupported() ) {
+            String serialNumber = FlashedProgramCache.getSerialNumber(port);
+            return FlashedProgramCache.flashUnlessIdentical(this.robot, serialNumber, program, () -> this.arduinoCommunicator.resetBoard(port), flash);
+        }
+        return flash.get();
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        // connectors are closed when their robot is unplugged, another board may be plugged in at the same port
+        FlashedProgramCache.invalidate(this.robot);
+        SerialPortBroker.getInstance().closePort(this.robot.getPort());
+    }
 }
@@ -29,6 +29,8 @@ public class Ev3Connector extends AbstractConnector<Ev3> {
 
     private static final String brickIp = PropertyHelper.getInstance().getProperty("brickIp");
 
+    private static final long BRICK_POLL_INTERVAL = 500L;
+
     private final Ev3Communicator ev3comm;
 
     private final String[] fwfiles = {
@@ -190,6 +192,19 @@ public class Ev3Connector extends AbstractConnector<Ev3> {
         }
     }
 
+    @Override
+    protected long getPollInterval(State state) {
+        switch ( state ) {
+            case DISCOVER:
+            case WAIT_FOR_CONNECT_BUTTON_PRESS:
+            case WAIT_EXECUTION:
+                // only checks whether the brick is available or a program is running
+                return BRICK_POLL_INTERVAL;
+            default:
+                return super.getPollInterval(state);
+        }
+    }
+
     @Override
     public void close() {
         super.close();
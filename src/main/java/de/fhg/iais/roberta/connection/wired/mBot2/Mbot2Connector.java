@@ -1,16 +1,17 @@
 package de.fhg.iais.roberta.connection.wired.mBot2;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
+import org.apache.commons.io.FileUtils;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.fhg.iais.roberta.connection.AbstractConnector;
+import de.fhg.iais.roberta.connection.wired.SerialPortBroker;
 import de.fhg.iais.roberta.util.OraTokenGenerator;
 import de.fhg.iais.roberta.util.Pair;
 
@@ -66,34 +67,22 @@ public class Mbot2Connector extends AbstractConnector<Mbot2> {
                             break;
                         case CMD_DOWNLOAD:
                             LOG.info("Download user program");
+                            Path program = this.serverCommunicator.downloadProgramToFile(this.brickData, "mbot2_");
                             try {
-                                Pair<byte[], String> program = this.serverCommunicator.downloadProgram(this.brickData);
-                                if ( program.getFirst().length > 65534 ) {
+                                if ( Files.size(program) > 65534 ) {
                                     this.fire(State.ERROR_UPLOAD_TO_ROBOT.setAdditionalInfo("errorRobotProgramTooLarge"));
                                     this.fire(State.WAIT_FOR_CMD);
                                     break;
                                 }
-                                File tmp = File.createTempFile("mbot2_", program.getSecond());
-                                tmp.deleteOnExit();
-
-                                if ( !tmp.exists() ) {
-                                    throw new FileNotFoundException("FIle " + tmp.getAbsolutePath() + " does not exist");
-                                }
-
-                                try (FileOutputStream os = new FileOutputStream(tmp)) {
-                                    os.write(program.getFirst());
-                                }
 
                                 this.fire(State.WAIT_UPLOAD);
-                                Pair<Integer, String> result = this.mbot2comm.uploadFile(this.robot.getPort(), tmp.getAbsolutePath());
+                                Pair<Integer, String> result = this.mbot2comm.uploadFile(this.robot.getPort(), program);
                                 if ( result.getFirst() != 0 ) {
-                                    this.fire(State.ERROR_UPLOAD_TO_ROBOT.setAdditionalInfo(result.getSecond()));
+                                    this.fire(State.ERROR_UPLOAD_TO_ROBOT.setAdditionalInfo(result.getSecond(), this.mbot2comm.getTransferSummary()));
                                     this.fire(State.WAIT_FOR_CMD);
                                 }
-                            } catch ( FileNotFoundException e ) {
-                                LOG.info("File not found: {}", e.getMessage());
-                                this.fire(State.ERROR_UPLOAD_TO_ROBOT);
-                                this.fire(State.WAIT_FOR_CMD);
+                            } finally {
+                                FileUtils.deleteQuietly(program.toFile());
                             }
                             break;
                         case CMD_CONFIGURATION:
@@ -126,4 +115,19 @@ public class Mbot2Connector extends AbstractConnector<Mbot2> {
         this.brickData.put(KEY_TOKEN, this.token);
         this.brickData.put(KEY_CMD, cmd);
     }
+
+    /**
+     * Returns the statistics of the last upload.
+     *
+     * @return the statistics, null if nothing was uploaded yet
+     */
+    public String getTransferSummary() {
+        return this.mbot2comm.getTransferSummary();
+    }
+
+    @Override
+    public void close() {
+        super.close();
+        SerialPortBroker.getInstance().closePort(this.robot.getPort());
+    }
 }
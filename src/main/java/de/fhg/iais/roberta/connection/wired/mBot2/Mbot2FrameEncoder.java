@@ -0,0 +1,137 @@
+package de.fhg.iais.roberta.connection.wired.mBot2;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes the frames of an mBot2 program upload directly from the program bytes.
+ * The first frame switches the robot to upload mode, the second announces the file with its size and checksum, the others carry a chunk of the
+ * program each, at its offset in the file. Frames are encoded on demand into one reused buffer, so an upload does not allocate per frame.
+ */
+final class Mbot2FrameEncoder {
+    static final int DEFAULT_CHUNK_SIZE = 0x40;
+    static final int MAX_CHUNK_SIZE = 0x400;
+
+    private static final byte[] MODE_UPLOAD = { (byte) 0xF3, (byte) 0xF6, 0x03, 0x00, 0x0D, 0x00, 0x00, 0x0D, (byte) 0xF4 };
+    private static final byte FRAME_HEADER = (byte) 0xF3;
+    private static final byte FRAME_FOOTER = (byte) 0xF4;
+    private static final byte PROTOCOL_ID = 0x01;
+    private static final byte DEVICE_ID = 0x00;
+    private static final byte SERVICE_ID = 0x5E;
+    private static final byte INSTRUCTION_HEADER = 0x01;
+    private static final byte INSTRUCTION_BODY = 0x02;
+    private static final byte FILE_TYPE = 0x00;
+    private static final int FRAME_OVERHEAD = 4 + 6 + 2; // frame header and lengths, ids and data length, checksum and footer
+
+    private final ByteBuffer program;
+    private final ByteBuffer source; // the program, bounded to the data of the current frame
+    private final byte[] fileName;
+    private final int checksum;
+    private final int chunkSize;
+    private final ByteBuffer frame;
+
+    /**
+     * Creates an encoder for the program.
+     *
+     * @param program the program, from its position to its limit, it is not modified
+     * @param fileName the name of the file on the robot
+     * @param chunkSize the number of program bytes per frame, the firmware is known to accept {@link #DEFAULT_CHUNK_SIZE}
+     */
+    Mbot2FrameEncoder(ByteBuffer program, String fileName, int chunkSize) {
+        if ( (chunkSize < 1) || (chunkSize > MAX_CHUNK_SIZE) ) {
+            throw new IllegalArgumentException("Chunk size " + chunkSize + " is not between 1 and " + MAX_CHUNK_SIZE);
+        }
+        this.chunkSize = chunkSize;
+        this.program = program.slice().order(ByteOrder.LITTLE_ENDIAN);
+        this.fileName = fileName.getBytes(StandardCharsets.US_ASCII);
+        this.source = this.program.duplicate();
+        this.checksum = xor32BitChecksum(this.program);
+        int headerDataSize = 1 + 4 + 4 + this.fileName.length;
+        this.frame = ByteBuffer.allocate(FRAME_OVERHEAD + Math.max(headerDataSize, 4 + chunkSize)).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Returns the number of frames of the upload, including the mode switch.
+     *
+     * @return the number of frames
+     */
+    int getFrameCount() {
+        return 2 + ((this.program.remaining() + this.chunkSize) - 1) / this.chunkSize;
+    }
+
+    /**
+     * Encodes a frame.
+     *
+     * @param index the index of the frame, from 0 to {@link #getFrameCount()} - 1
+     * @return the frame from position 0 to its limit, it is only valid until the next call
+     */
+    ByteBuffer encode(int index) {
+        // Buffer methods, as ByteBuffer only overrides them since Java 9
+        Buffer view = this.frame;
+        view.clear();
+        if ( index == 0 ) {
+            this.frame.put(MODE_UPLOAD);
+        } else if ( index == 1 ) {
+            this.beginFrame(INSTRUCTION_HEADER, 1 + 4 + 4 + this.fileName.length);
+            this.frame.put(FILE_TYPE);
+            this.frame.putInt(this.program.remaining());
+            this.frame.putInt(this.checksum);
+            this.frame.put(this.fileName);
+            this.endFrame();
+        } else {
+            int offset = (index - 2) * this.chunkSize;
+            int length = Math.min(this.chunkSize, this.program.remaining() - offset);
+            this.beginFrame(INSTRUCTION_BODY, 4 + length);
+            this.frame.putInt(offset);
+            Buffer sourceView = this.source;
+            sourceView.limit(offset + length);
+            sourceView.position(offset);
+            this.frame.put(this.source);
+            this.endFrame();
+        }
+        view.flip();
+        return this.frame;
+    }
+
+    private void beginFrame(byte instructionId, int dataSize) {
+        int frameSize = 6 + dataSize;
+        byte len1 = (byte) (frameSize % 256);
+        byte len2 = (byte) (frameSize / 256);
+        this.frame.put(FRAME_HEADER);
+        this.frame.put((byte) (FRAME_HEADER + len1 + len2));
+        this.frame.put(len1);
+        this.frame.put(len2);
+        this.frame.put(PROTOCOL_ID);
+        this.frame.put(DEVICE_ID);
+        this.frame.put(SERVICE_ID);
+        this.frame.put(instructionId);
+        this.frame.putShort((short) dataSize);
+    }
+
+    private void endFrame() {
+        // the checksum covers the ids and the data
+        byte[] bytes = this.frame.array();
+        byte checksum = 0x00;
+        for ( int i = 4; i < this.frame.position(); i++ ) {
+            checksum += bytes[i];
+        }
+        this.frame.put(checksum);
+        this.frame.put(FRAME_FOOTER);
+    }
+
+    // the little endian int of the bytes xored in groups of four, a shorter last group is padded with zeros
+    private static int xor32BitChecksum(ByteBuffer program) {
+        int checksum = 0;
+        int size = program.remaining();
+        int i = 0;
+        for ( ; i <= (size - 4); i += 4 ) {
+            checksum ^= program.getInt(i);
+        }
+        for ( int shift = 0; i < size; i++, shift += 8 ) {
+            checksum ^= (program.get(i) & 0xFF) << shift;
+        }
+        return checksum;
+    }
+}
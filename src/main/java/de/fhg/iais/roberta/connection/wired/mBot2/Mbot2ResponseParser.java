@@ -0,0 +1,157 @@
+package de.fhg.iais.roberta.connection.wired.mBot2;
+
+/**
+ * Parses the responses of the mBot2 to upload frames incrementally.
+ * Bytes are fed as they arrive, incomplete frames are kept until the rest arrives. A frame starts with F3, followed by the header checksum, the
+ * little endian body length, the body, the body checksum and F4. Bytes outside of frames and frames that are no upload responses are skipped.
+ */
+final class Mbot2ResponseParser {
+    /**
+     * The response to a frame.
+     */
+    enum Response {
+        /**
+         * The frame was received.
+         */
+        ACK,
+        /**
+         * The frame was rejected.
+         */
+        NAK,
+        /**
+         * A response arrived, but its body checksum does not match.
+         */
+        CORRUPT
+    }
+
+    private static final byte FRAME_HEADER = (byte) 0xF3;
+    private static final byte FRAME_FOOTER = (byte) 0xF4;
+    private static final int HEADER_SIZE = 4;
+    private static final int TRAILER_SIZE = 2;
+    private static final int BUFFER_SIZE = 1024;
+
+    // the body of the response to an upload frame, the last byte is the status
+    private static final byte[] UPLOAD_RESPONSE = { 0x01, 0x00, 0x5E, (byte) 0xF0, 0x01, 0x00 };
+    // the body of the response to the mode switch
+    private static final byte[] MODE_RESPONSE = { 0x0D, 0x00, 0x00 };
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int start = 0;
+    private int end = 0;
+
+    /**
+     * Appends received bytes.
+     *
+     * @param data the received bytes
+     * @param offset the offset in data
+     * @param length the number of received bytes
+     */
+    void feed(byte[] data, int offset, int length) {
+        while ( length > 0 ) {
+            if ( this.end == this.buffer.length ) {
+                this.compact();
+                if ( this.end == this.buffer.length ) { // no frame is that long, skip to the next header
+                    this.start++;
+                    this.skipToHeader();
+                    this.compact();
+                }
+            }
+            int count = Math.min(length, this.buffer.length - this.end);
+            System.arraycopy(data, offset, this.buffer, this.end, count);
+            this.end += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * Returns the next complete response.
+     *
+     * @return the response, null if no complete response was received yet
+     */
+    Response poll() {
+        while ( this.skipToHeader() ) {
+            if ( (this.end - this.start) < HEADER_SIZE ) {
+                return null;
+            }
+            byte len1 = this.buffer[this.start + 2];
+            byte len2 = this.buffer[this.start + 3];
+            int bodySize = (len1 & 0xFF) | ((len2 & 0xFF) << 8);
+            if ( (this.buffer[this.start + 1] != (byte) (FRAME_HEADER + len1 + len2))
+                || ((HEADER_SIZE + bodySize + TRAILER_SIZE) > this.buffer.length) ) {
+                // not a frame, the header byte was part of other output
+                this.start++;
+                continue;
+            }
+            int frameEnd = this.start + HEADER_SIZE + bodySize + TRAILER_SIZE;
+            if ( frameEnd > this.end ) {
+                return null;
+            }
+            if ( this.buffer[frameEnd - 1] != FRAME_FOOTER ) {
+                this.start++;
+                continue;
+            }
+            int body = this.start + HEADER_SIZE;
+            this.start = frameEnd;
+            Response response = this.classify(body, bodySize);
+            if ( response != null ) {
+                return response;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Discards all received bytes, e.g. before an upload.
+     */
+    void reset() {
+        this.start = 0;
+        this.end = 0;
+    }
+
+    private Response classify(int body, int bodySize) {
+        boolean upload = (bodySize == (UPLOAD_RESPONSE.length + 1)) && this.bodyStartsWith(body, UPLOAD_RESPONSE);
+        boolean mode = (bodySize == MODE_RESPONSE.length) && this.bodyStartsWith(body, MODE_RESPONSE);
+        if ( !upload && !mode ) {
+            return null;
+        }
+        byte checksum = 0x00;
+        for ( int i = body; i < (body + bodySize); i++ ) {
+            checksum += this.buffer[i];
+        }
+        if ( checksum != this.buffer[body + bodySize] ) {
+            return Response.CORRUPT;
+        }
+        if ( upload && (this.buffer[(body + bodySize) - 1] != 0x00) ) {
+            return Response.NAK;
+        }
+        return Response.ACK;
+    }
+
+    private boolean bodyStartsWith(int body, byte[] prefix) {
+        for ( int i = 0; i < prefix.length; i++ ) {
+            if ( this.buffer[body + i] != prefix[i] ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // returns whether a header byte was found, skipped bytes are discarded
+    private boolean skipToHeader() {
+        while ( (this.start < this.end) && (this.buffer[this.start] != FRAME_HEADER) ) {
+            this.start++;
+        }
+        if ( this.start == this.end ) {
+            this.reset();
+            return false;
+        }
+        return true;
+    }
+
+    private void compact() {
+        System.arraycopy(this.buffer, this.start, this.buffer, 0, this.end - this.start);
+        this.end -= this.start;
+        this.start = 0;
+    }
+}
@@ -0,0 +1,159 @@
+package de.fhg.iais.roberta.connection.wired.mBot2;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends the frames of an mBot2 upload and waits for their responses.
+ * Up to a window of data frames is sent before their responses are awaited, so the upload is not dominated by round trips. The responses do not
+ * name their frame, they are matched to the frames in order. The mode switch and the file header are always sent one by one. If a frame is
+ * rejected or not answered, all unanswered frames are sent again one by one and the rest of the upload falls back to stop-and-wait, as the robot
+ * may not keep up with the window. Data frames carry their offset, so a frame received twice does no harm.
+ */
+final class Mbot2Transfer {
+    private static final Logger LOG = LoggerFactory.getLogger(Mbot2Transfer.class);
+
+    static final long RESPONSE_TIMEOUT = 3000L;
+    static final int MAX_FRAME_ATTEMPTS = 3;
+    static final int MAX_RETRANSMITS = 16; // frames sent again for the whole upload, a failed window may need several
+
+    private static final int FIRST_DATA_FRAME = 2;
+
+    private final Mbot2Transport transport;
+    private final Mbot2FrameEncoder encoder;
+    private final Mbot2ResponseParser parser = new Mbot2ResponseParser();
+    private final byte[] readBuffer = new byte[128];
+    private final Mbot2TransferSummary summary;
+
+    private int window;
+    private boolean disconnected = false;
+
+    /**
+     * Creates a transfer.
+     *
+     * @param transport the connection to the robot
+     * @param encoder the frames to send
+     * @param window the maximum number of data frames sent without a response, 1 for stop-and-wait
+     * @param chunkSize the chunk size of the encoder, for the summary
+     */
+    Mbot2Transfer(Mbot2Transport transport, Mbot2FrameEncoder encoder, int window, int chunkSize) {
+        if ( window < 1 ) {
+            throw new IllegalArgumentException("Window " + window + " is smaller than 1");
+        }
+        this.transport = transport;
+        this.encoder = encoder;
+        this.window = window;
+        this.summary = new Mbot2TransferSummary(window, chunkSize);
+    }
+
+    /**
+     * Sends all frames.
+     *
+     * @return whether all frames were acknowledged
+     * @throws InterruptedException if the thread was interrupted between attempts
+     */
+    boolean run() throws InterruptedException {
+        int frameCount = this.encoder.getFrameCount();
+        int acknowledged = 0; // the frames before were acknowledged
+        int next = 0; // the next frame to write
+        int highestWritten = -1;
+        int attempts = 0; // of the first unacknowledged frame
+        this.parser.reset();
+        try {
+            while ( acknowledged < frameCount ) {
+                int limit = (acknowledged < FIRST_DATA_FRAME) ? 1 : this.window;
+                boolean failed = false;
+                while ( (next < frameCount) && ((next - acknowledged) < limit) ) {
+                    boolean retransmit = next <= highestWritten;
+                    if ( retransmit && (this.summary.getRetransmits() >= MAX_RETRANSMITS) ) {
+                        LOG.error("A package could not be delivered, {} frames were already sent again", MAX_RETRANSMITS);
+                        return false;
+                    }
+                    if ( !this.write(next, retransmit) ) {
+                        failed = true;
+                        break;
+                    }
+                    highestWritten = Math.max(highestWritten, next);
+                    next++;
+                }
+                if ( !failed ) {
+                    Mbot2ResponseParser.Response response = this.receive();
+                    if ( response == Mbot2ResponseParser.Response.ACK ) {
+                        acknowledged++;
+                        attempts = 0;
+                        this.summary.frameAcknowledged();
+                        continue;
+                    }
+                    LOG.info("Frame {} of {} was not acknowledged: {}", acknowledged, frameCount, (response == null) ? "no response" : response);
+                }
+                if ( this.disconnected ) {
+                    LOG.error("Could not send frame, robot seems to be disconnected");
+                    return false;
+                }
+                if ( ++attempts >= MAX_FRAME_ATTEMPTS ) {
+                    LOG.error("A package could not be delivered");
+                    return false;
+                }
+                if ( this.window > 1 ) {
+                    LOG.info("Falling back from a window of {} frames to stop-and-wait", this.window);
+                    this.window = 1;
+                    this.summary.fellBackToStopAndWait();
+                }
+                // discarding the input waits for the robot to be quiet already
+                if ( Thread.interrupted() ) {
+                    throw new InterruptedException();
+                }
+                this.discardInput();
+                next = acknowledged;
+            }
+            return true;
+        } finally {
+            this.summary.finish();
+        }
+    }
+
+    Mbot2TransferSummary getSummary() {
+        return this.summary;
+    }
+
+    private boolean write(int index, boolean retransmit) {
+        ByteBuffer frame = this.encoder.encode(index);
+        int length = frame.remaining();
+        int written = this.transport.write(frame.array(), length);
+        if ( written < 0 ) {
+            this.disconnected = true;
+        }
+        this.summary.frameWritten(Math.max(written, 0), retransmit);
+        return written == length;
+    }
+
+    // reads until a response is complete, partial responses are kept by the parser for the next frame
+    private Mbot2ResponseParser.Response receive() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RESPONSE_TIMEOUT);
+        Mbot2ResponseParser.Response response;
+        while ( (response = this.parser.poll()) == null ) {
+            if ( (System.nanoTime() - deadline) >= 0 ) {
+                return null;
+            }
+            int read = this.transport.read(this.readBuffer, this.readBuffer.length);
+            if ( read < 0 ) {
+                this.disconnected = true;
+                return null;
+            }
+            this.parser.feed(this.readBuffer, 0, read);
+        }
+        return response;
+    }
+
+    // late responses to failed frames and to the frames sent after them must not be taken for responses to the next attempts
+    private void discardInput() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(RESPONSE_TIMEOUT);
+        while ( ((System.nanoTime() - deadline) < 0) && (this.transport.read(this.readBuffer, this.readBuffer.length) > 0) ) {
+            // until the robot is quiet for a read timeout, but not longer than a response may take, a running program may print all the time
+        }
+        this.parser.reset();
+    }
+}
@@ -0,0 +1,88 @@
+package de.fhg.iais.roberta.connection.wired.mBot2;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The statistics of an mBot2 program upload, for the logs and the upload error popup.
+ */
+final class Mbot2TransferSummary {
+    private final int window;
+    private final int chunkSize;
+    private final long started = System.nanoTime();
+    private long finished = 0L;
+
+    private int frames = 0;
+    private int retransmits = 0;
+    private long bytes = 0L;
+    private boolean stopAndWait = false;
+
+    Mbot2TransferSummary(int window, int chunkSize) {
+        this.window = window;
+        this.chunkSize = chunkSize;
+    }
+
+    void frameWritten(int frameSize, boolean retransmit) {
+        this.bytes += frameSize;
+        if ( retransmit ) {
+            this.retransmits++;
+        }
+    }
+
+    void frameAcknowledged() {
+        this.frames++;
+    }
+
+    void fellBackToStopAndWait() {
+        this.stopAndWait = true;
+    }
+
+    void finish() {
+        this.finished = System.nanoTime();
+    }
+
+    /**
+     * Returns the number of frames that were acknowledged.
+     *
+     * @return the acknowledged frames
+     */
+    int getFrames() {
+        return this.frames;
+    }
+
+    int getRetransmits() {
+        return this.retransmits;
+    }
+
+    /**
+     * Returns the number of bytes written, including retransmitted frames.
+     *
+     * @return the written bytes
+     */
+    long getBytes() {
+        return this.bytes;
+    }
+
+    long getElapsedMillis() {
+        long end = (this.finished == 0L) ? System.nanoTime() : this.finished;
+        return TimeUnit.NANOSECONDS.toMillis(end - this.started);
+    }
+
+    long getBytesPerSecond() {
+        return (this.bytes * 1000L) / Math.max(1L, this.getElapsedMillis());
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+            "%d frames with chunks of %d bytes, window %d%s, %d retransmits, %d bytes in %d ms (%d bytes/s)",
+            this.frames,
+            this.chunkSize,
+            this.window,
+            this.stopAndWait ? " then 1" : "",
+            this.retransmits,
+            this.bytes,
+            this.getElapsedMillis(),
+            this.getBytesPerSecond());
+    }
+}
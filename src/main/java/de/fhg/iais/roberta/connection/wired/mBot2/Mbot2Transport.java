@@ -0,0 +1,24 @@
+package de.fhg.iais.roberta.connection.wired.mBot2;
+
+/**
+ * The connection an mBot2 upload is sent over, usually a serial port.
+ */
+interface Mbot2Transport {
+    /**
+     * Writes the bytes.
+     *
+     * @param data the bytes
+     * @param length the number of bytes to write
+     * @return the number of bytes written, -1 if the robot is disconnected
+     */
+    int write(byte[] data, int length);
+
+    /**
+     * Reads the received bytes, waits a short time if nothing was received yet.
+     *
+     * @param buffer the buffer the bytes are read into
+     * @param length the maximum number of bytes to read
+     * @return the number of bytes read, 0 if nothing was received, -1 if the robot is disconnected
+     */
+    int read(byte[] buffer, int length);
+}
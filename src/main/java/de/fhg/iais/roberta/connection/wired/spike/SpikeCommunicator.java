@@ -1,18 +1,15 @@
 package de.fhg.iais.roberta.connection.wired.spike;
 
-import java.io.File;
 import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Base64;
-import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.RandomStringUtils;
-import org.apache.commons.lang3.SystemUtils;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.Logger;
@@ -20,28 +17,40 @@ import org.slf4j.LoggerFactory;
 
 import com.fazecast.jSerialComm.SerialPort;
 
-import de.fhg.iais.roberta.connection.wired.ClearBufferThread;
+import de.fhg.iais.roberta.connection.SerialDrainService;
 import de.fhg.iais.roberta.connection.wired.IWiredRobot;
+import de.fhg.iais.roberta.connection.wired.SerialPortBroker;
+import de.fhg.iais.roberta.connection.wired.SerialPortBroker.Lease;
 import de.fhg.iais.roberta.util.Pair;
+import de.fhg.iais.roberta.util.PropertyHelper;
 
 public class SpikeCommunicator {
 
     private static final Logger LOG = LoggerFactory.getLogger(SpikeCommunicator.class);
 
     private final IWiredRobot robot;
-    private final ClearBufferThread clearBufferThread;
+    private final SerialDrainService serialDrainService;
+    private static final int MAX_DATA_SIZE = 512;
+    private static final int BAUD_RATE = 115200;
+    private static final int READ_TIMEOUT = 100;
+    private static final long RESPONSE_TIMEOUT = 12000L;
+    private static final int RETAINED_OUTPUT = Integer.parseInt(PropertyHelper.getInstance().getProperty("serialDrainRetainedBytes"));
+
     private final int slotId = 0;
 
     private SerialPort serialPort;
-    private List<JSONObject> payloads;
-    private byte[] fileContentEncoded;
+    private SpikeLineReader lineReader;
+    private final ByteBuffer chunk = ByteBuffer.allocate(MAX_DATA_SIZE);
+    private FileChannel programChannel;
+    private long programSize;
+    private int payloadCount;
 
-    private boolean transferIdAdded = false;
+    private String transferId = null;
     private boolean resendStarWriteProgramPayload = true;
 
     SpikeCommunicator(IWiredRobot robot) {
         this.robot = robot;
-        this.clearBufferThread = new ClearBufferThread(robot.getPort());
+        this.serialDrainService = SerialDrainService.forPort(robot.getPort(), BAUD_RATE, RETAINED_OUTPUT);
     }
 
     public JSONObject getDeviceInfo() {
@@ -53,58 +62,74 @@ public class SpikeCommunicator {
         return deviceInfo;
     }
 
-    public Pair<Integer, String> handleUpload(String absolutePath) {
+    public Pair<Integer, String> handleUpload(Path programPath) {
         Pair<Integer, String> result = new Pair<>(1, "errorRobotUpload");
-        try {
-            stopClearBufferThread();
-            initSerialPort(this.robot.getPort());
+        // the port is released before the upload starts
+        this.serialDrainService.stop();
+        // the port stays open after the upload, it is only leased exclusively
+        try ( Lease lease = SerialPortBroker.getInstance().acquireExclusive(this.robot.getPort(), BAUD_RATE, SerialPortBroker.HANDOVER_TIMEOUT) ) {
+            if ( lease == null ) {
+                LOG.error("Serial port {} is still in use", this.robot.getPort());
+            } else {
+                initSerialPort(lease.getPort());
 
-            extractFileInformation(absolutePath);
-            createJsonPayloads();
+                try ( FileChannel channel = FileChannel.open(programPath, StandardOpenOption.READ) ) {
+                    extractFileInformation(channel);
 
-            result = sendPayloads();
-            LOG.info(result.getSecond());
+                    result = sendPayloads();
+                    LOG.info(result.getSecond());
+                }
+            }
         } catch ( Exception e ) {
             LOG.info(e.getMessage());
         }
 
-        transferIdAdded = false;
+        programChannel = null;
+        transferId = null;
         resendStarWriteProgramPayload = true;
-        startClearBufferThread();
+        this.serialDrainService.start();
         return result;
     }
 
-    private void initSerialPort(String portName) {
-        portName = (SystemUtils.IS_OS_WINDOWS ? "" : "/dev/") + portName; // to hide the parameter, which should not be used
-        serialPort = SerialPort.getCommPort(portName);
-        serialPort.setBaudRate(115200);
+    private void initSerialPort(SerialPort leasedPort) {
+        serialPort = leasedPort;
+        // the timeouts are shared with the other users of the port
+        serialPort.setComPortTimeouts(SerialPort.TIMEOUT_READ_SEMI_BLOCKING, READ_TIMEOUT, 0);
+        // status messages the hub pushes during the upload go to the serial monitor
+        lineReader = new SpikeLineReader(serialPort::readBytes, serialDrainService::divert);
         LOG.info("Serial Communication is initialized: {} {} {}",
             serialPort.getSystemPortName(),
             serialPort.getDescriptivePortName(),
             serialPort.getPortDescription());
     }
 
-    private void extractFileInformation(String filePath) throws IOException {
-        File file = new File(filePath);
-        fileContentEncoded = FileUtils.readFileToByteArray(file);
-    }
-
-    private void createJsonPayloads() {
-        payloads = new ArrayList<>();
-
-        createProgramTerminatePayload();
-        createStartWriteProgramPayload();
-        createWritePackagePayload();
-        createExecuteProgramPayload();
-
-        LOG.info("Created " + payloads.size() + " payloads");
+    private void extractFileInformation(FileChannel channel) throws IOException {
+        programChannel = channel;
+        programSize = channel.size();
+        // program_terminate, start_write_program, the write_packages and program_execute
+        payloadCount = 3 + (int) ((programSize + MAX_DATA_SIZE - 1) / MAX_DATA_SIZE);
+    }
+
+    /**
+     * Creates the payload with the given index. The write_package payloads are created only when they are sent, so at most one chunk of the
+     * program is held in memory.
+     */
+    private JSONObject createPayload(int index) throws IOException {
+        if ( index == 0 ) {
+            return createProgramTerminatePayload();
+        } else if ( index == 1 ) {
+            return createStartWriteProgramPayload();
+        } else if ( index == payloadCount - 1 ) {
+            return createExecuteProgramPayload();
+        }
+        return createWritePackagePayload((long) (index - 2) * MAX_DATA_SIZE);
     }
 
-    private void createProgramTerminatePayload() {
-        assemblePayload("program_terminate", new JSONObject());
+    private JSONObject createProgramTerminatePayload() {
+        return assemblePayload("program_terminate", new JSONObject());
     }
 
-    private void createStartWriteProgramPayload() {
+    private JSONObject createStartWriteProgramPayload() {
         JSONObject params = new JSONObject();
         JSONObject meta = new JSONObject();
         long nowTime = System.currentTimeMillis() / 1000;
@@ -116,72 +141,59 @@ public class SpikeCommunicator {
         meta.put("project_id", "OpenRoberta");
 
         params.put("slotid", slotId);
-        params.put("size", fileContentEncoded.length);
+        params.put("size", programSize);
         params.put("meta", meta);
 
-        assemblePayload("start_write_program", params);
+        return assemblePayload("start_write_program", params);
     }
 
-    private void createWritePackagePayload() {
-        List<JSONObject> paramList = new ArrayList<>();
-        int maxDataSize = 512;
-        int rest = 0;
-        int end;
-        for ( int i = 0; i < fileContentEncoded.length; i += end ) {
-            JSONObject param = new JSONObject();
-            end = Math.min(maxDataSize, fileContentEncoded.length - rest);
-            rest += end;
-            param.put("data", Base64.getEncoder().encodeToString(Arrays.copyOfRange(fileContentEncoded, i, i + end)));
-
-            paramList.add(param);
-        }
-        for ( JSONObject params : paramList ) {
-            assemblePayload("write_package", params);
+    private JSONObject createWritePackagePayload(long offset) throws IOException {
+        // Buffer methods, as ByteBuffer only overrides them since Java 9
+        Buffer view = chunk;
+        view.clear();
+        long position = offset;
+        while ( chunk.hasRemaining() ) {
+            int read = programChannel.read(chunk, position);
+            if ( read < 0 ) {
+                break;
+            }
+            position += read;
         }
+        view.flip();
+        JSONObject params = new JSONObject();
+        params.put("data", StandardCharsets.ISO_8859_1.decode(Base64.getEncoder().encode(chunk)).toString());
+        params.put("transferid", transferId);
+        return assemblePayload("write_package", params);
     }
 
-    private void createExecuteProgramPayload() {
+    private JSONObject createExecuteProgramPayload() {
         JSONObject params = new JSONObject();
         params.put("slotid", slotId);
-        assemblePayload("program_execute", params);
+        return assemblePayload("program_execute", params);
     }
 
-    private void assemblePayload(String mode, JSONObject params) {
+    private JSONObject assemblePayload(String mode, JSONObject params) {
         JSONObject payload = new JSONObject();
 
         payload.put("m", mode);
         payload.put("p", params);
         payload.put("i", RandomStringUtils.randomAlphanumeric(4));
 
-        payloads.add(payload);
+        return payload;
     }
 
-    private void addTransferIdToWritePackage(String transferId) {
-        for ( JSONObject payload : payloads ) {
-            if ( payload.getString("m").equals("write_package") ) {
-                payload.getJSONObject("p").put("transferid", transferId);
-            }
-        }
-        transferIdAdded = true;
-    }
-
-    private Pair<Integer, String> sendPayloads() throws InterruptedException, JSONException {
+    private Pair<Integer, String> sendPayloads() throws JSONException, IOException {
         Pair<Integer, String> result = new Pair<>(1, "errorRobotUpload");
-        int payloadSize = payloads.size();
-        if ( !serialPort.isOpen() ) {
-            serialPort.openPort();
-        }
         LOG.info("Program upload starts");
-        for ( int i = 0; i < payloadSize; i++ ) {
-            LOG.info("sending payload " + (i + 1) + " of " + payloadSize);
-            JSONObject payload = payloads.get(i);
+        for ( int i = 0; i < payloadCount; i++ ) {
+            LOG.info("sending payload " + (i + 1) + " of " + payloadCount);
+            JSONObject payload = createPayload(i);
             String payloadAsString = payload + "\r";
             byte[] payloadAsBytes = payloadAsString.getBytes(StandardCharsets.UTF_8);
             int payloadLength = payloadAsBytes.length;
             int bytesWritten = serialPort.writeBytes(payloadAsBytes, payloadLength);
 
             if ( bytesWritten == payloadLength ) {
-                Thread.sleep(1);
                 result = receiveResponse(payload);
                 if ( result.getFirst() == 1 ) {
                     break;
@@ -196,60 +208,45 @@ public class SpikeCommunicator {
         return result;
     }
 
-    private Pair<Integer, String> receiveResponse(JSONObject payload) throws InterruptedException, JSONException {
-        String id = payload.getString("i");
-        Pattern findResponsePattern = Pattern.compile("(\\{.*(" + id + "|\"i\"|\"r\"|transferid|checksum|next_ptr){1}.*}?)");
-        short bufSize = 2048;
-        byte[] buffer = new byte[bufSize];
-        long time = System.currentTimeMillis();
-
-        while ( (System.currentTimeMillis()) - time < 12000 ) {
-            int bytesAvailable = serialPort.bytesAvailable();
-            if ( bytesAvailable < 0 ) {
-                LOG.error("Error: Robot seems disconnected");
-                return new Pair<>(1, "errorRobotUpload");
-            }
-            serialPort.readBytes(buffer, Math.min(bytesAvailable, bufSize));
-            String answer = new String(buffer, StandardCharsets.UTF_8);
-            Matcher responseMatcher = findResponsePattern.matcher(answer);
-            if ( responseMatcher.find() ) {
-                return checkResponse(responseMatcher.group(), id, payload.getString("m"));
-            }
-            Thread.sleep(10);
+    private Pair<Integer, String> receiveResponse(JSONObject payload) throws JSONException {
+        String mode = payload.getString("m");
+        JSONObject response;
+        try {
+            response = lineReader.await(payload.getString("i"), RESPONSE_TIMEOUT);
+        } catch ( JSONException e ) {
+            return handleBrokenResponse(mode, e.getMessage());
+        }
+        if ( response == null ) {
+            return new Pair<>(1, "errorRobotUpload");
         }
-        LOG.error("Error: No response received from the robot");
-        return new Pair<>(1, "errorRobotUpload");
+        return checkResponse(response, mode);
     }
 
-    private Pair<Integer, String> checkResponse(String response, String id, String mode) throws JSONException {
+    private Pair<Integer, String> checkResponse(JSONObject jsonAnswer, String mode) {
         try {
-            JSONObject jsonAnswer = new JSONObject(response);
             if ( jsonAnswer.has("e") ) {
                 String error = new String(Base64.getDecoder().decode(jsonAnswer.getString("e")), StandardCharsets.UTF_8);
                 LOG.error("Error from the robot: {}", error);
                 return new Pair<>(1, "errorRobotUpload");
             }
-            if ( !transferIdAdded && !jsonAnswer.get("r").equals(JSONObject.NULL) && jsonAnswer.getJSONObject("r").has("transferid") ) {
-                addTransferIdToWritePackage(jsonAnswer.getJSONObject("r").getString("transferid"));
+            if ( (transferId == null) && !jsonAnswer.get("r").equals(JSONObject.NULL) && jsonAnswer.getJSONObject("r").has("transferid") ) {
+                transferId = jsonAnswer.getJSONObject("r").getString("transferid");
             }
         } catch ( JSONException e ) {
-            if ( mode.equals("start_write_program") ) {
-                if ( !resendStarWriteProgramPayload ) {
-                    return new Pair<>(1, "errorRobotUpload");
-                }
-                LOG.info("Response with transferId is broken. Sending payload again");
-                return new Pair<>(2, "");
-            }
-            LOG.info("Broken response detected. Ignoring and continuing the upload. Response: " + response);
+            return handleBrokenResponse(mode, jsonAnswer.toString());
         }
         return new Pair<>(0, "");
     }
 
-    private void startClearBufferThread() {
-        clearBufferThread.start(serialPort);
-    }
-
-    private void stopClearBufferThread() {
-        clearBufferThread.exit();
+    private Pair<Integer, String> handleBrokenResponse(String mode, String response) {
+        if ( mode.equals("start_write_program") ) {
+            if ( !resendStarWriteProgramPayload ) {
+                return new Pair<>(1, "errorRobotUpload");
+            }
+            LOG.info("Response with transferId is broken. Sending payload again");
+            return new Pair<>(2, "");
+        }
+        LOG.info("Broken response detected. Ignoring and continuing the upload. Response: " + response);
+        return new Pair<>(0, "");
     }
-}
\ No newline at end of file
+}
@@ -1,16 +1,16 @@
 package de.fhg.iais.roberta.connection.wired.spike;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Path;
 
+import org.apache.commons.io.FileUtils;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import de.fhg.iais.roberta.connection.AbstractConnector;
+import de.fhg.iais.roberta.connection.wired.SerialPortBroker;
 import de.fhg.iais.roberta.connection.wired.arduino.ArduinoConnector;
 import de.fhg.iais.roberta.util.OraTokenGenerator;
 import de.fhg.iais.roberta.util.Pair;
@@ -73,33 +73,24 @@ public class SpikeConnector extends AbstractConnector<Spike> {
                             break;
                         case CMD_DOWNLOAD:
                             LOG.info("Download user program");
+                            Path program = null;
                             try {
-                                Pair<byte[], String> program = this.serverCommunicator.downloadProgram(this.brickData);
-                                File tmp = File.createTempFile(program.getSecond(), "");
-                                tmp.deleteOnExit();
-
-                                if ( !tmp.exists() ) {
-                                    throw new FileNotFoundException("File " + tmp.getAbsolutePath() + " does not exist.");
-                                }
-
-                                try (FileOutputStream os = new FileOutputStream(tmp)) {
-                                    os.write(program.getFirst());
-                                }
+                                program = this.serverCommunicator.downloadProgramToFile(this.brickData, "");
                                 this.fire(State.WAIT_UPLOAD);
-                                Pair<Integer, String> result = this.spikeCommunicator.handleUpload(tmp.getAbsolutePath());
+                                Pair<Integer, String> result = this.spikeCommunicator.handleUpload(program);
                                 if ( result.getFirst() != 0 ) {
                                     this.fire(State.ERROR_UPLOAD_TO_ROBOT.setAdditionalInfo(result.getSecond()));
                                     this.fire(State.WAIT_FOR_CMD);
                                 }
-                            } catch ( FileNotFoundException e ) {
-                                LOG.info("File not found: {}", e.getMessage());
-                                this.fire(State.ERROR_UPLOAD_TO_ROBOT);
-                                this.fire(State.WAIT_FOR_CMD);
                             } catch ( IOException io ) {
                                 LOG.info("Download and run failed: {}", io.getMessage());
                                 LOG.info("Do not give up yet - make the next push request");
                                 this.fire(State.ERROR_UPLOAD_TO_ROBOT);
                                 this.fire(State.WAIT_FOR_CMD);
+                            } finally {
+                                if ( program != null ) {
+                                    FileUtils.deleteQuietly(program.toFile());
+                                }
                             }
                             break;
                         case CMD_CONFIGURATION:
@@ -125,4 +116,10 @@ public class SpikeConnector extends AbstractConnector<Spike> {
                 break;
         }
     }
+
+    @Override
+    public void close() {
+        super.close();
+        SerialPortBroker.getInstance().closePort(this.robot.getPort());
+    }
 }
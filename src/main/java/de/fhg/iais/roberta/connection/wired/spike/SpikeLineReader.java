@@ -0,0 +1,170 @@
+package de.fhg.iais.roberta.connection.wired.spike;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.fhg.iais.roberta.util.IOraListener;
+
+/**
+ * Reads the responses of the Spike hub incrementally.
+ * The serial output is split into lines at carriage returns and each complete line is parsed once. A JSON object with the id of the pending
+ * request is its response, responses to earlier requests are dropped. A line that starts like a JSON object, but cannot be parsed, is taken for a
+ * broken response while a request is pending. Everything else, like status messages the hub pushes or the output of a program, is passed on to a
+ * listener, e.g. the serial monitor.
+ */
+final class SpikeLineReader {
+    private static final Logger LOG = LoggerFactory.getLogger(SpikeLineReader.class);
+
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+    private static final byte LINE_END = '\r';
+
+    /**
+     * The serial input of the hub.
+     */
+    interface Input {
+        /**
+         * Reads the received bytes, waits a short time if nothing was received yet.
+         *
+         * @param buffer the buffer the bytes are read into
+         * @param length the maximum number of bytes to read
+         * @return the number of bytes read, 0 if nothing was received, -1 if the hub is disconnected
+         */
+        int read(byte[] buffer, int length);
+    }
+
+    private final Input input;
+    private final IOraListener<byte[]> otherOutput;
+    private final byte[] readBuffer = new byte[2048];
+
+    private byte[] line = new byte[256];
+    private int lineLength = 0;
+    private boolean overlong = false;
+
+    private String pendingId = null;
+    private JSONObject response = null;
+    private String brokenResponse = null;
+
+    /**
+     * Creates a reader.
+     *
+     * @param input the serial input of the hub
+     * @param otherOutput receives each line that is no response, including its line end
+     */
+    SpikeLineReader(Input input, IOraListener<byte[]> otherOutput) {
+        this.input = input;
+        this.otherOutput = otherOutput;
+    }
+
+    /**
+     * Reads until the response to the request arrives.
+     *
+     * @param id the id of the request
+     * @param timeout the maximum time to wait in milliseconds
+     * @return the response, null if it did not arrive in time or the hub is disconnected
+     * @throws JSONException if the response arrived, but is not valid JSON
+     */
+    JSONObject await(String id, long timeout) {
+        this.pendingId = id;
+        this.response = null;
+        this.brokenResponse = null;
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        try {
+            while ( (this.response == null) && (this.brokenResponse == null) ) {
+                if ( (System.nanoTime() - deadline) >= 0 ) {
+                    LOG.error("Error: No response received from the robot");
+                    return null;
+                }
+                int read = this.input.read(this.readBuffer, this.readBuffer.length);
+                if ( read < 0 ) {
+                    LOG.error("Error: Robot seems disconnected");
+                    return null;
+                }
+                this.feed(this.readBuffer, read);
+            }
+            if ( this.brokenResponse != null ) {
+                throw new JSONException("Broken response: " + this.brokenResponse);
+            }
+            return this.response;
+        } finally {
+            this.pendingId = null;
+        }
+    }
+
+    /**
+     * Splits the received bytes into lines, a response that arrives before its request is awaited is dropped.
+     *
+     * @param data the received bytes
+     * @param length the number of received bytes
+     */
+    void feed(byte[] data, int length) {
+        int start = 0;
+        for ( int i = 0; i < length; i++ ) {
+            if ( data[i] == LINE_END ) {
+                this.append(data, start, (i + 1) - start);
+                this.handleLine();
+                start = i + 1;
+            }
+        }
+        this.append(data, start, length - start);
+    }
+
+    private void append(byte[] data, int offset, int length) {
+        if ( this.overlong || (length == 0) ) {
+            return;
+        }
+        if ( (this.lineLength + length) > MAX_LINE_LENGTH ) {
+            LOG.warn("Discarding a line of more than {} bytes", MAX_LINE_LENGTH);
+            this.overlong = true;
+            this.lineLength = 0;
+            return;
+        }
+        if ( (this.lineLength + length) > this.line.length ) {
+            this.line = Arrays.copyOf(this.line, Math.min(MAX_LINE_LENGTH, Math.max(this.lineLength + length, this.line.length * 2)));
+        }
+        System.arraycopy(data, offset, this.line, this.lineLength, length);
+        this.lineLength += length;
+    }
+
+    private void handleLine() {
+        if ( this.overlong ) {
+            this.overlong = false;
+            return;
+        }
+        int length = this.lineLength;
+        this.lineLength = 0;
+        // the line end of the previous line may be followed by a line feed
+        int start = ((length > 0) && (this.line[0] == '\n')) ? 1 : 0;
+        if ( ((length - start) > 1) && (this.line[start] == '{') ) {
+            String text = new String(this.line, start, (length - start) - 1, StandardCharsets.UTF_8);
+            try {
+                JSONObject json = new JSONObject(text);
+                if ( json.has("i") ) {
+                    this.route(json);
+                    return;
+                }
+            } catch ( JSONException e ) {
+                // the id itself may be garbled, so any broken object while a request is pending may be its response
+                if ( this.pendingId != null ) {
+                    this.brokenResponse = text;
+                    return;
+                }
+            }
+        }
+        this.otherOutput.update(Arrays.copyOf(this.line, length));
+    }
+
+    private void route(JSONObject json) {
+        String id = json.optString("i");
+        if ( id.equals(this.pendingId) ) {
+            this.response = json;
+        } else {
+            LOG.debug("Dropping response to an earlier request {}", id);
+        }
+    }
+}
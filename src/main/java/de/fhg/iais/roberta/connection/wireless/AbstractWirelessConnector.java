@@ -26,6 +26,8 @@ public abstract class AbstractWirelessConnector<T extends IRobot> extends Abstra
     protected IWirelessCommunicator communicator;
     protected String password = "";
 
+    private boolean pushPending = false; // only accessed by the connector thread
+
     protected AbstractWirelessConnector(T robot, IWirelessCommunicator communicator) {
         super(robot);
         this.communicator = communicator;
@@ -105,33 +107,56 @@ public abstract class AbstractWirelessConnector<T extends IRobot> extends Abstra
         }
     }
 
+    /**
+     * Sends the next push request without blocking the connector thread, the loop waits for its response.
+     */
     protected final void waitForCmd() {
+        if (this.pushPending) {
+            return;
+        }
         JSONObject deviceInfoWaitCMD = this.communicator.getDeviceInfo();
         deviceInfoWaitCMD.put(KEY_TOKEN, this.token);
         deviceInfoWaitCMD.put(KEY_CMD, CMD_PUSH);
 
-        try {
-            JSONObject pushRequestResponse = this.serverCommunicator.pushRequest(deviceInfoWaitCMD);
-            String serverCommand = pushRequestResponse.getString(KEY_CMD);
-
-            if (serverCommand.equals(CMD_REPEAT)) {
-                // do nothing
-            } else if (serverCommand.equals(CMD_DOWNLOAD)) {
-                this.fire(State.WAIT_UPLOAD);
-            } else if (serverCommand.equals(CMD_STOP_PROGRAM)) {
-                this.fire(State.WAIT_STOP_PROGRAM);
-            } else {
-                LOG.info("WAIT_FOR_CMD {}", "Unexpected response from server");
-                this.resetLastConnectionData();
-                this.reset(State.ERROR_HTTP);
-            }
-        } catch (IOException e) {
-            LOG.info("WAIT_FOR_CMD {}", e.getMessage());
+        this.pushPending = true;
+        this.onCompletion(this.serverCommunicator.pushRequestAsync(deviceInfoWaitCMD), this::handlePushResponse);
+    }
+
+    private void handlePushResponse(JSONObject pushRequestResponse, Throwable throwable) {
+        this.pushPending = false;
+        if (this.state != State.WAIT_FOR_CMD) {
+            return;
+        }
+        if (throwable != null) {
+            LOG.info("WAIT_FOR_CMD {}", throwable.getMessage());
+            this.resetLastConnectionData();
+            this.reset(State.ERROR_HTTP);
+            return;
+        }
+        String serverCommand = pushRequestResponse.optString(KEY_CMD);
+
+        if (serverCommand.equals(CMD_REPEAT)) {
+            // do nothing
+        } else if (serverCommand.equals(CMD_DOWNLOAD)) {
+            this.fire(State.WAIT_UPLOAD);
+        } else if (serverCommand.equals(CMD_STOP_PROGRAM)) {
+            this.fire(State.WAIT_STOP_PROGRAM);
+        } else {
+            LOG.info("WAIT_FOR_CMD {}", "Unexpected response from server");
             this.resetLastConnectionData();
             this.reset(State.ERROR_HTTP);
         }
     }
 
+    @Override
+    protected long getPollInterval(State state) {
+        // the response of the pending push request wakes up the loop
+        if ((state == State.WAIT_FOR_CMD) && this.pushPending) {
+            return WAIT_FOR_TRANSITION;
+        }
+        return super.getPollInterval(state);
+    }
+
     abstract protected void waitUpload();
     abstract protected void waitStopProgram();
 
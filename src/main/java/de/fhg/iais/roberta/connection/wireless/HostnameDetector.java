@@ -3,6 +3,8 @@ package de.fhg.iais.roberta.connection.wireless;
 import de.fhg.iais.roberta.connection.IDetector;
 import de.fhg.iais.roberta.connection.IRobot;
 import de.fhg.iais.roberta.connection.wireless.robotino.Robotino;
+import de.fhg.iais.roberta.util.ParallelProber;
+import de.fhg.iais.roberta.util.PropertyHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -11,10 +13,15 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
+/**
+ * Detector class for robots with a known hostname.
+ * All hostnames are resolved concurrently under a shared deadline, hostnames that could not be resolved are not looked up again for a configurable time.
+ */
 public class HostnameDetector implements IDetector {
 
     private static final Logger LOG = LoggerFactory.getLogger(HostnameDetector.class);
@@ -25,28 +32,90 @@ public class HostnameDetector implements IDetector {
         ROBOT_HOSTNAMES.put("robotino.local", Robotino.class);
     }
 
+    private static final long PROBE_TIMEOUT = Long.parseLong(PropertyHelper.getInstance().getProperty("detectorProbeTimeout"));
+    private static final long NEGATIVE_CACHE_TTL = Long.parseLong(PropertyHelper.getInstance().getProperty("hostnameNegativeCacheTtl"));
+    private static final long INTERVAL = 2000L;
+
+    /**
+     * Resolves a hostname, e.g. with {@link InetAddress#getByName(String)}.
+     */
+    interface Resolver {
+        InetAddress resolve(String hostname) throws UnknownHostException;
+    }
+
+    private final Map<String, Class<? extends AbstractWirelessRobot>> robotHostnames;
+    private final Resolver resolver;
+    private final long negativeCacheTtl;
+    private final ParallelProber<String, AbstractWirelessRobot> prober;
+    private final Map<String, Long> unresolvedUntil = new ConcurrentHashMap<>();
+
+    public HostnameDetector() {
+        this(ROBOT_HOSTNAMES, InetAddress::getByName, PROBE_TIMEOUT, NEGATIVE_CACHE_TTL);
+    }
+
+    /**
+     * Creates a detector for the given hostnames.
+     *
+     * @param robotHostnames   the robot classes by their hostname
+     * @param resolver         the resolver for the hostnames
+     * @param probeTimeout     the deadline of a detection cycle in milliseconds
+     * @param negativeCacheTtl the time in milliseconds an unresolvable hostname is not looked up again
+     */
+    HostnameDetector(Map<String, Class<? extends AbstractWirelessRobot>> robotHostnames, Resolver resolver, long probeTimeout, long negativeCacheTtl) {
+        this.robotHostnames = robotHostnames;
+        this.resolver = resolver;
+        this.negativeCacheTtl = negativeCacheTtl;
+        this.prober = new ParallelProber<>("HostnameDetector", this::resolve, robot -> {
+        }, probeTimeout);
+    }
+
+    @Override
+    public long getInterval() {
+        return INTERVAL;
+    }
+
     @Override
     public List<IRobot> detectRobots() {
-        Collection<IRobot> detectedRobots = new HashSet<>(5);
-        for (Map.Entry<String, Class<? extends AbstractWirelessRobot>> entry : ROBOT_HOSTNAMES.entrySet()) {
-            LOG.info("Looking for {} in local network", entry.getKey());
-            IRobot robot = detectLocalRobotsWithHostname(entry);
-            if (robot != null) {
-                detectedRobots.add(robot);
+        long now = System.nanoTime();
+        List<String> hostnames = new ArrayList<>(this.robotHostnames.size());
+        for (String hostname : this.robotHostnames.keySet()) {
+            Long until = this.unresolvedUntil.get(hostname);
+            if ((until == null) || ((until - now) <= 0L)) {
+                hostnames.add(hostname);
             }
         }
+
+        Collection<IRobot> detectedRobots = new HashSet<>(this.prober.probe(hostnames).values());
         return detectedRobots.stream().filter(distinctByKey(IRobot::getPrettyName)).collect(Collectors.toList());
     }
 
+    /**
+     * Stops all running lookups.
+     */
+    public void close() {
+        this.prober.close();
+    }
+
     private static <T> Predicate<T> distinctByKey(Function<? super T, ?> keyExtractor) {
         Set<Object> seen = ConcurrentHashMap.newKeySet();
         return t -> seen.add(keyExtractor.apply(t));
     }
 
+    private AbstractWirelessRobot resolve(String hostname) {
+        LOG.info("Looking for {} in local network", hostname);
+        AbstractWirelessRobot robot = this.detectLocalRobotsWithHostname(new AbstractMap.SimpleImmutableEntry<>(hostname, this.robotHostnames.get(hostname)));
+        if (robot == null) {
+            this.unresolvedUntil.put(hostname, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.negativeCacheTtl));
+        } else {
+            this.unresolvedUntil.remove(hostname);
+        }
+        return robot;
+    }
+
     public AbstractWirelessRobot detectLocalRobotsWithHostname(Map.Entry<String, Class<? extends AbstractWirelessRobot>> entry) {
         String hostname = entry.getKey();
         try {
-            InetAddress robotAddress = InetAddress.getByName(hostname);
+            InetAddress robotAddress = this.resolver.resolve(hostname);
             LOG.info("Found robot hostname {} with IP Address: {}", hostname, robotAddress);
             return entry.getValue().getConstructor(String.class, InetAddress.class).newInstance(hostname, robotAddress);
         } catch (UnknownHostException e) {
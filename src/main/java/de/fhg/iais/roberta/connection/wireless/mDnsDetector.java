@@ -10,10 +10,12 @@ import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -21,17 +23,25 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import javax.jmdns.JmDNS;
+import javax.jmdns.ServiceEvent;
 import javax.jmdns.ServiceInfo;
+import javax.jmdns.ServiceListener;
 
 import de.fhg.iais.roberta.connection.IDetector;
 import de.fhg.iais.roberta.connection.IRobot;
 import de.fhg.iais.roberta.connection.wireless.nao.Nao;
+import de.fhg.iais.roberta.util.Pair;
+import de.fhg.iais.roberta.util.ParallelProber;
+import de.fhg.iais.roberta.util.PropertyHelper;
 
 /**
  * Detector class for mDNS robots. Searches for mDNS in all network connections.
+ * A long-lived JmDNS browser per interface address keeps a live set of the announced robots, so detecting only reads that set.
+ * A browser is closed only when its address is gone or moved to another interface, new browsers are created concurrently under a shared deadline.
  */
 public class mDnsDetector implements IDetector {
     private static final Logger LOG = LoggerFactory.getLogger(mDnsDetector.class);
@@ -41,12 +51,84 @@ public class mDnsDetector implements IDetector {
         SERVICE_TYPES.put("_naoqi._tcp.local.", Nao.class);
     }
 
-    private static final long TIMEOUT = 1000L;
+    private static final long PROBE_TIMEOUT = Long.parseLong(PropertyHelper.getInstance().getProperty("detectorProbeTimeout"));
+
+    private final Supplier<Map<InetAddress, NetworkInterface>> addressSupplier;
+    private final Map<InetAddress, Browser> browsers = new HashMap<>(5);
+    private final ParallelProber<Pair<InetAddress, NetworkInterface>, Browser> browserFactory =
+        new ParallelProber<>("mDnsDetector", mDnsDetector::createBrowser, Browser::close, PROBE_TIMEOUT);
+
+    public mDnsDetector() {
+        this(mDnsDetector::getInterfaceAddresses);
+    }
+
+    /**
+     * Creates a detector browsing on the given addresses.
+     *
+     * @param addressSupplier supplies the current addresses and their network interfaces
+     */
+    mDnsDetector(Supplier<Map<InetAddress, NetworkInterface>> addressSupplier) {
+        this.addressSupplier = addressSupplier;
+    }
 
     @Override
-    public List<IRobot> detectRobots() {
+    public synchronized List<IRobot> detectRobots() {
+        this.updateBrowsers(this.addressSupplier.get());
+
         Collection<IRobot> detectedRobots = new HashSet<>(5);
+        for ( Browser browser : this.browsers.values() ) {
+            detectedRobots.addAll(browser.robots.values());
+        }
+
+        // Remove duplicates, filters the NAOs by name
+        return detectedRobots.stream().filter(distinctByKey(IRobot::getPrettyName)).collect(Collectors.toList());
+    }
+
+    /**
+     * Closes all browsers.
+     */
+    public synchronized void close() {
+        this.updateBrowsers(new HashMap<>(0));
+        this.browserFactory.close();
+    }
+
+    private void updateBrowsers(Map<InetAddress, NetworkInterface> addresses) {
+        Iterator<Entry<InetAddress, Browser>> iterator = this.browsers.entrySet().iterator();
+        while ( iterator.hasNext() ) {
+            Entry<InetAddress, Browser> entry = iterator.next();
+            // NetworkInterface.equals also compares all addresses of the interface, a new or rotated address must not recreate every browser
+            NetworkInterface nif = addresses.get(entry.getKey());
+            if ( (nif == null) || !nif.getName().equals(entry.getValue().nif.getName()) ) {
+                LOG.info("Stop looking in {} {}", entry.getValue().nif.getName(), entry.getKey());
+                entry.getValue().close();
+                iterator.remove();
+            }
+        }
+
+        // creating a browser binds a socket and announces the host, which takes a while on every address
+        List<Pair<InetAddress, NetworkInterface>> missing = new ArrayList<>(addresses.size());
+        for ( Entry<InetAddress, NetworkInterface> entry : addresses.entrySet() ) {
+            if ( !this.browsers.containsKey(entry.getKey()) ) {
+                missing.add(new Pair<>(entry.getKey(), entry.getValue()));
+            }
+        }
+        for ( Entry<Pair<InetAddress, NetworkInterface>, Browser> entry : this.browserFactory.probe(missing).entrySet() ) {
+            this.browsers.put(entry.getKey().getFirst(), entry.getValue());
+        }
+    }
+
+    private static Browser createBrowser(Pair<InetAddress, NetworkInterface> address) {
+        LOG.info("Looking in {} {}", address.getSecond().getName(), address.getFirst());
+        try {
+            return new Browser(address.getFirst(), address.getSecond());
+        } catch ( IOException e ) {
+            LOG.error("Could not create mDNS browser on {}: {}", address.getFirst(), e.getMessage());
+            return null;
+        }
+    }
 
+    private static Map<InetAddress, NetworkInterface> getInterfaceAddresses() {
+        Map<InetAddress, NetworkInterface> addresses = new HashMap<>(5);
         try {
             Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
             while ( interfaces.hasMoreElements() ) {
@@ -57,27 +139,15 @@ public class mDnsDetector implements IDetector {
                 }
 
                 // Check all associated addresses of network interface
-                Enumeration<InetAddress> addresses = currentNif.getInetAddresses();
-                while ( addresses.hasMoreElements() ) {
-                    InetAddress address = addresses.nextElement();
-                    LOG.info("Looking in {} {}", currentNif.getName(), address);
-
-                    IRobot robot = detectRobotsOnAddress(address, currentNif);
-                    if ( robot != null ) {
-                        detectedRobots.add(robot);
-                    }
+                Enumeration<InetAddress> nifAddresses = currentNif.getInetAddresses();
+                while ( nifAddresses.hasMoreElements() ) {
+                    addresses.put(nifAddresses.nextElement(), currentNif);
                 }
             }
-        } catch ( UnknownHostException e ) {
-            LOG.error("Could not add network interface to IPv6 address: {}", e.getMessage());
         } catch ( SocketException e ) {
             LOG.error("Could not create or access socket: {}", e.getMessage());
-        } catch ( IOException e ) {
-            LOG.error("Something went wrong: {}", e.getMessage());
         }
-
-        // Remove duplicates, filters the NAOs by name
-        return detectedRobots.stream().filter(distinctByKey(IRobot::getPrettyName)).collect(Collectors.toList());
+        return addresses;
     }
 
     /**
@@ -94,39 +164,93 @@ public class mDnsDetector implements IDetector {
     }
 
     /**
-     * Uses JmDNS to find mDNS robots on the address and network interface.
+     * Creates the robot announced by the service info.
      *
-     * @param address the network address where JmDNS should look for the robot
-     * @param nif     the network interface the address is associated to
-     * @return a detected robot or null, if none was found
-     * @throws IOException          if something went wrong with the JmDNS creation
+     * @param info  the resolved service info
+     * @param robotClass the class of the robot
+     * @param nif   the network interface the service was found on
+     * @return the robot or null, if the service has no address
      * @throws UnknownHostException if the network interface could not be added to the found address
      */
-    private static AbstractWirelessRobot detectRobotsOnAddress(InetAddress address, NetworkInterface nif) throws IOException, UnknownHostException {
-        try (JmDNS jmDNS = JmDNS.create(address, address.getHostName())) {
+    private static AbstractWirelessRobot createRobot(ServiceInfo info, Class<? extends AbstractWirelessRobot> robotClass, NetworkInterface nif)
+        throws UnknownHostException {
+        InetAddress[] adresses = info.getInetAddresses();
+        if ( adresses.length == 0 ) {
+            return null;
+        }
+
+        InetAddress robotAddress = adresses[0];
+        String name = info.getName();
+
+        // Add network interface to the IPv6 address, as JmDNS omits that information
+        if ( robotAddress instanceof Inet6Address ) {
+            robotAddress = Inet6Address.getByAddress(robotAddress.getHostName(), robotAddress.getAddress(), nif);
+        }
+
+        LOG.debug("Resolved mDNS robot {} with IP Address: {}", name, robotAddress);
+        try {
+            return robotClass.getConstructor(String.class, InetAddress.class).newInstance(name, robotAddress);
+        } catch ( NoSuchMethodException | InvocationTargetException | IllegalAccessException | InstantiationException e ) {
+            LOG.error("Robot class not implemented: {}", e.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Browses for the supported service types on one address and keeps the currently announced robots.
+     */
+    private static final class Browser {
+        private final NetworkInterface nif;
+        private final JmDNS jmDNS;
+        private final Map<String, AbstractWirelessRobot> robots = new ConcurrentHashMap<>();
+
+        Browser(InetAddress address, NetworkInterface nif) throws IOException {
+            this.nif = nif;
+            this.jmDNS = JmDNS.create(address, address.getHostName());
             for ( Entry<String, Class<? extends AbstractWirelessRobot>> entry : SERVICE_TYPES.entrySet() ) {
-                ServiceInfo[] list = jmDNS.list(entry.getKey(), TIMEOUT);
+                this.jmDNS.addServiceListener(entry.getKey(), new ServiceTypeListener(entry.getValue()));
+            }
+        }
+
+        void close() {
+            try {
+                this.jmDNS.close();
+            } catch ( IOException e ) {
+                LOG.error("Could not close mDNS browser: {}", e.getMessage());
+            }
+        }
 
-                for ( ServiceInfo info : list ) {
-                    InetAddress[] adresses = info.getInetAddresses();
+        private final class ServiceTypeListener implements ServiceListener {
+            private final Class<? extends AbstractWirelessRobot> robotClass;
 
-                    if ( adresses.length > 0 ) {
-                        InetAddress robotAddress = adresses[0];
-                        String name = info.getName();
+            ServiceTypeListener(Class<? extends AbstractWirelessRobot> robotClass) {
+                this.robotClass = robotClass;
+            }
+
+            @Override
+            public void serviceAdded(ServiceEvent event) {
+                // resolves the addresses in the background, the result is passed to serviceResolved
+                Browser.this.jmDNS.requestServiceInfo(event.getType(), event.getName());
+            }
 
-                        // Add network interface to the IPv6 address, as JmDNS omits that information
-                        if ( robotAddress instanceof Inet6Address ) {
-                            robotAddress = Inet6Address.getByAddress(robotAddress.getHostName(), robotAddress.getAddress(), nif);
-                        }
+            @Override
+            public void serviceRemoved(ServiceEvent event) {
+                if ( Browser.this.robots.remove(event.getType() + event.getName()) != null ) {
+                    LOG.info("mDNS robot {} is gone", event.getName());
+                }
+            }
 
-                        LOG.info("Found mDNS robot {} with IP Address: {}", name, robotAddress);
-                        return entry.getValue().getConstructor(String.class, InetAddress.class).newInstance(name, robotAddress);
+            @Override
+            public void serviceResolved(ServiceEvent event) {
+                try {
+                    AbstractWirelessRobot robot = createRobot(event.getInfo(), this.robotClass, Browser.this.nif);
+                    if ( (robot != null) && (Browser.this.robots.put(event.getType() + event.getName(), robot) == null) ) {
+                        LOG.info("Found mDNS robot {} with IP Address: {}", event.getName(), event.getInfo().getInetAddresses()[0]);
                     }
+                } catch ( UnknownHostException e ) {
+                    LOG.error("Could not add network interface to IPv6 address: {}", e.getMessage());
                 }
             }
-        } catch ( NoSuchMethodException | InvocationTargetException | IllegalAccessException | InstantiationException e ) {
-            LOG.error("Robot class not implemented: {}", e.getMessage());
         }
-        return null;
     }
 }
@@ -0,0 +1,222 @@
+package de.fhg.iais.roberta.main;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import de.fhg.iais.roberta.connection.IConnector;
+import de.fhg.iais.roberta.connection.IConnector.State;
+import de.fhg.iais.roberta.connection.IRobot;
+import de.fhg.iais.roberta.connection.ServerCommunicator;
+import de.fhg.iais.roberta.connection.wired.IWiredRobot;
+import de.fhg.iais.roberta.util.ExecutorFactory;
+
+/**
+ * Runs one connector per robot, each with its own token, concurrently on a bounded pool of threads or on virtual threads, see {@link ExecutorFactory}.
+ * Used in the multi robot mode, where a single Connector serves all robots plugged into a lab PC.
+ * The connectors register at the server without waiting for a button press, register again after a token timeout or reset and are closed when their robot
+ * disappears. Connectors that end on their own are started again on the next update. The shared server connection pool is sized for the maximum number
+ * of connectors.
+ */
+class MultiConnectorManager {
+    private static final Logger LOG = LoggerFactory.getLogger(MultiConnectorManager.class);
+
+    private static final long SHUTDOWN_TIMEOUT = 5000L;
+
+    private final int maxConnectors;
+    private final Function<IRobot, IConnector<?>> connectorFactory;
+    private final ExecutorService executorService;
+    private final Map<IRobot, IConnector<?>> connectors = new ConcurrentHashMap<>();
+    private final Map<IConnector<?>, String> loggedTokens = new ConcurrentHashMap<>();
+
+    private boolean limitReached = false;
+
+    /**
+     * Creates a manager that uses the connector of each robot.
+     *
+     * @param maxConnectors the maximum number of concurrently running connectors
+     */
+    MultiConnectorManager(int maxConnectors) {
+        this(maxConnectors, IRobot::createConnector);
+    }
+
+    /**
+     * Creates a manager.
+     *
+     * @param maxConnectors the maximum number of concurrently running connectors
+     * @param connectorFactory creates the connector for a robot
+     */
+    MultiConnectorManager(int maxConnectors, Function<IRobot, IConnector<?>> connectorFactory) {
+        this(maxConnectors, connectorFactory, ExecutorFactory.newExecutor(maxConnectors));
+    }
+
+    /**
+     * Creates a manager that runs the connectors on the given executor.
+     *
+     * @param maxConnectors the maximum number of concurrently running connectors
+     * @param connectorFactory creates the connector for a robot
+     * @param executorService runs the connectors, needs at least maxConnectors threads
+     */
+    MultiConnectorManager(int maxConnectors, Function<IRobot, IConnector<?>> connectorFactory, ExecutorService executorService) {
+        this.maxConnectors = maxConnectors;
+        this.connectorFactory = connectorFactory;
+        this.executorService = executorService;
+        ServerCommunicator.reserveConnections(maxConnectors);
+    }
+
+    /**
+     * Updates the managed robots. Connectors are started for new robots and closed for robots that are no longer available.
+     *
+     * @param robots the currently available robots
+     */
+    synchronized void update(Collection<? extends IRobot> robots) {
+        boolean changed = false;
+
+        Iterator<Entry<IRobot, IConnector<?>>> iterator = this.connectors.entrySet().iterator();
+        while ( iterator.hasNext() ) {
+            Entry<IRobot, IConnector<?>> entry = iterator.next();
+            if ( !robots.contains(entry.getKey()) ) {
+                LOG.info("{} is no longer available, closing its connector", getDescription(entry.getKey()));
+                iterator.remove();
+                this.loggedTokens.remove(entry.getValue());
+                entry.getValue().close();
+                changed = true;
+            }
+        }
+
+        boolean ignored = false;
+        for ( IRobot robot : robots ) {
+            if ( this.connectors.containsKey(robot) ) {
+                continue;
+            }
+            if ( this.connectors.size() >= this.maxConnectors ) {
+                ignored = true;
+                break;
+            }
+            this.start(robot);
+            changed = true;
+        }
+        if ( ignored && !this.limitReached ) {
+            LOG.warn("Maximum of {} connectors reached, further robots are ignored", this.maxConnectors);
+        }
+        this.limitReached = ignored;
+
+        if ( changed ) {
+            this.logTokens();
+        }
+    }
+
+    /**
+     * Returns the tokens of all robots that are registered at the server.
+     *
+     * @return the registered robots and their tokens
+     */
+    Map<IRobot, String> getTokens() {
+        Map<IRobot, String> tokens = new LinkedHashMap<>();
+        for ( Entry<IRobot, IConnector<?>> entry : this.connectors.entrySet() ) {
+            String token = entry.getValue().getToken();
+            if ( !token.isEmpty() ) {
+                tokens.put(entry.getKey(), token);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Returns the number of running connectors.
+     *
+     * @return the number of running connectors
+     */
+    int getConnectorCount() {
+        return this.connectors.size();
+    }
+
+    /**
+     * Closes all connectors and waits for them to finish.
+     */
+    synchronized void close() {
+        for ( IConnector<?> connector : this.connectors.values() ) {
+            connector.close();
+        }
+        this.connectors.clear();
+        this.loggedTokens.clear();
+        this.executorService.shutdown();
+        try {
+            if ( !this.executorService.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS) ) {
+                LOG.warn("Not all connectors finished in time");
+            }
+        } catch ( InterruptedException e ) {
+            LOG.error("Interrupted while waiting for the connectors to finish: {}", e.getMessage());
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void start(IRobot robot) {
+        IConnector<?> connector = this.connectorFactory.apply(robot);
+        connector.registerListener(state -> this.onStateChange(robot, connector, state));
+        this.connectors.put(robot, connector);
+
+        LOG.info("Starting connector for {}", getDescription(robot));
+        this.executorService.submit(() -> {
+            try {
+                connector.run();
+            } catch ( RuntimeException e ) {
+                LOG.error("Connector for {} failed: {}", getDescription(robot), e.getMessage());
+            } finally {
+                // started again on the next update if the robot is still available
+                this.loggedTokens.remove(connector);
+                if ( this.connectors.remove(robot, connector) ) {
+                    LOG.info("Connector for {} finished", getDescription(robot));
+                }
+            }
+        });
+    }
+
+    private void onStateChange(IRobot robot, IConnector<?> connector, State state) {
+        switch ( state ) {
+            case WAIT_FOR_CONNECT_BUTTON_PRESS:
+                // there is no user to press the button, register right away
+                connector.connect();
+                break;
+            case WAIT_FOR_CMD:
+                String token = connector.getToken();
+                if ( !token.equals(this.loggedTokens.put(connector, token)) ) {
+                    LOG.info("{} is registered with token {}", getDescription(robot), token);
+                    this.logTokens();
+                }
+                break;
+            case TOKEN_TIMEOUT:
+                LOG.info("Token of {} timed out, registering again", getDescription(robot));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void logTokens() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(this.connectors.size()).append(" connectors running");
+        for ( Entry<IRobot, IConnector<?>> entry : this.connectors.entrySet() ) {
+            String token = entry.getValue().getToken();
+            sb.append(System.lineSeparator())
+                .append(String.format("  %-40s %s", getDescription(entry.getKey()), token.isEmpty() ? "(registering)" : token));
+        }
+        LOG.info("{}", sb);
+    }
+
+    private static String getDescription(IRobot robot) {
+        if ( robot instanceof IWiredRobot ) {
+            return robot.getPrettyName() + " (" + ((IWiredRobot) robot).getPort() + ')';
+        }
+        return robot.getPrettyName();
+    }
+}
@@ -0,0 +1,41 @@
+package de.fhg.iais.roberta.main;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import de.fhg.iais.roberta.util.PropertyHelper;
+
+/**
+ * Headless variant of the {@link OpenRobertaConnector} that serves all detected robots at once.
+ * Started with the --multi argument or the multiRobot property. Every robot gets its own connector and token, the tokens are logged.
+ */
+class MultiRobotConnector {
+    private static final Logger LOG = LoggerFactory.getLogger(MultiRobotConnector.class);
+
+    private static final int MAX_CONNECTORS = Integer.parseInt(PropertyHelper.getInstance().getProperty("maxConnectors"));
+
+    private final RobotDetectorHelper robotDetectorHelper = OpenRobertaConnector.createRobotDetectorHelper();
+    private final MultiConnectorManager connectorManager = new MultiConnectorManager(MAX_CONNECTORS);
+
+    void run() {
+        LOG.info("Starting in multi robot mode with up to {} robots", MAX_CONNECTORS);
+        // connectors are started and closed when the registry changes, the lock keeps changes from arriving before the already registered robots
+        RobotRegistry registry = this.robotDetectorHelper.getRegistry();
+        synchronized ( registry ) {
+            registry.registerListener(change -> this.connectorManager.update(change.getRobots()));
+            this.connectorManager.update(registry.getRobots());
+        }
+        try {
+            synchronized ( this ) {
+                while ( !Thread.currentThread().isInterrupted() ) {
+                    this.wait();
+                }
+            }
+        } catch ( InterruptedException e ) {
+            LOG.error("Thread was interrupted while serving robots: {}", e.getMessage());
+            Thread.currentThread().interrupt();
+        } finally {
+            this.connectorManager.close();
+        }
+    }
+}
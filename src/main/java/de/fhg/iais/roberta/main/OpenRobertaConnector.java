@@ -5,10 +5,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Arrays;
-import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Locale;
 import java.util.ResourceBundle;
-import java.util.Set;
 
 import de.fhg.iais.roberta.connection.IConnector;
 import de.fhg.iais.roberta.connection.IDetector;
@@ -20,22 +19,23 @@ import de.fhg.iais.roberta.ui.main.MainController;
 import de.fhg.iais.roberta.util.PropertyHelper;
 
 class OpenRobertaConnector {
+    private static final String MULTI_ROBOT_ARGUMENT = "--multi";
+
     public static void main(String args[]) {
-        new OpenRobertaConnector().run();
+        if ( Arrays.asList(args).contains(MULTI_ROBOT_ARGUMENT) || Boolean.parseBoolean(PropertyHelper.getInstance().getProperty("multiRobot")) ) {
+            new MultiRobotConnector().run();
+        } else {
+            new OpenRobertaConnector().run();
+        }
     }
 
     private static final Logger LOG = LoggerFactory.getLogger(OpenRobertaConnector.class);
 
-    private static final long TIMEOUT = 1000L;
     private static final long HELP_THRESHOLD = Long.parseLong(PropertyHelper.getInstance().getProperty("timeToHelp")) * 1000L;
 
     private final MainController controller;
 
-    private final IDetector wiredRobotDetector = new SerialRobotDetector();
-    private final IDetector rndisDetector = new RndisDetector();
-    private final IDetector naoDetector = new mDnsDetector();
-    private final IDetector robotinoDetector = new HostnameDetector();
-    private final RobotDetectorHelper robotDetectorHelper = new RobotDetectorHelper(Arrays.asList(this.wiredRobotDetector, this.rndisDetector, this.naoDetector, this.robotinoDetector));
+    private final RobotDetectorHelper robotDetectorHelper = createRobotDetectorHelper();
 
     OpenRobertaConnector() {
         ResourceBundle messages = ResourceBundle.getBundle(PropertyHelper.getInstance().getProperty("messagesBundle"), Locale.getDefault());
@@ -43,16 +43,28 @@ class OpenRobertaConnector {
 
         this.controller = new MainController(messages);
         this.controller.registerListener(this.robotDetectorHelper); // register the detector helper as a listener to selection events of the controller
+        this.robotDetectorHelper.getRegistry().registerListener(this::updateRobots);
+    }
+
+    /**
+     * Creates a detector helper with all supported detectors.
+     *
+     * @return the detector helper
+     */
+    static RobotDetectorHelper createRobotDetectorHelper() {
+        IDetector wiredRobotDetector = new SerialRobotDetector();
+        IDetector rndisDetector = new RndisDetector();
+        IDetector naoDetector = new mDnsDetector();
+        IDetector robotinoDetector = new HostnameDetector();
+        return new RobotDetectorHelper(Arrays.asList(wiredRobotDetector, rndisDetector, naoDetector, robotinoDetector));
     }
 
     void run() {
-        long previousTime = System.currentTimeMillis();
         long helpTimer = 0L;
         boolean showHelp = true;
 
         // Main loop, repeats until the program is closed
         while ( !Thread.currentThread().isInterrupted() ) {
-            Set<IRobot> robots = new HashSet<>(5);
             IRobot selectedRobot = null;
             this.robotDetectorHelper.reset();
 
@@ -60,21 +72,11 @@ class OpenRobertaConnector {
                 if ( Thread.currentThread().isInterrupted() ) {
                     break;
                 }
-                // Returns null if no robot is selected
-                selectedRobot = this.robotDetectorHelper.getSelectedRobot();
-
-                // Update frontend with currently detected robots
-                robots.addAll(this.robotDetectorHelper.getDetectedRobots());
-                this.controller.setRobotList(robots);
-
-                // Connect to robot if only one was found
-                if ( this.robotDetectorHelper.allDetectorsRanOnce() && (robots.size() == 1) ) {
-                    selectedRobot = (IRobot) robots.toArray()[0];
-                }
+                long previousTime = System.currentTimeMillis();
 
-                // Repeat until a robot is available or one was selected
+                // Wait until a robot is selected by the user or automatically, the timeout is only used for showing the help
                 try {
-                    Thread.sleep(TIMEOUT);
+                    selectedRobot = this.robotDetectorHelper.awaitSelectedRobot(showHelp ? Math.max(1L, HELP_THRESHOLD - helpTimer) : 0L);
                     helpTimer += (System.currentTimeMillis() - previousTime);
 
                     if ( (helpTimer > HELP_THRESHOLD) && showHelp ) {
@@ -84,8 +86,6 @@ class OpenRobertaConnector {
                 } catch ( InterruptedException e ) {
                     LOG.error("Thread was interrupted while waiting for a robot selection: {}", e.getMessage());
                 }
-
-                previousTime = System.currentTimeMillis();
             }
 
             if ( selectedRobot == null ) {
@@ -96,8 +96,22 @@ class OpenRobertaConnector {
             IConnector<?> connector = selectedRobot.createConnector();
 
             this.controller.setConnector(connector);
+            this.robotDetectorHelper.pause(); // resumed by the reset at the beginning of the loop
             connector.run(); // Blocking until the connector is finished
             showHelp = false;
         }
     }
+
+    private void updateRobots(RobotRegistry.Change change) {
+        if ( this.robotDetectorHelper.getSelectedRobot() != null ) {
+            return;
+        }
+        // Update frontend with currently detected robots
+        this.controller.setRobotList(new LinkedHashSet<>(change.getRobots()));
+
+        // Connect to robot if only one was found
+        if ( change.isComplete() && (change.getRobots().size() == 1) ) {
+            this.robotDetectorHelper.update(change.getRobots().get(0));
+        }
+    }
 }
@@ -1,83 +1,109 @@
 package de.fhg.iais.roberta.main;
 
-import org.apache.commons.lang3.concurrent.ConcurrentUtils;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 import de.fhg.iais.roberta.connection.IDetector;
 import de.fhg.iais.roberta.connection.IRobot;
+import de.fhg.iais.roberta.util.ExecutorFactory;
 import de.fhg.iais.roberta.util.IOraListener;
+import de.fhg.iais.roberta.util.PropertyHelper;
 
 /**
  * Helper class for robot detection.
- * Creates callables for each detector which return the respective detected robots.
+ * Runs each detector in its own interval and keeps the robots found by its most recent run. While the results of a detector that signals changes
+ * (e.g. a plugged in device) do not change its interval is doubled up to a maximum, a change or a change signal runs it again at its base interval.
+ * Detectors without a change signal always run at their base interval, otherwise a new robot would only be found after the increased interval.
+ * Detection can be paused while a connector is running. The detected robots are published to a {@link RobotRegistry}, which notifies about changes.
+ * A robot stays registered until its detector missed it for a few of its current intervals, at least for the robot time to live.
  */
 public class RobotDetectorHelper implements IOraListener<IRobot> {
     private static final Logger LOG = LoggerFactory.getLogger(RobotDetectorHelper.class);
 
     private static final int POOL_SIZE = 4;
+    private static final int MAX_BACKOFF = 8; // factor of the base interval
+    private static final long ROBOT_TTL = Long.parseLong(PropertyHelper.getInstance().getProperty("robotTtl"));
+    private static final long MISSED_RUNS = 2L; // a robot is removed after its detector missed it this often
+    private static final long EXPIRY_INTERVAL = 500L;
 
-    private final ExecutorService executorService = Executors.newFixedThreadPool(POOL_SIZE);
-    private final Map<IDetector, Future<List<IRobot>>> futures = new HashMap<>(5);
-    private final Map<IDetector, Boolean> ranOnce = new HashMap<>(5);
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("RobotDetectorScheduler", true));
+    private final ExecutorService executorService = ExecutorFactory.newExecutor(POOL_SIZE);
+    private final Map<IDetector, DetectorState> states = new LinkedHashMap<>(5);
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private final long robotTtl;
+    private final RobotRegistry registry;
 
-    private IRobot selectedRobot = null;
+    private boolean paused = false;
+    private final Object selectionLock = new Object();
+    private volatile IRobot selectedRobot = null;
 
     /**
      * Constructor for the robot detector helper.
-     * Starts the detectors and registers the corresponding futures in a map.
+     * Starts the detectors.
      *
      * @param detectors a list of detectors that should be used to find robots
      */
     public RobotDetectorHelper(List<? extends IDetector> detectors) {
+        this(detectors, ROBOT_TTL);
+    }
+
+    /**
+     * Constructor for the robot detector helper with a custom time to live of the detected robots.
+     * Starts the detectors.
+     *
+     * @param detectors a list of detectors that should be used to find robots
+     * @param robotTtl the minimum time in milliseconds a robot stays registered after it was last detected
+     */
+    RobotDetectorHelper(List<? extends IDetector> detectors, long robotTtl) {
+        this.robotTtl = robotTtl;
+        this.registry = new RobotRegistry(robotTtl);
         for ( IDetector detector : detectors ) {
-            this.futures.put(detector, this.executorService.submit(detector::detectRobots));
-            this.ranOnce.put(detector, false);
+            this.states.put(detector, new DetectorState(detector));
         }
+        synchronized ( this ) {
+            for ( DetectorState state : this.states.values() ) {
+                state.signalsChanges = state.detector.registerChangeListener(this::wakeUp);
+                this.schedule(state, 0L);
+            }
+        }
+        this.scheduler.scheduleWithFixedDelay(this::expireRobots, EXPIRY_INTERVAL, EXPIRY_INTERVAL, TimeUnit.MILLISECONDS);
     }
 
     /**
-     * Returns a list of currently detected robots.
-     * Checks the detectors, finished detectors are restarted.
+     * Returns the registry of the detected robots. It is updated after each detection run and notifies its listeners about added and removed robots.
+     *
+     * @return the robot registry
+     */
+    public RobotRegistry getRegistry() {
+        return this.registry;
+    }
+
+    /**
+     * Returns a list of currently detected robots, i.e. the robots found by the most recent finished run of each detector.
      *
      * @return a list of currently detected robots
      */
     public List<IRobot> getDetectedRobots() {
         List<IRobot> robots = new ArrayList<>(5);
-
-        // Check each detector future
-        for ( Entry<IDetector, Future<List<IRobot>>> entry : this.futures.entrySet() ) {
-            IDetector detector = entry.getKey();
-            Future<List<IRobot>> future = entry.getValue();
-
-            // If the future is done add the results to the list and start the detector again
-            if ( future.isDone() ) {
-                try {
-                    robots.addAll(future.get());
-                } catch ( InterruptedException e ) {
-                    LOG.info("Future was interrupted: {}", e.getMessage());
-                } catch ( ExecutionException e ) {
-                    LOG.info("Exception during callable: {}", e.getMessage());
-                }
-
-                // Enqueue another search process
-                this.futures.put(detector, this.executorService.submit(detector::detectRobots));
-
-                // Register that detector ran once
-                this.ranOnce.put(detector, true);
-            }
+        for ( DetectorState state : this.states.values() ) {
+            robots.addAll(state.lastResult);
         }
         return robots;
     }
@@ -87,8 +113,13 @@ public class RobotDetectorHelper implements IOraListener<IRobot> {
      *
      * @return whether each detector ran at least once
      */
-    public boolean allDetectorsRanOnce() {
-        return !this.ranOnce.containsValue(false);
+    public synchronized boolean allDetectorsRanOnce() {
+        for ( DetectorState state : this.states.values() ) {
+            if ( !state.ranOnce ) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
@@ -100,21 +131,297 @@ public class RobotDetectorHelper implements IOraListener<IRobot> {
         return this.selectedRobot;
     }
 
+    /**
+     * Waits until a robot is selected.
+     *
+     * @param timeout the maximum time to wait in milliseconds, 0 waits until a robot is selected
+     * @return the selected robot, null if none was selected in time
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public IRobot awaitSelectedRobot(long timeout) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeout;
+        synchronized ( this.selectionLock ) {
+            while ( this.selectedRobot == null ) {
+                long remaining = (timeout == 0L) ? 0L : (deadline - System.currentTimeMillis());
+                if ( (timeout != 0L) && (remaining <= 0L) ) {
+                    break;
+                }
+                this.selectionLock.wait(remaining);
+            }
+            return this.selectedRobot;
+        }
+    }
+
     @Override
     public void update(IRobot object) {
-        this.selectedRobot = object;
+        synchronized ( this.selectionLock ) {
+            this.selectedRobot = object;
+            this.selectionLock.notifyAll();
+        }
     }
 
     /**
-     * Resets the selected robot and whether each detector ran at least once.
+     * Resets the selected robot, the results of each detector and the registry, and runs all detectors again. Resumes paused detection.
      */
     public void reset() {
-        this.selectedRobot = null;
-        for ( Entry<IDetector, Boolean> entry : this.ranOnce.entrySet() ) {
-            entry.setValue(false);
+        this.update(null);
+        this.registry.clear();
+        synchronized ( this ) {
+            this.paused = false;
+            for ( DetectorState state : this.states.values() ) {
+                state.ranOnce = false;
+                state.lastResult = Collections.emptyList();
+                state.interval = state.baseInterval;
+                this.runNow(state);
+            }
+        }
+    }
+
+    /**
+     * Stops scheduling detection runs, e.g. while a connector is running. Runs that are in progress finish.
+     */
+    public synchronized void pause() {
+        this.paused = true;
+        for ( DetectorState state : this.states.values() ) {
+            if ( state.scheduled != null ) {
+                state.scheduled.cancel(false);
+                state.scheduled = null;
+            }
         }
-        for ( Entry<IDetector, Future<List<IRobot>>> entry : this.futures.entrySet() ) {
-            entry.setValue(ConcurrentUtils.constantFuture(Collections.emptyList()));
+        LOG.debug("Detection paused");
+    }
+
+    /**
+     * Resumes paused detection, all detectors run immediately.
+     */
+    public synchronized void resume() {
+        if ( this.paused ) {
+            this.paused = false;
+            for ( DetectorState state : this.states.values() ) {
+                this.runNow(state);
+            }
+            LOG.debug("Detection resumed");
+        }
+    }
+
+    /**
+     * Runs the detector again immediately with its base interval, e.g. after a device was plugged in.
+     *
+     * @param detector the detector that noticed a change
+     */
+    public synchronized void wakeUp(IDetector detector) {
+        DetectorState state = this.states.get(detector);
+        if ( state != null ) {
+            state.interval = state.baseInterval;
+            this.runNow(state);
+        }
+    }
+
+    /**
+     * Returns the cycle time and CPU cost of each detector.
+     *
+     * @return a snapshot of the statistics by detector
+     */
+    public synchronized Map<IDetector, DetectorStatistics> getStatistics() {
+        Map<IDetector, DetectorStatistics> statistics = new LinkedHashMap<>(this.states.size());
+        for ( DetectorState state : this.states.values() ) {
+            statistics.put(state.detector, new DetectorStatistics(state.runs, state.lastCycleNanos, state.totalCycleNanos, state.totalCpuNanos, state.interval));
+        }
+        return statistics;
+    }
+
+    /**
+     * Stops all detectors.
+     */
+    public synchronized void close() {
+        this.pause();
+        this.scheduler.shutdownNow();
+        this.executorService.shutdownNow();
+    }
+
+    private void runNow(DetectorState state) {
+        if ( state.running ) {
+            state.wakeUpRequested = true;
+        } else {
+            this.schedule(state, 0L);
+        }
+    }
+
+    private void schedule(DetectorState state, long delay) {
+        if ( this.paused || this.scheduler.isShutdown() ) {
+            return;
+        }
+        if ( state.scheduled != null ) {
+            state.scheduled.cancel(false);
+        }
+        state.scheduled = this.scheduler.schedule(() -> {
+            try {
+                this.executorService.execute(() -> this.run(state));
+            } catch ( RejectedExecutionException e ) {
+                // closed
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void run(DetectorState state) {
+        synchronized ( this ) {
+            if ( state.running || this.paused ) {
+                return;
+            }
+            state.running = true;
+            state.scheduled = null;
+        }
+
+        long start = System.nanoTime();
+        long cpuStart = this.getCurrentThreadCpuTime();
+        List<IRobot> result = null;
+        try {
+            result = state.detector.detectRobots();
+        } catch ( RuntimeException e ) {
+            LOG.info("Exception during detection: {}", e.getMessage());
+        }
+        long cycleNanos = System.nanoTime() - start;
+        long cpuNanos = Math.max(0L, this.getCurrentThreadCpuTime() - cpuStart);
+
+        Map<IRobot, Long> robots;
+        boolean complete;
+        synchronized ( this ) {
+            state.running = false;
+            state.ranOnce = true;
+            state.runs++;
+            state.lastCycleNanos = cycleNanos;
+            state.totalCycleNanos += cycleNanos;
+            state.totalCpuNanos += cpuNanos;
+
+            boolean changed = (result != null) && !new HashSet<>(result).equals(new HashSet<>(state.lastResult));
+            if ( result != null ) {
+                state.lastResult = Collections.unmodifiableList(new ArrayList<>(result));
+            }
+            if ( changed || state.wakeUpRequested || !state.signalsChanges ) {
+                state.interval = state.baseInterval;
+            } else {
+                state.interval = Math.min(state.interval * 2L, state.baseInterval * MAX_BACKOFF);
+            }
+            LOG.debug("{} took {} ms, {} ms CPU, next run in {} ms",
+                state.detector.getClass().getSimpleName(),
+                TimeUnit.NANOSECONDS.toMillis(cycleNanos),
+                TimeUnit.NANOSECONDS.toMillis(cpuNanos),
+                state.wakeUpRequested ? 0L : state.interval);
+
+            this.schedule(state, state.wakeUpRequested ? 0L : state.interval);
+            state.wakeUpRequested = false;
+
+            if ( this.paused ) {
+                return;
+            }
+            robots = this.getDetectedRobotTtls();
+            complete = this.allDetectorsRanOnce();
+        }
+        this.registry.update(robots, complete);
+    }
+
+    // a robot stays registered until its detector missed it several times, a backed off detector runs less often
+    private Map<IRobot, Long> getDetectedRobotTtls() {
+        Map<IRobot, Long> robots = new LinkedHashMap<>(5);
+        for ( DetectorState state : this.states.values() ) {
+            long ttl = Math.max(this.robotTtl, MISSED_RUNS * state.interval);
+            for ( IRobot robot : state.lastResult ) {
+                robots.merge(robot, ttl, Math::max);
+            }
+        }
+        return robots;
+    }
+
+    private void expireRobots() {
+        synchronized ( this ) {
+            if ( this.paused ) {
+                return;
+            }
+        }
+        this.registry.expire();
+    }
+
+    private long getCurrentThreadCpuTime() {
+        return this.threadMXBean.isCurrentThreadCpuTimeSupported() ? this.threadMXBean.getCurrentThreadCpuTime() : 0L;
+    }
+
+    /**
+     * The scheduling state of a detector, guarded by the helper.
+     */
+    private static final class DetectorState {
+        private final IDetector detector;
+        private final long baseInterval;
+
+        private volatile List<IRobot> lastResult = Collections.emptyList();
+        private long interval;
+        private boolean signalsChanges = false;
+        private ScheduledFuture<?> scheduled = null;
+        private boolean running = false;
+        private boolean wakeUpRequested = false;
+        private boolean ranOnce = false;
+
+        private long runs = 0L;
+        private long lastCycleNanos = 0L;
+        private long totalCycleNanos = 0L;
+        private long totalCpuNanos = 0L;
+
+        DetectorState(IDetector detector) {
+            this.detector = detector;
+            this.baseInterval = Math.max(1L, detector.getInterval());
+            this.interval = this.baseInterval;
+        }
+    }
+
+    /**
+     * The cycle time and CPU cost of a detector.
+     */
+    public static final class DetectorStatistics {
+        private final long runs;
+        private final long lastCycleNanos;
+        private final long totalCycleNanos;
+        private final long totalCpuNanos;
+        private final long interval;
+
+        DetectorStatistics(long runs, long lastCycleNanos, long totalCycleNanos, long totalCpuNanos, long interval) {
+            this.runs = runs;
+            this.lastCycleNanos = lastCycleNanos;
+            this.totalCycleNanos = totalCycleNanos;
+            this.totalCpuNanos = totalCpuNanos;
+            this.interval = interval;
+        }
+
+        public long getRuns() {
+            return this.runs;
+        }
+
+        public long getLastCycleNanos() {
+            return this.lastCycleNanos;
+        }
+
+        public long getMeanCycleNanos() {
+            return (this.runs == 0L) ? 0L : (this.totalCycleNanos / this.runs);
+        }
+
+        public long getTotalCpuNanos() {
+            return this.totalCpuNanos;
+        }
+
+        public long getInterval() {
+            return this.interval;
+        }
+
+        @Override
+        public String toString() {
+            return "DetectorStatistics{"
+                + "runs="
+                + this.runs
+                + ", meanCycleTime="
+                + TimeUnit.NANOSECONDS.toMicros(this.getMeanCycleNanos())
+                + "us, cpuTime="
+                + TimeUnit.NANOSECONDS.toMillis(this.totalCpuNanos)
+                + "ms, interval="
+                + this.interval
+                + "ms}";
         }
     }
 }
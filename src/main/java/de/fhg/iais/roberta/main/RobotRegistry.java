@@ -0,0 +1,195 @@
+package de.fhg.iais.roberta.main;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.LongSupplier;
+
+import de.fhg.iais.roberta.connection.IRobot;
+import de.fhg.iais.roberta.util.IOraListenable;
+import de.fhg.iais.roberta.util.IOraListener;
+
+/**
+ * Inventory of the currently available robots.
+ * Remembers until when each robot stays registered and removes robots that were not detected for their time to live, so a single missed detection does
+ * not remove a robot. The time to live can be given per robot, e.g. longer for robots of a detector that runs less often. A robot that is no longer
+ * detected is removed at the latest after the default time to live. Listeners are only notified when robots are added or removed, or when the inventory becomes complete, i.e. all detectors reported.
+ */
+public class RobotRegistry implements IOraListenable<RobotRegistry.Change> {
+    private final Collection<IOraListener<Change>> listeners = new CopyOnWriteArrayList<>();
+
+    private final long ttl;
+    private final LongSupplier clock;
+    private final Map<IRobot, Long> expiresAt = new LinkedHashMap<>(5);
+    private boolean complete = false;
+
+    /**
+     * Creates an empty registry.
+     *
+     * @param ttl the default time in milliseconds a robot stays registered after it was last detected
+     */
+    public RobotRegistry(long ttl) {
+        this(ttl, System::currentTimeMillis);
+    }
+
+    /**
+     * Creates an empty registry with a custom clock.
+     *
+     * @param ttl the default time in milliseconds a robot stays registered after it was last detected
+     * @param clock the clock in milliseconds
+     */
+    RobotRegistry(long ttl, LongSupplier clock) {
+        this.ttl = ttl;
+        this.clock = clock;
+    }
+
+    /**
+     * Registers the detected robots with the default time to live and removes expired ones.
+     *
+     * @param robots the currently detected robots
+     * @param complete whether all detectors contributed to the robots
+     */
+    public synchronized void update(Collection<? extends IRobot> robots, boolean complete) {
+        Map<IRobot, Long> ttls = new LinkedHashMap<>(robots.size());
+        for ( IRobot robot : robots ) {
+            ttls.put(robot, this.ttl);
+        }
+        this.update(ttls, complete);
+    }
+
+    /**
+     * Registers the detected robots with their own time to live and removes expired ones.
+     * Registered robots that are not detected any more are removed at the latest after the default time to live.
+     *
+     * @param robots the currently detected robots and the time in milliseconds each stays registered
+     * @param complete whether all detectors contributed to the robots
+     */
+    public synchronized void update(Map<? extends IRobot, Long> robots, boolean complete) {
+        long now = this.clock.getAsLong();
+        for ( Entry<IRobot, Long> entry : this.expiresAt.entrySet() ) {
+            if ( !robots.containsKey(entry.getKey()) ) {
+                entry.setValue(Math.min(entry.getValue(), now + this.ttl));
+            }
+        }
+        List<IRobot> added = new ArrayList<>(robots.size());
+        for ( Entry<? extends IRobot, Long> entry : robots.entrySet() ) {
+            if ( this.expiresAt.put(entry.getKey(), now + entry.getValue()) == null ) {
+                added.add(entry.getKey());
+            }
+        }
+        this.fireChange(added, this.removeExpired(now), complete);
+    }
+
+    /**
+     * Removes the robots that were not detected for the time to live.
+     */
+    public synchronized void expire() {
+        this.fireChange(Collections.emptyList(), this.removeExpired(this.clock.getAsLong()), this.complete);
+    }
+
+    /**
+     * Removes all robots, the registry is incomplete until the next complete update.
+     */
+    public synchronized void clear() {
+        List<IRobot> removed = new ArrayList<>(this.expiresAt.keySet());
+        this.expiresAt.clear();
+        this.fireChange(Collections.emptyList(), removed, false);
+    }
+
+    /**
+     * Returns the registered robots in the order they were detected.
+     *
+     * @return a snapshot of the registered robots
+     */
+    public synchronized List<IRobot> getRobots() {
+        return Collections.unmodifiableList(new ArrayList<>(this.expiresAt.keySet()));
+    }
+
+    @Override
+    public void registerListener(IOraListener<Change> listener) {
+        this.listeners.add(listener);
+    }
+
+    @Override
+    public void unregisterListener(IOraListener<Change> listener) {
+        this.listeners.remove(listener);
+    }
+
+    @Override
+    public void fire(Change object) {
+        for ( IOraListener<Change> listener : this.listeners ) {
+            listener.update(object);
+        }
+    }
+
+    private List<IRobot> removeExpired(long now) {
+        List<IRobot> removed = new ArrayList<>(0);
+        Iterator<Entry<IRobot, Long>> iterator = this.expiresAt.entrySet().iterator();
+        while ( iterator.hasNext() ) {
+            Entry<IRobot, Long> entry = iterator.next();
+            if ( now > entry.getValue() ) {
+                removed.add(entry.getKey());
+                iterator.remove();
+            }
+        }
+        return removed;
+    }
+
+    // listeners are notified while holding the lock, so they receive the changes in order
+    private void fireChange(List<IRobot> added, List<IRobot> removed, boolean complete) {
+        boolean completed = complete && !this.complete;
+        this.complete = complete;
+        if ( !added.isEmpty() || !removed.isEmpty() || completed ) {
+            this.fire(new Change(added, removed, this.getRobots(), complete));
+        }
+    }
+
+    /**
+     * A change of the registered robots.
+     */
+    public static final class Change {
+        private final List<IRobot> added;
+        private final List<IRobot> removed;
+        private final List<IRobot> robots;
+        private final boolean complete;
+
+        Change(List<IRobot> added, List<IRobot> removed, List<IRobot> robots, boolean complete) {
+            this.added = Collections.unmodifiableList(added);
+            this.removed = Collections.unmodifiableList(removed);
+            this.robots = robots;
+            this.complete = complete;
+        }
+
+        public List<IRobot> getAdded() {
+            return this.added;
+        }
+
+        public List<IRobot> getRemoved() {
+            return this.removed;
+        }
+
+        /**
+         * Returns all registered robots after the change.
+         *
+         * @return the registered robots
+         */
+        public List<IRobot> getRobots() {
+            return this.robots;
+        }
+
+        /**
+         * Returns whether all detectors contributed to the registered robots.
+         *
+         * @return whether the registry is complete
+         */
+        public boolean isComplete() {
+            return this.complete;
+        }
+    }
+}
@@ -35,6 +35,7 @@ import de.fhg.iais.roberta.connection.IConnector;
 import de.fhg.iais.roberta.connection.IConnector.State;
 import de.fhg.iais.roberta.connection.IRobot;
 import de.fhg.iais.roberta.connection.wired.IWiredRobot;
+import de.fhg.iais.roberta.connection.wired.mBot2.Mbot2Connector;
 import de.fhg.iais.roberta.connection.wireless.IWirelessRobot;
 import de.fhg.iais.roberta.main.UpdateHelper;
 import de.fhg.iais.roberta.main.UpdateInfo;
@@ -170,6 +171,13 @@ public class MainController implements IController, IOraListenable<IRobot> {
                     this.connector.getCurrentServerAddress(),
                     false);
                 this.mainView.setWaitForCmd(this.connector.getRobot().getConnectionType());
+                // the statistics of a successful upload are shown here, the ones of a failed upload also in its error popup
+                if ( this.connector instanceof Mbot2Connector ) {
+                    String summary = ((Mbot2Connector) this.connector).getTransferSummary();
+                    if ( summary != null ) {
+                        this.mainView.setLastUpload(summary);
+                    }
+                }
 
                 if ( this.connector.getRobot() instanceof IWirelessRobot ) {
                     this.mainView.showCustomNaoLogin();
@@ -211,7 +219,14 @@ public class MainController implements IController, IOraListenable<IRobot> {
                     if ( rb.containsKey(errorOutput) ) {
                         errorOutput = rb.getString(errorOutput);
                     }
-                    this.showAttentionPopup("errorUploadToRobot", getLastNLines(errorOutput, UPLOAD_ERROR_LINES));
+                    StringBuilder message = new StringBuilder(getLastNLines(errorOutput, UPLOAD_ERROR_LINES));
+                    // further entries are details like transfer statistics
+                    for ( String detail : additionalInfo.subList(1, additionalInfo.size()) ) {
+                        if ( detail != null ) {
+                            message.append("<br>").append(detail);
+                        }
+                    }
+                    this.showAttentionPopup("errorUploadToRobot", message.toString());
                 }
                 break;
             case ERROR_PYTHON_REQUIRE:
@@ -611,6 +611,10 @@ public class MainView extends JFrame {
         ((CardLayout) this.pnlGif.getLayout()).show(this.pnlGif, UiState.CONNECTED.toString() + connectionType);
     }
 
+    void setLastUpload(String summary) {
+        this.txtAreaInfo.setText(this.messages.getString("serverInfo") + '\n' + this.messages.getString("lastUpload") + ' ' + summary);
+    }
+
     void setWaitExecution() {
         if ( this.toggle ) {
             this.butRobot.setState(UiState.CONNECTED);
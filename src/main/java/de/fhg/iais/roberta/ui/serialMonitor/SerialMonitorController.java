@@ -5,19 +5,22 @@ import org.slf4j.LoggerFactory;
 
 import java.awt.event.ActionEvent;
 import java.awt.event.WindowEvent;
+import java.nio.file.Paths;
 import java.util.ResourceBundle;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
-import javax.swing.SwingUtilities;
-
 import de.fhg.iais.roberta.connection.IConnector;
 import de.fhg.iais.roberta.connection.IConnector.State;
+import de.fhg.iais.roberta.connection.SerialCaptureSink;
+import de.fhg.iais.roberta.connection.SerialDrainService;
 import de.fhg.iais.roberta.connection.SerialLoggingTask;
 import de.fhg.iais.roberta.connection.wired.IWiredRobot;
 import de.fhg.iais.roberta.ui.IController;
+import de.fhg.iais.roberta.util.ByteRingBuffer;
 import de.fhg.iais.roberta.util.IOraUiListener;
+import de.fhg.iais.roberta.util.PropertyHelper;
 
 import static de.fhg.iais.roberta.ui.serialMonitor.SerialMonitorView.CMD_CLEAR;
 import static de.fhg.iais.roberta.ui.serialMonitor.SerialMonitorView.CMD_RESTART;
@@ -25,16 +28,27 @@ import static de.fhg.iais.roberta.ui.serialMonitor.SerialMonitorView.CMD_RESTART
 public class SerialMonitorController implements IController {
     private static final Logger LOG = LoggerFactory.getLogger(SerialMonitorController.class);
 
+    private static final int SERIAL_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_LINES = Integer.parseInt(PropertyHelper.getInstance().getProperty("serialMonitorMaxLines"));
+    private static final int MAX_CHARS = Integer.parseInt(PropertyHelper.getInstance().getProperty("serialMonitorMaxChars"));
+    private static final String CAPTURE_DIRECTORY = PropertyHelper.getInstance().getProperty("serialCaptureDirectory");
+
     private final SerialMonitorView serialMonitorView;
 
     private final ExecutorService executorService = Executors.newSingleThreadExecutor();
     private Future<Void> serialLoggingFuture = null;
 
+    // the serial output is buffered by the logging task and rendered once per frame on the event dispatch thread
+    private final ByteRingBuffer serialBuffer = new ByteRingBuffer(SERIAL_BUFFER_SIZE);
+    private final SerialOutputRenderer serialOutputRenderer;
+    private SerialCaptureSink serialCaptureSink = null;
+
     private String portName = null;
     private String robot;
 
     public SerialMonitorController(ResourceBundle rb) {
         this.serialMonitorView = new SerialMonitorView(rb, new SerialMonitorViewListener());
+        this.serialOutputRenderer = new SerialOutputRenderer(this.serialBuffer, this.serialMonitorView.getTextArea(), MAX_LINES, MAX_CHARS);
 
         this.serialMonitorView.setVisible(false);
     }
@@ -52,9 +66,12 @@ public class SerialMonitorController implements IController {
         LOG.debug("setState: {}", state);
         switch ( state ) {
             case DISCOVER:
-            case WAIT_UPLOAD:
                 this.stopSerialLogging();
                 break;
+            case WAIT_UPLOAD:
+                // the drain of the port stays suspended, so output the upload reads on its way is diverted to the monitor
+                this.cancelSerialLogging();
+                break;
             case WAIT_FOR_CMD:
             case WAIT_EXECUTION:
                 if ( this.serialMonitorView.isVisible() ) {
@@ -71,28 +88,58 @@ public class SerialMonitorController implements IController {
 
         this.serialMonitorView.setSerialRate(robot);
         this.serialMonitorView.setVisible(true);
+        this.serialOutputRenderer.start();
 
         this.restartSerialLogging();
     }
 
     private void restartSerialLogging() {
         LOG.debug("restartSerialLogging");
-        this.stopSerialLogging();
-
-        this.serialLoggingFuture =
-            this.executorService.submit(new SerialLoggingTask(this::appendSerial, this.portName, this.serialMonitorView.getSerialRate()));
+        this.cancelSerialLogging();
+        // the monitor reads the port now, a drain of the port shows what the robot printed before
+        SerialDrainService.handOver(this.portName, this.serialBuffer);
+
+        SerialLoggingTask serialLoggingTask = new SerialLoggingTask(this.serialBuffer, this.portName, this.serialMonitorView.getSerialRate());
+        if ( (CAPTURE_DIRECTORY != null) && !CAPTURE_DIRECTORY.isEmpty() ) {
+            if ( this.serialCaptureSink == null ) {
+                PropertyHelper properties = PropertyHelper.getInstance();
+                this.serialCaptureSink = new SerialCaptureSink(Paths.get(CAPTURE_DIRECTORY),
+                    this.robot,
+                    Long.parseLong(properties.getProperty("serialCaptureMaxFileSize")),
+                    Long.parseLong(properties.getProperty("serialCaptureMaxFileAge")),
+                    Boolean.parseBoolean(properties.getProperty("serialCaptureTimestamps")));
+            }
+            serialLoggingTask.registerSliceListener(this.serialCaptureSink);
+        }
+        this.serialLoggingFuture = this.executorService.submit(serialLoggingTask);
     }
 
-    private void appendSerial(byte[] readBuffer) {
-        SwingUtilities.invokeLater(() -> this.serialMonitorView.appendText(readBuffer));
+    private void clearSerial() {
+        this.serialBuffer.clear();
+        this.serialOutputRenderer.clear();
     }
 
     private void stopSerialLogging() {
+        this.cancelSerialLogging();
+        SerialDrainService.takeBack(this.portName);
+    }
+
+    private void cancelSerialLogging() {
         if ( this.serialLoggingFuture != null ) {
             this.serialLoggingFuture.cancel(true);
         }
     }
 
+    private void stopSerialCapture() {
+        if ( this.serialCaptureSink != null ) {
+            this.serialCaptureSink.close();
+            LOG.info("Serial capture finished, {} bytes written, {} bytes dropped",
+                this.serialCaptureSink.getWritten(),
+                this.serialCaptureSink.getDropped());
+            this.serialCaptureSink = null;
+        }
+    }
+
     private class SerialMonitorViewListener implements IOraUiListener {
         @Override
         public void actionPerformed(ActionEvent e) {
@@ -101,10 +148,10 @@ public class SerialMonitorController implements IController {
             switch ( e.getActionCommand() ) {
                 case "comboBoxChanged":
                     SerialMonitorController.this.restartSerialLogging();
-                    SerialMonitorController.this.serialMonitorView.clearText();
+                    SerialMonitorController.this.clearSerial();
                     break;
                 case CMD_CLEAR:
-                    SerialMonitorController.this.serialMonitorView.clearText();
+                    SerialMonitorController.this.clearSerial();
                     break;
                 case CMD_RESTART:
                     SerialMonitorController.this.restartSerialLogging();
@@ -118,6 +165,8 @@ public class SerialMonitorController implements IController {
         public void windowClosing(WindowEvent e) {
             LOG.info("User closed serial window");
             SerialMonitorController.this.stopSerialLogging();
+            SerialMonitorController.this.serialOutputRenderer.stop();
+            SerialMonitorController.this.stopSerialCapture();
         }
     }
 }
@@ -1,6 +1,5 @@
 package de.fhg.iais.roberta.ui.serialMonitor;
 
-import org.apache.commons.codec.Charsets;
 import org.apache.commons.lang3.ArrayUtils;
 
 import de.fhg.iais.roberta.ui.OraButton;
@@ -94,12 +93,7 @@ class SerialMonitorView extends JFrame {
         }
     }
 
-    void appendText(byte[] bytes) {
-        this.textArea.append(new String(bytes, Charsets.UTF_8));
-        this.textArea.setCaretPosition(this.textArea.getDocument().getLength());
-    }
-
-    void clearText() {
-        this.textArea.setText("");
+    JTextArea getTextArea() {
+        return this.textArea;
     }
 }
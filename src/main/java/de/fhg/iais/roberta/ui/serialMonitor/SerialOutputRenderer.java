@@ -0,0 +1,150 @@
+package de.fhg.iais.roberta.ui.serialMonitor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+import javax.swing.JTextArea;
+import javax.swing.Timer;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+
+import de.fhg.iais.roberta.util.ByteRingBuffer;
+
+/**
+ * Renders the serial output into a text area.
+ * The output is drained from the ring buffer once per frame, so a robot printing in a tight loop causes one document update per frame instead
+ * of one per read. UTF-8 sequences split between reads are carried over to the next frame. The document is capped to a number of lines and
+ * characters, the oldest output is removed first.
+ * All methods except the constructor have to be called on the event dispatch thread.
+ */
+class SerialOutputRenderer {
+    private static final Logger LOG = LoggerFactory.getLogger(SerialOutputRenderer.class);
+
+    static final int FRAME_INTERVAL = 33; // ~30 fps
+
+    private static final int MAX_SEQUENCE_LENGTH = 4; // of a UTF-8 character
+
+    private final ByteRingBuffer buffer;
+    private final JTextArea textArea;
+    private final int maxLines;
+    private final int maxChars;
+
+    private final Timer timer;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ByteBuffer bytes;
+    private final CharBuffer chars;
+
+    /**
+     * Creates a stopped renderer.
+     *
+     * @param buffer the ring buffer the serial output is read from
+     * @param textArea the text area the output is appended to
+     * @param maxLines the maximum number of lines kept in the text area
+     * @param maxChars the maximum number of characters kept in the text area
+     */
+    SerialOutputRenderer(ByteRingBuffer buffer, JTextArea textArea, int maxLines, int maxChars) {
+        this.buffer = buffer;
+        this.textArea = textArea;
+        this.maxLines = maxLines;
+        this.maxChars = maxChars;
+        // room for one full drain and the carried over bytes of an incomplete sequence
+        this.bytes = ByteBuffer.allocate(buffer.capacity() + MAX_SEQUENCE_LENGTH);
+        this.chars = CharBuffer.allocate(this.bytes.capacity());
+        this.timer = new Timer(FRAME_INTERVAL, e -> this.render());
+        this.timer.setCoalesce(true);
+    }
+
+    void start() {
+        this.timer.start();
+    }
+
+    void stop() {
+        this.timer.stop();
+    }
+
+    /**
+     * Appends the output received since the last frame to the text area.
+     */
+    void render() {
+        // Buffer methods, as ByteBuffer and CharBuffer only override them since Java 9
+        Buffer byteView = this.bytes;
+        Buffer charView = this.chars;
+
+        int read = this.buffer.read(this.bytes.array(), this.bytes.position(), this.bytes.remaining());
+        if ( read == 0 ) {
+            return;
+        }
+        byteView.position(this.bytes.position() + read);
+        byteView.flip();
+        charView.clear();
+        // an incomplete sequence at the end stays in the byte buffer until the next frame
+        this.decoder.decode(this.bytes, this.chars, false);
+        this.bytes.compact();
+        charView.flip();
+        if ( !this.chars.hasRemaining() ) {
+            return;
+        }
+
+        Document document = this.textArea.getDocument();
+        try {
+            int length = this.chars.remaining();
+            int skip = this.skipLines(Math.max(0, length - this.maxChars), length);
+            document.insertString(document.getLength(), new String(this.chars.array(), skip, length - skip), null);
+            this.trim(document);
+        } catch ( BadLocationException e ) {
+            LOG.error("Could not append serial output: {}", e.getMessage());
+        }
+        this.textArea.setCaretPosition(document.getLength());
+    }
+
+    /**
+     * Removes the text and any incomplete sequence.
+     */
+    void clear() {
+        Buffer byteView = this.bytes;
+        byteView.clear();
+        this.decoder.reset();
+        this.textArea.setText("");
+    }
+
+    // moves a cut of the received characters to the start of the next line, unless the rest is a single line longer than the limit
+    private int skipLines(int skip, int length) {
+        if ( skip == 0 ) {
+            return 0;
+        }
+        char[] received = this.chars.array();
+        for ( int i = skip - 1; i < (length - 1); i++ ) {
+            if ( received[i] == '\n' ) {
+                return i + 1;
+            }
+        }
+        return skip;
+    }
+
+    private void trim(Document document) throws BadLocationException {
+        int remove = Math.max(0, document.getLength() - this.maxChars);
+        if ( remove > 0 ) {
+            // only whole lines are removed, unless the rest is a single line longer than the limit
+            int lineEnd = this.textArea.getLineEndOffset(this.textArea.getLineOfOffset(remove - 1));
+            if ( lineEnd < document.getLength() ) {
+                remove = lineEnd;
+            }
+        }
+        int lines = this.textArea.getLineCount();
+        if ( lines > this.maxLines ) {
+            remove = Math.max(remove, this.textArea.getLineStartOffset(lines - this.maxLines));
+        }
+        if ( remove > 0 ) {
+            document.remove(0, remove);
+        }
+    }
+}
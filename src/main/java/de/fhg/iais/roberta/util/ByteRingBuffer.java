@@ -0,0 +1,133 @@
+package de.fhg.iais.roberta.util;
+
+/**
+ * Preallocated, thread safe ring buffer for bytes, e.g. serial output.
+ * Writing never blocks, if the buffer is full the oldest bytes are overwritten, so the buffer always keeps the most recent output.
+ * Reading and writing copy into and out of caller provided arrays, no objects are allocated after construction.
+ */
+public final class ByteRingBuffer {
+    private final byte[] buffer;
+
+    private int head = 0; // next index to read
+    private int size = 0;
+    private long written = 0L;
+    private long overwritten = 0L;
+
+    /**
+     * Creates an empty ring buffer.
+     *
+     * @param capacity the number of bytes the buffer can hold
+     */
+    public ByteRingBuffer(int capacity) {
+        if ( capacity <= 0 ) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.buffer = new byte[capacity];
+    }
+
+    /**
+     * Appends bytes, overwriting the oldest bytes if the buffer is full.
+     *
+     * @param src the source array
+     * @param offset the offset in the source array
+     * @param length the number of bytes to append
+     */
+    public synchronized void write(byte[] src, int offset, int length) {
+        this.written += length;
+        // only the last capacity bytes can be kept
+        if ( length > this.buffer.length ) {
+            offset += length - this.buffer.length;
+            this.overwritten += this.size + (length - this.buffer.length);
+            length = this.buffer.length;
+            this.head = 0;
+            this.size = 0;
+        }
+        int free = this.buffer.length - this.size;
+        if ( length > free ) {
+            int dropped = length - free;
+            this.head = (this.head + dropped) % this.buffer.length;
+            this.size -= dropped;
+            this.overwritten += dropped;
+        }
+        int tail = (this.head + this.size) % this.buffer.length;
+        int first = Math.min(length, this.buffer.length - tail);
+        System.arraycopy(src, offset, this.buffer, tail, first);
+        System.arraycopy(src, offset + first, this.buffer, 0, length - first);
+        this.size += length;
+    }
+
+    /**
+     * Removes up to length of the oldest bytes and copies them into the destination.
+     *
+     * @param dst the destination array
+     * @param offset the offset in the destination array
+     * @param length the maximum number of bytes to read
+     * @return the number of bytes read, 0 if the buffer is empty
+     */
+    public synchronized int read(byte[] dst, int offset, int length) {
+        int read = this.peek(dst, offset, length);
+        this.head = (this.head + read) % this.buffer.length;
+        this.size -= read;
+        return read;
+    }
+
+    /**
+     * Copies up to length of the oldest bytes into the destination without removing them.
+     *
+     * @param dst the destination array
+     * @param offset the offset in the destination array
+     * @param length the maximum number of bytes to copy
+     * @return the number of bytes copied, 0 if the buffer is empty
+     */
+    public synchronized int peek(byte[] dst, int offset, int length) {
+        int count = Math.min(length, this.size);
+        int first = Math.min(count, this.buffer.length - this.head);
+        System.arraycopy(this.buffer, this.head, dst, offset, first);
+        System.arraycopy(this.buffer, 0, dst, offset + first, count - first);
+        return count;
+    }
+
+    /**
+     * Returns the number of bytes that can be read.
+     *
+     * @return the number of buffered bytes
+     */
+    public synchronized int available() {
+        return this.size;
+    }
+
+    /**
+     * Returns the maximum number of bytes the buffer can hold.
+     *
+     * @return the capacity
+     */
+    public int capacity() {
+        return this.buffer.length;
+    }
+
+    /**
+     * Returns the number of bytes written since creation.
+     *
+     * @return the total number of written bytes
+     */
+    public synchronized long getWritten() {
+        return this.written;
+    }
+
+    /**
+     * Returns the number of bytes that were overwritten before they were read.
+     *
+     * @return the number of lost bytes
+     */
+    public synchronized long getOverwritten() {
+        return this.overwritten;
+    }
+
+    /**
+     * Removes all buffered bytes.
+     */
+    public synchronized void clear() {
+        this.head = 0;
+        this.size = 0;
+    }
+}
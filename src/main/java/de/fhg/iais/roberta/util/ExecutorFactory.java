@@ -0,0 +1,106 @@
+package de.fhg.iais.roberta.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates the executors that run connectors and detectors.
+ * The execution mode is selected at startup with the executionMode property. In the platform mode (default) tasks run on a fixed pool of platform threads,
+ * in the virtual mode every task gets its own virtual thread, so blocking long-poll requests do not occupy an OS thread each.
+ * Virtual threads need a Java 21 runtime, on older runtimes the platform mode is used.
+ */
+public final class ExecutorFactory {
+    private static final Logger LOG = LoggerFactory.getLogger(ExecutorFactory.class);
+
+    /**
+     * The supported execution modes.
+     */
+    public enum ExecutionMode {
+        PLATFORM,
+        VIRTUAL
+    }
+
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findVirtualThreadPerTaskExecutor();
+    private static final ExecutionMode DEFAULT_MODE = getConfiguredMode();
+
+    private ExecutorFactory() {
+    }
+
+    /**
+     * Returns whether the runtime supports virtual threads.
+     *
+     * @return whether virtual threads are supported
+     */
+    public static boolean isVirtualThreadSupported() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * Returns the execution mode selected by the executionMode property.
+     *
+     * @return the configured execution mode
+     */
+    public static ExecutionMode getDefaultMode() {
+        return DEFAULT_MODE;
+    }
+
+    /**
+     * Creates an executor in the configured execution mode.
+     *
+     * @param poolSize the number of threads in the platform mode
+     * @return the new executor
+     */
+    public static ExecutorService newExecutor(int poolSize) {
+        return newExecutor(DEFAULT_MODE, poolSize);
+    }
+
+    /**
+     * Creates an executor in the given execution mode.
+     *
+     * @param mode the execution mode, falls back to platform threads if virtual threads are not supported
+     * @param poolSize the number of threads in the platform mode
+     * @return the new executor
+     */
+    public static ExecutorService newExecutor(ExecutionMode mode, int poolSize) {
+        if ( (mode == ExecutionMode.VIRTUAL) && isVirtualThreadSupported() ) {
+            try {
+                return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+            } catch ( IllegalAccessException | InvocationTargetException e ) {
+                LOG.error("Could not create virtual thread executor, using platform threads: {}", e.getMessage());
+            }
+        }
+        return Executors.newFixedThreadPool(poolSize);
+    }
+
+    private static Method findVirtualThreadPerTaskExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch ( NoSuchMethodException e ) {
+            return null;
+        }
+    }
+
+    private static ExecutionMode getConfiguredMode() {
+        String property = PropertyHelper.getInstance().getProperty("executionMode");
+        ExecutionMode mode = ExecutionMode.PLATFORM;
+        if ( property != null ) {
+            try {
+                mode = ExecutionMode.valueOf(property.trim().toUpperCase(Locale.ENGLISH));
+            } catch ( IllegalArgumentException e ) {
+                LOG.warn("Unknown execution mode {}, using platform threads", property);
+            }
+        }
+        if ( (mode == ExecutionMode.VIRTUAL) && !isVirtualThreadSupported() ) {
+            LOG.warn("Virtual threads are not supported by Java {}, using platform threads", System.getProperty("java.version"));
+            return ExecutionMode.PLATFORM;
+        }
+        LOG.info("Using {} threads for connectors and detectors", mode.toString().toLowerCase(Locale.ENGLISH));
+        return mode;
+    }
+}
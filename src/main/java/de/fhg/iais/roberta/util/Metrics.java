@@ -0,0 +1,80 @@
+package de.fhg.iais.roberta.util;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Simple process wide counters, e.g. for cache hits and misses.
+ * Counters are created on first use and are logged when the connector exits.
+ */
+public final class Metrics {
+    private static final Logger LOG = LoggerFactory.getLogger(Metrics.class);
+
+    private static final Map<String, LongAdder> COUNTERS = new ConcurrentHashMap<>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(Metrics::log, "Metrics"));
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * Increments the counter with the given name by one.
+     *
+     * @param name the name of the counter
+     */
+    public static void increment(String name) {
+        add(name, 1L);
+    }
+
+    /**
+     * Adds the value to the counter with the given name.
+     *
+     * @param name the name of the counter
+     * @param value the value to add
+     */
+    public static void add(String name, long value) {
+        COUNTERS.computeIfAbsent(name, key -> new LongAdder()).add(value);
+    }
+
+    /**
+     * Returns the current value of the counter with the given name.
+     *
+     * @param name the name of the counter
+     * @return the value of the counter, 0 if it was never used
+     */
+    public static long get(String name) {
+        LongAdder counter = COUNTERS.get(name);
+        return (counter == null) ? 0L : counter.sum();
+    }
+
+    /**
+     * Returns a sorted snapshot of all counters.
+     *
+     * @return the names and values of all counters
+     */
+    public static Map<String, Long> snapshot() {
+        Map<String, Long> snapshot = new TreeMap<>();
+        for ( Entry<String, LongAdder> entry : COUNTERS.entrySet() ) {
+            snapshot.put(entry.getKey(), entry.getValue().sum());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Logs all counters that were used.
+     */
+    public static void log() {
+        Map<String, Long> snapshot = snapshot();
+        if ( !snapshot.isEmpty() ) {
+            LOG.info("Metrics: {}", snapshot);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package de.fhg.iais.roberta.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Runs blocking probes, e.g. name resolutions or socket binds, concurrently under a shared deadline.
+ * A probing cycle takes as long as the slowest probe, but never longer than the timeout. Probes that miss the deadline keep running in the background
+ * and their result is returned by the next cycle instead of starting the same probe again.
+ *
+ * @param <K> the type of the probed keys
+ * @param <V> the type of the probe results
+ */
+public final class ParallelProber<K, V> {
+    private static final Logger LOG = LoggerFactory.getLogger(ParallelProber.class);
+
+    private final Function<K, V> probe;
+    private final Consumer<V> discard;
+    private final long timeout;
+    private final ExecutorService executor;
+
+    private final Map<K, CompletableFuture<V>> pending = new HashMap<>(5);
+
+    /**
+     * Creates a prober.
+     *
+     * @param name the name of the probe threads
+     * @param probe the blocking probe, returns null if nothing was found
+     * @param discard called with results of probes whose key was not requested again, e.g. to close them
+     * @param timeout the deadline of a probing cycle in milliseconds
+     */
+    public ParallelProber(String name, Function<K, V> probe, Consumer<V> discard, long timeout) {
+        this.probe = probe;
+        this.discard = discard;
+        this.timeout = timeout;
+        this.executor = Executors.newCachedThreadPool(new DaemonThreadFactory(name));
+    }
+
+    /**
+     * Probes all keys concurrently and waits until all probes finished or the deadline passed.
+     *
+     * @param keys the keys to probe
+     * @return the non null results of the probes that finished in time by their key
+     */
+    public synchronized Map<K, V> probe(Collection<K> keys) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.timeout);
+
+        Iterator<Entry<K, CompletableFuture<V>>> iterator = this.pending.entrySet().iterator();
+        while ( iterator.hasNext() ) {
+            Entry<K, CompletableFuture<V>> entry = iterator.next();
+            if ( !keys.contains(entry.getKey()) ) {
+                discardWhenDone(entry.getValue());
+                iterator.remove();
+            }
+        }
+
+        for ( K key : keys ) {
+            this.pending.computeIfAbsent(key, k -> CompletableFuture.supplyAsync(() -> this.probe.apply(k), this.executor));
+        }
+
+        Map<K, V> results = new HashMap<>(keys.size());
+        for ( K key : keys ) {
+            CompletableFuture<V> future = this.pending.get(key);
+            try {
+                V result = future.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if ( result != null ) {
+                    results.put(key, result);
+                }
+                this.pending.remove(key);
+            } catch ( TimeoutException e ) {
+                LOG.debug("Probing {} did not finish in time", key);
+            } catch ( ExecutionException e ) {
+                LOG.error("Probing {} failed: {}", key, e.getCause().getMessage());
+                this.pending.remove(key);
+            } catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Stops all running probes, their results are discarded.
+     */
+    public synchronized void close() {
+        for ( CompletableFuture<V> future : this.pending.values() ) {
+            discardWhenDone(future);
+        }
+        this.pending.clear();
+        this.executor.shutdownNow();
+    }
+
+    private void discardWhenDone(CompletableFuture<V> future) {
+        future.thenAccept(result -> {
+            if ( result != null ) {
+                this.discard.accept(result);
+            }
+        });
+    }
+
+    private static final class DaemonThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        DaemonThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, this.name + '-' + this.count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -30,17 +30,43 @@ public final class WiredRobotIdFileHelper {
         WIRED_ROBOT_ID_FILEPATH =
         SystemUtils.getUserHome().getPath() + File.separator + "OpenRobertaConnector" + File.separator + WIRED_ROBOT_ID_FILENAME;
 
+    private static volatile CachedTable cachedTable = null;
+
     private WiredRobotIdFileHelper() {
     }
 
+    /**
+     * Returns the lookup table of the id file. The file is only read again when its modification time changes.
+     *
+     * @return the current lookup table
+     */
+    public static WiredRobotIdTable getTable() {
+        return getTable(new File(WIRED_ROBOT_ID_FILEPATH));
+    }
+
+    static WiredRobotIdTable getTable(File file) {
+        long lastModified = file.lastModified(); // 0 if the file does not exist, the default file is used then
+        CachedTable cached = cachedTable;
+        if ( (cached != null) && cached.file.equals(file) && (cached.lastModified == lastModified) ) {
+            return cached.table;
+        }
+        Pair<Map<SerialDevice, WiredRobotType>, Map<Integer, String>> loadIdsResult = load(file);
+        WiredRobotIdTable table = WiredRobotIdTable.of(loadIdsResult.getFirst(), loadIdsResult.getSecond());
+        cachedTable = new CachedTable(file, lastModified, table);
+        LOG.debug("Loaded {} wired robot ids", table.size());
+        return table;
+    }
+
     public static Pair<Map<SerialDevice, WiredRobotType>, Map<Integer, String>> load() {
+        return load(new File(WIRED_ROBOT_ID_FILEPATH));
+    }
+
+    private static Pair<Map<SerialDevice, WiredRobotType>, Map<Integer, String>> load(File file) {
         Map<SerialDevice, WiredRobotType> supportedRobots = new HashMap<>(20);
         Map<Integer, String> readIdFileErrors = new HashMap<>(20);
 
-        File file = new File(WIRED_ROBOT_ID_FILEPATH);
-
         if ( !file.exists() ) {
-            LOG.warn("Could not find {}, using default file!", WIRED_ROBOT_ID_FILEPATH);
+            LOG.warn("Could not find {}, using default file!", file.getPath());
         }
 
         try (InputStream inputStream = (file.exists()) ?
@@ -102,6 +128,7 @@ public final class WiredRobotIdFileHelper {
         } catch ( IOException e ) {
             LOG.error("Something went wrong while writing the {} file: {}", WIRED_ROBOT_ID_FILENAME, e.getMessage());
         }
+        cachedTable = null; // the modification time may not change within its resolution
     }
 
     private static String checkIdEntryFormat(List<String> values) {
@@ -126,4 +153,16 @@ public final class WiredRobotIdFileHelper {
         }
         return "";
     }
+
+    private static final class CachedTable {
+        private final File file;
+        private final long lastModified;
+        private final WiredRobotIdTable table;
+
+        private CachedTable(File file, long lastModified, WiredRobotIdTable table) {
+            this.file = file;
+            this.lastModified = lastModified;
+            this.table = table;
+        }
+    }
 }
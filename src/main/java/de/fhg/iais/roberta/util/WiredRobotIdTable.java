@@ -0,0 +1,142 @@
+package de.fhg.iais.roberta.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import de.fhg.iais.roberta.connection.wired.WiredRobotType;
+
+/**
+ * Immutable lookup table from USB vendor and product ids to the supported wired robot types.
+ * The ids are packed into sorted int keys, a lookup is a binary search without string hashing.
+ */
+public final class WiredRobotIdTable {
+    private static final int NOT_AN_ID = -1;
+
+    private final int[] keys;
+    private final WiredRobotType[] types;
+    private final Map<Integer, String> errors;
+
+    private WiredRobotIdTable(int[] keys, WiredRobotType[] types, Map<Integer, String> errors) {
+        this.keys = keys;
+        this.types = types;
+        this.errors = errors;
+    }
+
+    /**
+     * Creates a table from the parsed entries of an id file.
+     *
+     * @param robots the supported robots by their ids
+     * @param errors the errors of the id file by line number
+     * @return the table
+     */
+    public static WiredRobotIdTable of(Map<SerialDevice, WiredRobotType> robots, Map<Integer, String> errors) {
+        long[] entries = new long[robots.size()];
+        WiredRobotType[] values = WiredRobotType.values();
+        int size = 0;
+        for ( Entry<SerialDevice, WiredRobotType> entry : robots.entrySet() ) {
+            int key = toKey(entry.getKey().vendorId, entry.getKey().productId);
+            if ( key != NOT_AN_ID ) {
+                // sort by key, keep the type in the lower half
+                entries[size++] = ((long) key << 32) | entry.getValue().ordinal();
+            }
+        }
+        Arrays.sort(entries, 0, size);
+
+        int[] keys = new int[size];
+        WiredRobotType[] types = new WiredRobotType[size];
+        for ( int i = 0; i < size; i++ ) {
+            keys[i] = (int) (entries[i] >>> 32);
+            types[i] = values[(int) entries[i]];
+        }
+        return new WiredRobotIdTable(keys, types, Collections.unmodifiableMap(new HashMap<>(errors)));
+    }
+
+    /**
+     * Returns the robot type of the device.
+     *
+     * @param device the serial device, only the ids are used
+     * @return the robot type, null if the device is not supported
+     */
+    public WiredRobotType get(SerialDevice device) {
+        int key = toKey(device.vendorId, device.productId);
+        return (key == NOT_AN_ID) ? null : this.get(key);
+    }
+
+    /**
+     * Returns the robot type of the ids.
+     *
+     * @param vendorId the USB vendor id
+     * @param productId the USB product id
+     * @return the robot type, null if the ids are not supported
+     */
+    public WiredRobotType get(int vendorId, int productId) {
+        return this.get(toKey(vendorId, productId));
+    }
+
+    private WiredRobotType get(int key) {
+        int index = Arrays.binarySearch(this.keys, key);
+        return (index < 0) ? null : this.types[index];
+    }
+
+    /**
+     * Returns the errors found while reading the id file.
+     *
+     * @return the errors by line number
+     */
+    public Map<Integer, String> getErrors() {
+        return this.errors;
+    }
+
+    /**
+     * Returns the number of supported ids.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return this.keys.length;
+    }
+
+    /**
+     * Returns the entries of the table, e.g. for editing them.
+     *
+     * @return the robot types by their serial device ids, sorted by ids
+     */
+    public Map<SerialDevice, WiredRobotType> toMap() {
+        Map<SerialDevice, WiredRobotType> map = new LinkedHashMap<>(this.keys.length);
+        for ( int i = 0; i < this.keys.length; i++ ) {
+            map.put(new SerialDevice(String.format("%04x", this.keys[i] >>> 16), String.format("%04x", this.keys[i] & 0xFFFF), "", ""), this.types[i]);
+        }
+        return map;
+    }
+
+    private static int toKey(String vendorId, String productId) {
+        int vendor = parseId(vendorId);
+        int product = parseId(productId);
+        return ((vendor == NOT_AN_ID) || (product == NOT_AN_ID)) ? NOT_AN_ID : toKey(vendor, product);
+    }
+
+    private static int toKey(int vendorId, int productId) {
+        return (vendorId << 16) | (productId & 0xFFFF);
+    }
+
+    // parses a 16 bit hex id without creating intermediate objects
+    private static int parseId(String id) {
+        int length = id.length();
+        if ( (length == 0) || (length > 4) ) {
+            return NOT_AN_ID;
+        }
+        int value = 0;
+        for ( int i = 0; i < length; i++ ) {
+            int digit = Character.digit(id.charAt(i), 16);
+            if ( digit < 0 ) {
+                return NOT_AN_ID;
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,258 @@
+package de.fhg.iais.roberta.connection;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import de.fhg.iais.roberta.connection.IConnector.State;
+import de.fhg.iais.roberta.connection.wired.WiredRobotType;
+import de.fhg.iais.roberta.connection.wired.arduino.Arduino;
+import de.fhg.iais.roberta.connection.wireless.AbstractWirelessConnector;
+import de.fhg.iais.roberta.connection.wireless.IWirelessCommunicator;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+class ConnectorTests {
+    private static final Logger LOG = LoggerFactory.getLogger(ConnectorTests.class);
+
+    private static final long IDLE_TIME = 1000L;
+    private static final long SERVER_TIMEOUT = 10000L; // the first request starts the asynchronous http client
+
+    private Thread connectorThread = null;
+
+    @BeforeEach
+    void setUp() {
+        this.connectorThread = null;
+    }
+
+    @Test
+    void run_ShouldNotConsumeCpu_WhenIdle() throws InterruptedException {
+        IConnector<?> connector = new TestConnector();
+        CountDownLatch waitForConnect = new CountDownLatch(1);
+        connector.registerListener(state -> {
+            if ( state == State.WAIT_FOR_CONNECT_BUTTON_PRESS ) {
+                waitForConnect.countDown();
+            }
+        });
+        this.startConnector(connector);
+        assertThat(waitForConnect.await(1L, TimeUnit.SECONDS), is(true));
+
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        long cpuTimeBefore = threadMXBean.getThreadCpuTime(this.connectorThread.getId());
+        Thread.sleep(IDLE_TIME);
+        long cpuTime = threadMXBean.getThreadCpuTime(this.connectorThread.getId()) - cpuTimeBefore;
+        LOG.info("Idle connector used {} us of cpu time in {} ms", cpuTime / 1000L, IDLE_TIME);
+
+        connector.close();
+        this.connectorThread.join(IDLE_TIME);
+        assertThat(this.connectorThread.isAlive(), is(false));
+        assertThat(cpuTime, lessThan(TimeUnit.MILLISECONDS.toNanos(10L)));
+    }
+
+    @Test
+    void connect_ShouldWakeUpConnector_WhenIdle() throws InterruptedException {
+        IConnector<?> connector = new TestConnector();
+        CountDownLatch waitForConnect = new CountDownLatch(1);
+        CountDownLatch waitForCmd = new CountDownLatch(1);
+        connector.registerListener(state -> {
+            if ( state == State.WAIT_FOR_CONNECT_BUTTON_PRESS ) {
+                waitForConnect.countDown();
+            } else if ( state == State.WAIT_FOR_CMD ) {
+                waitForCmd.countDown();
+            }
+        });
+        this.startConnector(connector);
+        assertThat(waitForConnect.await(1L, TimeUnit.SECONDS), is(true));
+
+        connector.connect();
+        assertThat(waitForCmd.await(100L, TimeUnit.MILLISECONDS), is(true));
+
+        connector.close();
+        this.connectorThread.join(IDLE_TIME);
+        assertThat(this.connectorThread.isAlive(), is(false));
+    }
+
+    @Test
+    void onCompletion_ShouldContinueOnConnectorThread_WhenFutureCompletes() throws InterruptedException {
+        CompletableFuture<String> response = new CompletableFuture<>();
+        AsyncTestConnector connector = new AsyncTestConnector(response);
+        CountDownLatch waitForServer = new CountDownLatch(1);
+        CountDownLatch waitForCmd = new CountDownLatch(1);
+        connector.registerListener(state -> {
+            if ( state == State.WAIT_FOR_SERVER ) {
+                waitForServer.countDown();
+            } else if ( state == State.WAIT_FOR_CMD ) {
+                waitForCmd.countDown();
+            }
+        });
+        this.startConnector(connector);
+        assertThat(waitForServer.await(1L, TimeUnit.SECONDS), is(true));
+
+        response.complete("repeat");
+        assertThat(waitForCmd.await(100L, TimeUnit.MILLISECONDS), is(true));
+        assertThat(connector.continuationThread, is(this.connectorThread));
+
+        connector.close();
+        this.connectorThread.join(IDLE_TIME);
+        assertThat(this.connectorThread.isAlive(), is(false));
+    }
+
+    @Test
+    void waitForCmd_ShouldNotBlockConnectorThread_WhenPushIsPending() throws IOException, InterruptedException {
+        BlockingQueue<HttpExchange> pendingPushes = new LinkedBlockingQueue<>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/rest/pushcmd", exchange -> {
+            exchange.getRequestBody().close();
+            pendingPushes.add(exchange);
+        });
+        server.start();
+        try {
+            TestWirelessConnector connector = new TestWirelessConnector();
+            connector.updateCustomServerAddress("localhost:" + server.getAddress().getPort());
+            CountDownLatch waitUpload = new CountDownLatch(1);
+            connector.registerListener(state -> {
+                if ( state == State.WAIT_UPLOAD ) {
+                    waitUpload.countDown();
+                }
+            });
+            this.startConnector(connector);
+
+            HttpExchange push = pendingPushes.poll(SERVER_TIMEOUT, TimeUnit.MILLISECONDS);
+            assertThat(push == null, is(false));
+            // the connector thread waits for a transition instead of reading the response
+            long start = System.currentTimeMillis();
+            while ( (this.connectorThread.getState() != Thread.State.WAITING) && ((System.currentTimeMillis() - start) < IDLE_TIME) ) {
+                Thread.sleep(1L);
+            }
+            assertThat(this.connectorThread.getState(), is(Thread.State.WAITING));
+
+            byte[] response = new JSONObject().put(IConnector.KEY_CMD, IConnector.CMD_DOWNLOAD).toString().getBytes(StandardCharsets.UTF_8);
+            push.sendResponseHeaders(200, response.length);
+            try (OutputStream os = push.getResponseBody()) {
+                os.write(response);
+            }
+            assertThat(waitUpload.await(SERVER_TIMEOUT, TimeUnit.MILLISECONDS), is(true));
+
+            connector.close();
+            this.connectorThread.join(IDLE_TIME);
+            assertThat(this.connectorThread.isAlive(), is(false));
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private void startConnector(IConnector<?> connector) {
+        this.connectorThread = new Thread(connector::run, "Test connector");
+        this.connectorThread.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if ( this.connectorThread != null ) {
+            this.connectorThread.interrupt();
+        }
+    }
+
+    private static class TestConnector extends AbstractConnector<Arduino> {
+        TestConnector() {
+            super(new Arduino(WiredRobotType.UNO, "1234"));
+        }
+
+        @Override
+        protected void runLoopBody() {
+            switch ( this.state ) {
+                case DISCOVER:
+                    this.fire(State.WAIT_FOR_CONNECT_BUTTON_PRESS);
+                    break;
+                case CONNECT_BUTTON_IS_PRESSED:
+                    this.fire(State.WAIT_FOR_CMD);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    /**
+     * A wireless connector that is already registered.
+     */
+    private static class TestWirelessConnector extends AbstractWirelessConnector<Arduino> {
+        TestWirelessConnector() {
+            super(new Arduino(WiredRobotType.UNO, "1234"), new TestWirelessCommunicator());
+            this.token = "TEST";
+        }
+
+        @Override
+        protected void waitUpload() {
+        }
+
+        @Override
+        protected void waitStopProgram() {
+        }
+    }
+
+    private static class TestWirelessCommunicator implements IWirelessCommunicator {
+        @Override
+        public void setPassword(String password) {
+        }
+
+        @Override
+        public JSONObject getDeviceInfo() {
+            return new JSONObject();
+        }
+
+        @Override
+        public void stopProgram() {
+        }
+
+        @Override
+        public void uploadFile(byte[] binaryFile, String fileName) {
+        }
+
+        @Override
+        public String checkFirmwareVersion() {
+            return "";
+        }
+    }
+
+    private static class AsyncTestConnector extends AbstractConnector<Arduino> {
+        private final CompletableFuture<String> response;
+        private volatile Thread continuationThread = null;
+
+        AsyncTestConnector(CompletableFuture<String> response) {
+            super(new Arduino(WiredRobotType.UNO, "1234"));
+            this.response = response;
+        }
+
+        @Override
+        protected void runLoopBody() {
+            if ( this.state == State.DISCOVER ) {
+                this.fire(State.WAIT_FOR_SERVER);
+                this.onCompletion(this.response, (command, throwable) -> {
+                    this.continuationThread = Thread.currentThread();
+                    this.fire(State.WAIT_FOR_CMD);
+                });
+            }
+        }
+    }
+}
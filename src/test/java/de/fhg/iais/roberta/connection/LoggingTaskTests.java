@@ -3,23 +3,38 @@ package de.fhg.iais.roberta.connection;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import de.fhg.iais.roberta.util.ByteRingBuffer;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 
 // I don't know if these tests make sense yet
 class LoggingTaskTests {
+    private static final Logger LOG = LoggerFactory.getLogger(LoggingTaskTests.class);
 
     private static final long TIMEOUT = 250L;
 
+    private static final int[] BAUD_RATES = { 115200, 921600 };
+    private static final long MEASUREMENT_TIME = 1000L;
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
     private ExecutorService executorService = null;
 
     @BeforeEach
@@ -75,6 +90,67 @@ class LoggingTaskTests {
         assertThat(messages.get(messages.size() - 1), is("finished"));
     }
 
+    // latency, throughput and allocations depend on the machine, they are only logged as a benchmark
+    @Test
+    void serialLoggingTask_ShouldPassOnAllBytesInOrder_WhenReadingAtBaudRate() throws Exception {
+        for ( int baudRate : BAUD_RATES ) {
+            ByteRingBuffer buffer = new ByteRingBuffer(64 * 1024);
+            SimulatedSerialInput input = new SimulatedSerialInput(baudRate);
+            SerialLoggingTask loggingTask = new SerialLoggingTask(buffer, input);
+
+            AtomicLong reads = new AtomicLong();
+            AtomicLong latencyNanos = new AtomicLong();
+            AtomicLong allocatedBefore = new AtomicLong(-1L);
+            AtomicLong allocatedAfter = new AtomicLong();
+            AtomicLong drained = new AtomicLong();
+            AtomicLong outOfOrder = new AtomicLong();
+            loggingTask.registerSliceListener(slice -> {
+                reads.incrementAndGet();
+                latencyNanos.addAndGet(input.getLatencyOfLastRead());
+                long allocated = getAllocatedBytes();
+                allocatedBefore.compareAndSet(-1L, allocated);
+                allocatedAfter.set(allocated);
+                // drain like the serial monitor
+                int read = buffer.read(input.drain, 0, input.drain.length);
+                for ( int i = 0; i < read; i++ ) {
+                    if ( input.drain[i] != SimulatedSerialInput.byteAt(drained.getAndIncrement()) ) {
+                        outOfOrder.incrementAndGet();
+                    }
+                }
+            });
+
+            Future<Void> submit = this.executorService.submit(loggingTask);
+            Thread.sleep(MEASUREMENT_TIME);
+            submit.cancel(true);
+            // the single thread runs the next task only after the logging task finished
+            this.executorService.submit(() -> null).get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+            long bytes = buffer.getWritten();
+            long lineRate = baudRate / 10L; // 8N1
+            long meanLatency = TimeUnit.NANOSECONDS.toMicros(latencyNanos.get() / Math.max(1L, reads.get()));
+            long allocatedPerRead = (allocatedAfter.get() - allocatedBefore.get()) / Math.max(1L, reads.get() - 1L);
+            LOG.info("{} baud: {} bytes/s of {} bytes/s, {} reads, mean latency {} us, {} bytes allocated per read",
+                baudRate,
+                (bytes * 1000L) / MEASUREMENT_TIME,
+                lineRate,
+                reads.get(),
+                meanLatency,
+                allocatedPerRead);
+
+            assertThat(bytes, greaterThan(0L));
+            assertThat(buffer.getOverwritten(), is(0L));
+            assertThat(drained.get() + buffer.available(), is(bytes));
+            assertThat(outOfOrder.get(), is(0L));
+        }
+    }
+
+    private static long getAllocatedBytes() {
+        if ( THREAD_MX_BEAN instanceof com.sun.management.ThreadMXBean ) {
+            return ((com.sun.management.ThreadMXBean) THREAD_MX_BEAN).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0L;
+    }
+
     @AfterEach
     void tearDown() {
         this.executorService.shutdown();
@@ -91,4 +167,54 @@ class LoggingTaskTests {
             fire("finished".getBytes());
         }
     }
+
+    /**
+     * Emulates a serial port receiving continuously at the given baud rate, a read waits until at least one byte arrived.
+     */
+    private static class SimulatedSerialInput implements SerialLoggingTask.SerialInput {
+        private final long nanosPerByte;
+        private final long start = System.nanoTime();
+        private final byte[] drain = new byte[64 * 1024];
+        private long position = 0L;
+        private volatile long latencyOfLastRead = 0L;
+
+        SimulatedSerialInput(int baudRate) {
+            this.nanosPerByte = TimeUnit.SECONDS.toNanos(10L) / baudRate;
+        }
+
+        @Override
+        public int read(byte[] buffer, int length) {
+            long now = System.nanoTime();
+            long arrived = (now - this.start) / this.nanosPerByte;
+            while ( arrived <= this.position ) {
+                LockSupport.parkNanos(((this.position + 1L) * this.nanosPerByte) - (now - this.start));
+                if ( Thread.currentThread().isInterrupted() ) {
+                    return 0;
+                }
+                now = System.nanoTime();
+                arrived = (now - this.start) / this.nanosPerByte;
+            }
+            int read = (int) Math.min(length, arrived - this.position);
+            for ( int i = 0; i < read; i++ ) {
+                buffer[i] = byteAt(this.position + i);
+            }
+            // the oldest byte of the read waited the longest
+            this.latencyOfLastRead = (now - this.start) - ((this.position + 1L) * this.nanosPerByte);
+            this.position += read;
+            return read;
+        }
+
+        // the content of the byte at the position of the stream, so its order can be checked
+        static byte byteAt(long position) {
+            return (byte) (position % 251L);
+        }
+
+        long getLatencyOfLastRead() {
+            return this.latencyOfLastRead;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
 }
@@ -0,0 +1,137 @@
+package de.fhg.iais.roberta.connection;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.iterableWithSize;
+import static org.hamcrest.Matchers.matchesPattern;
+
+class SerialCaptureSinkTests {
+    private static final Logger LOG = LoggerFactory.getLogger(SerialCaptureSinkTests.class);
+
+    private static final String TIMESTAMP = "\\[\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}\\.\\d{3}] ";
+    private static final int MAX_BAUD_RATE = 921600;
+    private static final long MEASUREMENT_TIME = 1000L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void update_ShouldPrefixEachLine_WhenTimestampsAreEnabled() throws IOException {
+        try ( SerialCaptureSink sink = new SerialCaptureSink(this.directory, "test", Long.MAX_VALUE, Long.MAX_VALUE, true) ) {
+            sink.update(bytes("first\nsec"));
+            sink.update(bytes("ond\n"));
+        }
+
+        List<Path> files = this.listFiles();
+        assertThat(files, iterableWithSize(1));
+        List<String> lines = Files.readAllLines(files.get(0), StandardCharsets.UTF_8);
+        assertThat(lines, iterableWithSize(2));
+        assertThat(lines.get(0), matchesPattern(TIMESTAMP + "first"));
+        assertThat(lines.get(1), matchesPattern(TIMESTAMP + "second"));
+    }
+
+    @Test
+    void update_ShouldStartNewFile_WhenMaxFileSizeIsReached() throws IOException {
+        StringBuilder expected = new StringBuilder();
+        try ( SerialCaptureSink sink = new SerialCaptureSink(this.directory, "test", 20L, Long.MAX_VALUE, false) ) {
+            for ( int i = 0; i < 10; i++ ) {
+                String line = "line" + i + '\n';
+                expected.append(line);
+                sink.update(bytes(line));
+            }
+        }
+
+        List<Path> files = this.listFiles();
+        assertThat(files, iterableWithSize(3));
+        StringBuilder captured = new StringBuilder();
+        for ( Path file : files ) {
+            captured.append(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        }
+        assertThat(captured.toString(), is(expected.toString()));
+        // the files are rotated between lines
+        assertThat(Files.readAllLines(files.get(0), StandardCharsets.UTF_8), contains("line0", "line1", "line2", "line3"));
+    }
+
+    @Test
+    void update_ShouldCopyTheSlice_WhenTheReaderReusesIt() throws IOException {
+        StringBuilder expected = new StringBuilder();
+        byte[] chunk = new byte[10000]; // larger than a pooled chunk
+        ByteBuffer slice = ByteBuffer.wrap(chunk).asReadOnlyBuffer();
+        try ( SerialCaptureSink sink = new SerialCaptureSink(this.directory, "test", Long.MAX_VALUE, Long.MAX_VALUE, false) ) {
+            for ( char c = 'a'; c <= 'c'; c++ ) {
+                Arrays.fill(chunk, (byte) c);
+                chunk[chunk.length - 1] = '\n';
+                sink.update(slice);
+                expected.append(new String(chunk, StandardCharsets.UTF_8));
+            }
+        }
+
+        List<Path> files = this.listFiles();
+        assertThat(files, iterableWithSize(1));
+        assertThat(new String(Files.readAllBytes(files.get(0)), StandardCharsets.UTF_8), is(expected.toString()));
+    }
+
+    @Test
+    void update_ShouldNotDropOutput_WhenCapturingAtMaximumBaudRate() throws IOException {
+        ByteBuffer line = bytes("Sensor value: 42, ultrasonic: 123 cm\n");
+        long bytesPerMilli = MAX_BAUD_RATE / 10 / 1000; // 8N1
+        long produced = 0L;
+        long blocked = 0L;
+
+        SerialCaptureSink sink = new SerialCaptureSink(this.directory, "test", 1024L * 1024L, Long.MAX_VALUE, true);
+        long start = System.nanoTime();
+        for ( long milli = 1; milli <= MEASUREMENT_TIME; milli++ ) {
+            while ( produced < (milli * bytesPerMilli) ) {
+                // the same slice for every read, like the logging task hands it over
+                long before = System.nanoTime();
+                sink.update(line);
+                blocked = Math.max(blocked, System.nanoTime() - before);
+                produced += line.remaining();
+            }
+            LockSupport.parkNanos((start + TimeUnit.MILLISECONDS.toNanos(milli)) - System.nanoTime());
+        }
+        sink.close();
+
+        long captured = 0L;
+        for ( Path file : this.listFiles() ) {
+            captured += Files.readAllLines(file, StandardCharsets.UTF_8).size();
+        }
+        LOG.info("{} bytes produced in {} ms, {} bytes written, {} bytes dropped, longest update {} us",
+            produced,
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start),
+            sink.getWritten(),
+            sink.getDropped(),
+            TimeUnit.NANOSECONDS.toMicros(blocked));
+
+        assertThat(sink.getDropped(), is(0L));
+        assertThat(captured, is(produced / line.remaining()));
+    }
+
+    private List<Path> listFiles() throws IOException {
+        try ( Stream<Path> files = Files.list(this.directory) ) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static ByteBuffer bytes(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+    }
+}
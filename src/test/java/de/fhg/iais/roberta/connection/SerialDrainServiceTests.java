@@ -0,0 +1,130 @@
+package de.fhg.iais.roberta.connection;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.fhg.iais.roberta.util.ByteRingBuffer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class SerialDrainServiceTests {
+    private static final long TIMEOUT = 1000L;
+
+    private final QueuedSerialInput input = new QueuedSerialInput();
+    private final AtomicInteger opened = new AtomicInteger();
+
+    @Test
+    void stop_ShouldReleaseInput_BeforeReturning() throws InterruptedException {
+        SerialDrainService service = this.createService(0);
+        service.start();
+        this.input.offer("chatter");
+        this.input.awaitDrained();
+
+        service.stop();
+
+        assertThat(service.isRunning(), is(false));
+        assertThat(this.input.open.get(), is(0));
+        assertThat(service.getRetained().length, is(0));
+    }
+
+    @Test
+    void suspend_ShouldHandOverLastOutput_WhenOutputIsRetained() throws InterruptedException {
+        SerialDrainService service = this.createService(8);
+        service.start();
+        this.input.offer("hello ");
+        this.input.offer("world!");
+        this.input.awaitDrained();
+        assertThat(new String(service.getRetained(), StandardCharsets.UTF_8), is("o world!"));
+
+        ByteRingBuffer monitor = new ByteRingBuffer(64);
+        service.suspend(monitor);
+        byte[] handedOver = new byte[64];
+        int length = monitor.read(handedOver, 0, handedOver.length);
+
+        assertThat(new String(handedOver, 0, length, StandardCharsets.UTF_8), is("o world!"));
+        assertThat(service.isRunning(), is(false));
+        assertThat(this.input.open.get(), is(0));
+
+        // a start while suspended, e.g. after an upload, waits for the monitor to be closed
+        service.stop();
+        service.start();
+        assertThat(service.isRunning(), is(false));
+        service.resume();
+        assertThat(service.isRunning(), is(true));
+        service.stop();
+        assertThat(this.opened.get(), is(2));
+    }
+
+    @Test
+    void divert_ShouldPassOutputToMonitor_WhenServiceIsSuspended() {
+        SerialDrainService service = this.createService(8);
+        service.divert("before".getBytes(StandardCharsets.UTF_8));
+        assertThat(new String(service.getRetained(), StandardCharsets.UTF_8), is("before"));
+
+        ByteRingBuffer monitor = new ByteRingBuffer(64);
+        service.suspend(monitor);
+        service.divert(" status".getBytes(StandardCharsets.UTF_8));
+        service.resume();
+        service.divert(" after".getBytes(StandardCharsets.UTF_8));
+        service.stop();
+        byte[] diverted = new byte[64];
+        int length = monitor.read(diverted, 0, diverted.length);
+
+        assertThat(new String(diverted, 0, length, StandardCharsets.UTF_8), is("before status"));
+        assertThat(new String(service.getRetained(), StandardCharsets.UTF_8), is(" after"));
+    }
+
+    private SerialDrainService createService(int retainedBytes) {
+        return new SerialDrainService("ttyACM0", () -> {
+            this.opened.incrementAndGet();
+            this.input.open.incrementAndGet();
+            return this.input;
+        }, retainedBytes);
+    }
+
+    /**
+     * Blocks until output is queued, like a semi-blocking read of a serial port.
+     */
+    private static class QueuedSerialInput implements SerialLoggingTask.SerialInput {
+        private final BlockingQueue<byte[]> queue = new LinkedBlockingQueue<>();
+        private final AtomicInteger open = new AtomicInteger();
+
+        void offer(String output) {
+            this.queue.offer(output.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void awaitDrained() throws InterruptedException {
+            long end = System.currentTimeMillis() + TIMEOUT;
+            while ( !this.queue.isEmpty() && (System.currentTimeMillis() < end) ) {
+                Thread.sleep(1);
+            }
+            Thread.sleep(10); // the last read is written to the buffer
+        }
+
+        @Override
+        public int read(byte[] buffer, int length) {
+            try {
+                byte[] output = this.queue.poll(100, TimeUnit.MILLISECONDS);
+                if ( output == null ) {
+                    return 0;
+                }
+                System.arraycopy(output, 0, buffer, 0, output.length);
+                return output.length;
+            } catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+                return 0;
+            }
+        }
+
+        @Override
+        public void close() {
+            this.open.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package de.fhg.iais.roberta.connection;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ServerCommunicatorTests {
+    private static final Logger LOG = LoggerFactory.getLogger(ServerCommunicatorTests.class);
+
+    private static final int PUSHES = 20;
+    private static final long PUSHES_PER_HOUR = 3600L / 10L; // the server answers a push after approximately 10 seconds
+
+    private static final int PENDING_PUSHES = 200;
+    private static final long TIMEOUT = 10L;
+
+    private static final byte[] PROGRAM = new byte[300000];
+    static {
+        new Random(42L).nextBytes(PROGRAM);
+    }
+
+    private final BlockingQueue<HttpExchange> pendingPushes = new LinkedBlockingQueue<>();
+    private final AtomicInteger failingRequests = new AtomicInteger();
+
+    private HttpServer server = null;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.createContext("/rest/pushcmd", exchange -> {
+            byte[] response = new JSONObject().put(IConnector.KEY_CMD, IConnector.CMD_REPEAT).toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getRequestBody().close();
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(response);
+            }
+        });
+        // answered later by the test, the handler returns immediately like a server holding a long-poll
+        this.server.createContext("/rest/pendingpush/rest/pushcmd", exchange -> {
+            exchange.getRequestBody().close();
+            this.pendingPushes.add(exchange);
+        });
+        this.server.createContext("/rest/failing/rest/pushcmd", exchange -> {
+            exchange.getRequestBody().close();
+            this.failingRequests.incrementAndGet();
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+        });
+        this.server.createContext("/rest/download", exchange -> {
+            exchange.getRequestBody().close();
+            exchange.getResponseHeaders().add("Filename", "NEPOprog.hex");
+            exchange.sendResponseHeaders(200, PROGRAM.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(PROGRAM);
+            }
+        });
+        this.server.start();
+    }
+
+    @Test
+    void pushRequest_ShouldReuseConnection_WhenPushingRepeatedly() throws IOException {
+        ServerCommunicator serverCommunicator = new ServerCommunicator("localhost:" + this.server.getAddress().getPort());
+        JSONObject request = new JSONObject().put(IConnector.KEY_TOKEN, "TEST").put(IConnector.KEY_CMD, IConnector.CMD_PUSH);
+
+        // warm up the pool, the first request has to open a connection
+        serverCommunicator.pushRequest(request);
+        long openedBefore = ServerConnectionPool.getOpenedConnections();
+
+        long start = System.nanoTime();
+        for ( int i = 0; i < PUSHES; i++ ) {
+            JSONObject response = serverCommunicator.pushRequest(request);
+            assertThat(response.getString(IConnector.KEY_CMD), is(IConnector.CMD_REPEAT));
+        }
+        long duration = System.nanoTime() - start;
+        long opened = ServerConnectionPool.getOpenedConnections() - openedBefore;
+
+        LOG.info("{} pushes opened {} connections in {} ms, extrapolated handshakes per hour per robot: {}",
+            PUSHES,
+            opened,
+            duration / 1000000L,
+            (opened * PUSHES_PER_HOUR) / PUSHES);
+        assertThat(opened, lessThanOrEqualTo(1L));
+    }
+
+    @Test
+    void pushRequest_ShouldRememberHttp_WhenServerDoesNotSupportHttps() throws IOException {
+        ServerCommunicator serverCommunicator = new ServerCommunicator("127.0.0.1:" + this.server.getAddress().getPort());
+        JSONObject request = new JSONObject().put(IConnector.KEY_TOKEN, "TEST").put(IConnector.KEY_CMD, IConnector.CMD_PUSH);
+
+        assertThat(serverCommunicator.getCurrentScheme(), is(""));
+        serverCommunicator.pushRequest(request);
+        // a single failed https attempt might be transient
+        assertThat(serverCommunicator.getCurrentScheme(), is(""));
+        serverCommunicator.pushRequest(request);
+        assertThat(serverCommunicator.getCurrentScheme(), is(ServerSchemeCache.HTTP));
+
+        long openedBefore = ServerConnectionPool.getOpenedConnections();
+        serverCommunicator.pushRequest(request);
+        assertThat(ServerConnectionPool.getOpenedConnections() - openedBefore, is(0L));
+    }
+
+    @Test
+    void pushRequest_ShouldKeepSchemeAndNotRepeatRequest_WhenServerReturnsError() {
+        String serverAddress = "127.0.0.1:" + this.server.getAddress().getPort() + "/rest/failing";
+        ServerCommunicator serverCommunicator = new ServerCommunicator(serverAddress);
+        JSONObject request = new JSONObject().put(IConnector.KEY_TOKEN, "TEST").put(IConnector.KEY_CMD, IConnector.CMD_PUSH);
+        ServerSchemeCache.getInstance().put(serverAddress, ServerSchemeCache.HTTP);
+
+        assertThrows(IOException.class, () -> serverCommunicator.pushRequest(request));
+        assertThat(this.failingRequests.get(), is(1));
+        assertThat(serverCommunicator.getCurrentScheme(), is(ServerSchemeCache.HTTP));
+    }
+
+    @Test
+    void downloadProgramToFile_ShouldWriteProgramToFile_WhenDownloading() throws IOException {
+        ServerCommunicator serverCommunicator = new ServerCommunicator("localhost:" + this.server.getAddress().getPort());
+        JSONObject request = new JSONObject().put(IConnector.KEY_TOKEN, "TEST").put(IConnector.KEY_CMD, IConnector.CMD_PUSH);
+
+        Path program = serverCommunicator.downloadProgramToFile(request, "test_");
+        try {
+            assertThat(program.getFileName().toString(), startsWith("test_NEPOprog.hex"));
+            assertThat(Arrays.equals(Files.readAllBytes(program), PROGRAM), is(true));
+        } finally {
+            Files.delete(program);
+        }
+    }
+
+    @Test
+    void pushRequestAsync_ShouldNotOccupyThreads_WhenManyPushesArePending()
+        throws InterruptedException, ExecutionException, TimeoutException, IOException {
+        ServerCommunicator serverCommunicator = new ServerCommunicator("localhost:" + this.server.getAddress().getPort() + "/rest/pendingpush");
+        JSONObject request = new JSONObject().put(IConnector.KEY_TOKEN, "TEST").put(IConnector.KEY_CMD, IConnector.CMD_PUSH);
+
+        // start the event loop
+        CompletableFuture<JSONObject> warmUp = serverCommunicator.pushRequestAsync(request);
+        answer(this.pendingPushes.poll(TIMEOUT, TimeUnit.SECONDS));
+        warmUp.get(TIMEOUT, TimeUnit.SECONDS);
+
+        int threadsBefore = ManagementFactory.getThreadMXBean().getThreadCount();
+        List<CompletableFuture<JSONObject>> pushes = new ArrayList<>(PENDING_PUSHES);
+        for ( int i = 0; i < PENDING_PUSHES; i++ ) {
+            pushes.add(serverCommunicator.pushRequestAsync(request));
+        }
+        List<HttpExchange> exchanges = new ArrayList<>(PENDING_PUSHES);
+        while ( exchanges.size() < PENDING_PUSHES ) {
+            HttpExchange exchange = this.pendingPushes.poll(TIMEOUT, TimeUnit.SECONDS);
+            assertThat(exchange == null, is(false));
+            exchanges.add(exchange);
+        }
+        int additionalThreads = ManagementFactory.getThreadMXBean().getThreadCount() - threadsBefore;
+        LOG.info("{} pending pushes used {} additional threads", PENDING_PUSHES, additionalThreads);
+
+        for ( HttpExchange exchange : exchanges ) {
+            answer(exchange);
+        }
+        for ( CompletableFuture<JSONObject> push : pushes ) {
+            assertThat(push.get(TIMEOUT, TimeUnit.SECONDS).getString(IConnector.KEY_CMD), is(IConnector.CMD_REPEAT));
+        }
+        assertThat(additionalThreads, lessThan(PENDING_PUSHES / 10));
+    }
+
+    @Test
+    void pushRequestAsync_ShouldFailWithIOException_WhenServerReturnsError() throws InterruptedException, TimeoutException {
+        ServerCommunicator serverCommunicator = new ServerCommunicator("localhost:" + this.server.getAddress().getPort() + "/unknown");
+        JSONObject request = new JSONObject().put(IConnector.KEY_TOKEN, "TEST").put(IConnector.KEY_CMD, IConnector.CMD_PUSH);
+
+        try {
+            serverCommunicator.pushRequestAsync(request).get(TIMEOUT, TimeUnit.SECONDS);
+        } catch ( ExecutionException e ) {
+            assertThat(e.getCause(), instanceOf(IOException.class));
+            return;
+        }
+        throw new AssertionError("Push request to unknown path should fail");
+    }
+
+    private static void answer(HttpExchange exchange) throws IOException {
+        byte[] response = new JSONObject().put(IConnector.KEY_CMD, IConnector.CMD_REPEAT).toString().getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, response.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(response);
+        }
+    }
+
+    @Test
+    void reserveConnections_ShouldGrowPool_WhenMoreConnectorsRun() {
+        int maxTotal = ServerConnectionPool.getMaxTotal();
+
+        ServerCommunicator.reserveConnections(1);
+        assertThat(ServerConnectionPool.getMaxTotal(), is(maxTotal));
+
+        ServerCommunicator.reserveConnections(maxTotal);
+        assertThat(ServerConnectionPool.getMaxTotal(), greaterThan(maxTotal));
+    }
+
+    @Test
+    void get_ShouldProbeAgain_WhenDecisionExpiredOrInvalidated() {
+        long[] now = { 0L };
+        ServerSchemeCache schemeCache = new ServerSchemeCache(1000L, () -> now[0]);
+
+        schemeCache.put("example.org:1999", ServerSchemeCache.HTTP);
+        assertThat(schemeCache.get("example.org:1999"), is(ServerSchemeCache.HTTP));
+        assertThat(schemeCache.get("example.org:443"), nullValue());
+
+        now[0] = 1001L;
+        assertThat(schemeCache.get("example.org:1999"), nullValue());
+
+        schemeCache.put("example.org:1999", ServerSchemeCache.HTTPS);
+        schemeCache.invalidate("example.org:1999");
+        assertThat(schemeCache.get("example.org:1999"), nullValue());
+    }
+
+    @Test
+    void putHttpAfterHttpsFailure_ShouldRememberHttp_WhenHttpsFailedOnConsecutiveProbes() {
+        ServerSchemeCache schemeCache = new ServerSchemeCache(1000L, () -> 0L);
+
+        schemeCache.putHttpAfterHttpsFailure("example.org");
+        assertThat(schemeCache.get("example.org"), nullValue());
+        schemeCache.put("example.org", ServerSchemeCache.HTTPS);
+        schemeCache.invalidate("example.org");
+
+        // the https probe in between worked, so the failures are not consecutive
+        schemeCache.putHttpAfterHttpsFailure("example.org");
+        assertThat(schemeCache.get("example.org"), nullValue());
+        schemeCache.putHttpAfterHttpsFailure("example.org");
+        assertThat(schemeCache.get("example.org"), is(ServerSchemeCache.HTTP));
+    }
+
+    @AfterEach
+    void tearDown() {
+        this.server.stop(0);
+    }
+}
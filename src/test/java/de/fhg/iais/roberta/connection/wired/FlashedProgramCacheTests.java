@@ -0,0 +1,137 @@
+package de.fhg.iais.roberta.connection.wired;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import de.fhg.iais.roberta.connection.wired.arduino.Arduino;
+import de.fhg.iais.roberta.util.Metrics;
+import de.fhg.iais.roberta.util.Pair;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+class FlashedProgramCacheTests {
+    private static final String SERIAL_NUMBER = "95530343834351A0B1C1";
+    private static final Pair<Integer, String> SUCCESS = new Pair<>(0, "");
+    private static final Pair<Integer, String> FAILURE = new Pair<>(1, "Something went wrong while uploading the file.");
+
+    @TempDir
+    Path tempDir;
+
+    private final Arduino robot = new Arduino(WiredRobotType.UNO, "ttyFlashedProgramCacheTests");
+
+    private Path program = null;
+    private int restarts = 0;
+    private int flashes = 0;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        this.program = Files.write(this.tempDir.resolve("program.hex"), "abc".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @AfterEach
+    void tearDown() {
+        FlashedProgramCache.invalidate(this.robot);
+    }
+
+    @Test
+    void hash_ShouldReturnSha256OfFile() throws IOException {
+        assertThat(FlashedProgramCache.hash(this.program), is("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad"));
+    }
+
+    @Test
+    void flashUnlessIdentical_ShouldFlash_WhenProgramIsNew() throws IOException {
+        long misses = Metrics.get("identicalUpload.miss");
+
+        assertThat(this.upload(SERIAL_NUMBER, true, SUCCESS), is(SUCCESS));
+
+        assertThat(this.flashes, is(1));
+        assertThat(this.restarts, is(0));
+        assertThat(Metrics.get("identicalUpload.miss"), is(misses + 1));
+    }
+
+    @Test
+    void flashUnlessIdentical_ShouldOnlyRestart_WhenProgramWasFlashedBefore() throws IOException {
+        this.upload(SERIAL_NUMBER, true, SUCCESS);
+        long hits = Metrics.get("identicalUpload.hit");
+
+        assertThat(this.upload(SERIAL_NUMBER, true, SUCCESS), is(SUCCESS));
+
+        assertThat(this.flashes, is(1));
+        assertThat(this.restarts, is(1));
+        assertThat(Metrics.get("identicalUpload.hit"), is(hits + 1));
+    }
+
+    @Test
+    void flashUnlessIdentical_ShouldFlash_WhenRestartFails() throws IOException {
+        this.upload(SERIAL_NUMBER, true, SUCCESS);
+        long hits = Metrics.get("identicalUpload.hit");
+
+        assertThat(this.upload(SERIAL_NUMBER, false, SUCCESS), is(SUCCESS));
+
+        assertThat(this.flashes, is(2));
+        assertThat(this.restarts, is(1));
+        assertThat(Metrics.get("identicalUpload.hit"), is(hits));
+        assertThat(FlashedProgramCache.isFlashed(this.robot, SERIAL_NUMBER, FlashedProgramCache.hash(this.program)), is(true));
+    }
+
+    @Test
+    void flashUnlessIdentical_ShouldFlash_WhenAnotherBoardIsAtThePort() throws IOException {
+        this.upload(SERIAL_NUMBER, true, SUCCESS);
+
+        this.upload("75834353930351F0E1D0", true, SUCCESS);
+
+        assertThat(this.flashes, is(2));
+        assertThat(this.restarts, is(0));
+    }
+
+    @Test
+    void flashUnlessIdentical_ShouldFlash_WhenProgramChanged() throws IOException {
+        this.upload(SERIAL_NUMBER, true, SUCCESS);
+        Files.write(this.program, "abd".getBytes(StandardCharsets.UTF_8));
+
+        this.upload(SERIAL_NUMBER, true, SUCCESS);
+
+        assertThat(this.flashes, is(2));
+        assertThat(this.restarts, is(0));
+    }
+
+    @Test
+    void flashUnlessIdentical_ShouldFlashAgain_WhenFlashingFailed() throws IOException {
+        this.upload(SERIAL_NUMBER, true, SUCCESS);
+
+        assertThat(this.upload(FlashedProgramCache.UNKNOWN_SERIAL_NUMBER, true, FAILURE), is(FAILURE));
+        this.upload(FlashedProgramCache.UNKNOWN_SERIAL_NUMBER, true, SUCCESS);
+
+        assertThat(this.flashes, is(3));
+        assertThat(this.restarts, is(0));
+    }
+
+    @Test
+    void flashUnlessIdentical_ShouldFlash_WhenRobotWasUnplugged() throws IOException {
+        this.upload(FlashedProgramCache.UNKNOWN_SERIAL_NUMBER, true, SUCCESS);
+
+        FlashedProgramCache.invalidate(this.robot);
+        this.upload(FlashedProgramCache.UNKNOWN_SERIAL_NUMBER, true, SUCCESS);
+
+        assertThat(this.flashes, is(2));
+        assertThat(this.restarts, is(0));
+    }
+
+    private Pair<Integer, String> upload(String serialNumber, boolean restartSucceeds, Pair<Integer, String> flashResult) throws IOException {
+        return FlashedProgramCache.flashUnlessIdentical(this.robot, serialNumber, this.program, () -> {
+            this.restarts++;
+            return restartSucceeds;
+        }, () -> {
+            this.flashes++;
+            return flashResult;
+        });
+    }
+}
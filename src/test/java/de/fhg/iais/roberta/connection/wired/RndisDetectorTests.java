@@ -0,0 +1,135 @@
+package de.fhg.iais.roberta.connection.wired;
+
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import de.fhg.iais.roberta.connection.IRobot;
+import de.fhg.iais.roberta.connection.wired.ev3.Ev3;
+import de.fhg.iais.roberta.util.Metrics;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+class RndisDetectorTests {
+    private static final Logger LOG = LoggerFactory.getLogger(RndisDetectorTests.class);
+
+    private static final long BRICK_DELAY = 200L;
+    private static final long SILENT_BRICK_DELAY = 2000L;
+    private static final long TIMEOUT = 5000L;
+
+    private HttpServer server = null;
+    private ExecutorService serverExecutor = null;
+    private String serverAddress = null;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        this.serverExecutor = Executors.newCachedThreadPool();
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.setExecutor(this.serverExecutor);
+        this.createBrick("ev3a", BRICK_DELAY);
+        this.createBrick("ev3b", BRICK_DELAY);
+        this.createBrick("ev3c", BRICK_DELAY);
+        this.createBrick("silent", SILENT_BRICK_DELAY);
+        this.server.start();
+        this.serverAddress = "localhost:" + this.server.getAddress().getPort();
+
+        // the first probe also starts the shared client, which takes longer than the deadlines in the tests
+        new RndisDetector(Collections.singletonMap(this.serverAddress + "/ev3a", Ev3.class), TIMEOUT).detectRobots();
+    }
+
+    @Test
+    void detectRobots_ShouldTakeAsLongAsSlowestProbe_WhenProbingCandidatesInParallel() {
+        Map<String, Class<? extends AbstractWiredRobot>> candidates = new LinkedHashMap<>(3);
+        candidates.put(this.serverAddress + "/ev3a", Ev3.class);
+        candidates.put(this.serverAddress + "/ev3b", Ev3.class);
+        candidates.put(this.serverAddress + "/ev3c", Ev3.class);
+        RndisDetector detector = new RndisDetector(candidates, TIMEOUT);
+
+        long probesBefore = Metrics.get("rndis.probe.count");
+        long probeNanosBefore = Metrics.get("rndis.probe.nanos");
+        long start = System.nanoTime();
+        List<IRobot> robots = detector.detectRobots();
+        long cycleTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        long probes = Metrics.get("rndis.probe.count") - probesBefore;
+        LOG.info("Probed {} candidates in {} ms, {} ms per probe, mean latency {} ms",
+            candidates.size(),
+            cycleTime,
+            BRICK_DELAY,
+            TimeUnit.NANOSECONDS.toMillis((Metrics.get("rndis.probe.nanos") - probeNanosBefore) / Math.max(1L, probes)));
+
+        assertThat(robots.size(), is(3));
+        assertThat(((Ev3) robots.get(0)).getPort(), is("ev3a"));
+        assertThat(cycleTime, lessThan(candidates.size() * BRICK_DELAY));
+        assertThat(probes, greaterThanOrEqualTo(3L));
+    }
+
+    @Test
+    void detectRobots_ShouldReturnAtDeadline_WhenCandidateDoesNotAnswer() {
+        Map<String, Class<? extends AbstractWiredRobot>> candidates = new LinkedHashMap<>(2);
+        candidates.put(this.serverAddress + "/silent", Ev3.class);
+        candidates.put(this.serverAddress + "/ev3a", Ev3.class);
+        long probeTimeout = BRICK_DELAY * 2L;
+        RndisDetector detector = new RndisDetector(candidates, probeTimeout);
+
+        long start = System.nanoTime();
+        List<IRobot> robots = detector.detectRobots();
+        long cycleTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertThat(robots.size(), is(1));
+        assertThat(cycleTime, lessThan(SILENT_BRICK_DELAY));
+    }
+
+    @Test
+    void detectRobots_ShouldReturnNothing_WhenNoBrickIsConnected() {
+        Map<String, Class<? extends AbstractWiredRobot>> candidates = new LinkedHashMap<>(1);
+        candidates.put(this.serverAddress + "/missing", Ev3.class);
+        RndisDetector detector = new RndisDetector(candidates, TIMEOUT);
+
+        long failedBefore = Metrics.get("rndis.probe.failed");
+        assertThat(detector.detectRobots(), empty());
+        assertThat(Metrics.get("rndis.probe.failed") - failedBefore, is(1L));
+    }
+
+    @AfterEach
+    void tearDown() {
+        this.server.stop(0);
+        this.serverExecutor.shutdownNow();
+    }
+
+    private void createBrick(String name, long delay) {
+        this.server.createContext("/" + name + "/brickinfo", exchange -> {
+            exchange.getRequestBody().close();
+            try {
+                Thread.sleep(delay);
+            } catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] response = new JSONObject().put("brickname", name).toString().getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(response);
+            }
+        });
+    }
+}
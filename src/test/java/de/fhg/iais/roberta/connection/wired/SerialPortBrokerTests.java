@@ -0,0 +1,209 @@
+package de.fhg.iais.roberta.connection.wired;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.fazecast.jSerialComm.SerialPort;
+
+import de.fhg.iais.roberta.connection.wired.SerialPortBroker.Lease;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+class SerialPortBrokerTests {
+    private static final String PORT = "ttyACM0";
+    private static final long TIMEOUT = 1000L;
+
+    private final AtomicInteger opened = new AtomicInteger();
+    private final List<String> disconnected = new ArrayList<>(1);
+    private SerialPortBroker broker = null;
+
+    @BeforeEach
+    void setUp() {
+        // handles that are never really opened
+        this.broker = new SerialPortBroker(portName -> {
+            this.opened.incrementAndGet();
+            return SerialPort.getCommPort("/dev/null");
+        });
+        this.broker.registerListener(this.disconnected::add);
+    }
+
+    @Test
+    void acquire_ShouldKeepPortOpen_WhenLeasesAreReleased() throws InterruptedException {
+        SerialPort uploadPort;
+        try ( Lease lease = this.broker.acquireExclusive(PORT, 115200, TIMEOUT) ) {
+            uploadPort = lease.getPort();
+        }
+        try ( Lease lease = this.broker.acquireShared(PORT, 9600, TIMEOUT) ) {
+            assertThat(lease.getPort(), sameInstance(uploadPort));
+            assertThat(lease.getPort().getBaudRate(), is(9600));
+        }
+
+        assertThat(this.opened.get(), is(1));
+    }
+
+    @Test
+    void acquireExclusive_ShouldTakeOverPort_WhenReaderHandsItOver() throws Exception {
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        CountDownLatch leased = new CountDownLatch(1);
+        CountDownLatch contended = new CountDownLatch(1);
+        try {
+            // a reader that hands the port over as soon as an upload waits for it
+            Future<?> reader = executorService.submit(() -> {
+                try ( Lease lease = this.broker.acquireShared(PORT, 9600, TIMEOUT) ) {
+                    leased.countDown();
+                    while ( !lease.isContended() ) {
+                        Thread.sleep(1);
+                    }
+                    contended.countDown();
+                }
+                return null;
+            });
+            assertThat(leased.await(TIMEOUT, TimeUnit.MILLISECONDS), is(true));
+
+            try ( Lease lease = this.broker.acquireExclusive(PORT, 115200, TIMEOUT) ) {
+                assertThat(lease, notNullValue());
+                assertThat(contended.getCount(), is(0L));
+                assertThat(lease.isContended(), is(false));
+            }
+            reader.get(TIMEOUT, TimeUnit.MILLISECONDS);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    void acquireExclusive_ShouldReturnNull_WhenPortIsNotHandedOver() throws Exception {
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        CountDownLatch leased = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            Future<Boolean> reader = executorService.submit(() -> {
+                try ( Lease lease = this.broker.acquireShared(PORT, 9600, TIMEOUT) ) {
+                    leased.countDown();
+                    release.await();
+                    return lease.isContended();
+                }
+            });
+            assertThat(leased.await(TIMEOUT, TimeUnit.MILLISECONDS), is(true));
+
+            assertThat(this.broker.acquireExclusive(PORT, 115200, 10L), nullValue());
+            // other readers are not blocked by the failed attempt
+            try ( Lease lease = this.broker.acquireShared(PORT, 9600, 10L) ) {
+                assertThat(lease, notNullValue());
+            }
+            release.countDown();
+            // nobody waits for the port any more
+            assertThat(reader.get(TIMEOUT, TimeUnit.MILLISECONDS), is(false));
+        } finally {
+            release.countDown();
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    void disconnected_ShouldClosePortAndNotify_WhenDeviceIsUnplugged() throws InterruptedException {
+        try ( Lease lease = this.broker.acquireShared(PORT, 9600, TIMEOUT) ) {
+            SerialPort port = lease.getPort();
+            this.broker.disconnected(PORT, SerialPort.getCommPort("/dev/null")); // a stale handle
+            assertThat(this.disconnected, empty());
+
+            this.broker.disconnected(PORT, port);
+            assertThat(this.disconnected, contains(PORT));
+            assertThat(lease.getPort(), nullValue());
+        }
+        try ( Lease lease = this.broker.acquireShared(PORT, 9600, TIMEOUT) ) {
+            assertThat(lease.getPort(), notNullValue());
+        }
+
+        assertThat(this.opened.get(), is(2));
+    }
+
+    @Test
+    void closePort_ShouldWaitForHandover_WhenReaderHoldsLease() throws Exception {
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        CountDownLatch leased = new CountDownLatch(1);
+        try {
+            // the port must stay open while the reader holds its lease
+            Future<Boolean> reader = executorService.submit(() -> {
+                try ( Lease lease = this.broker.acquireShared(PORT, 9600, TIMEOUT) ) {
+                    leased.countDown();
+                    while ( !lease.isContended() ) {
+                        Thread.sleep(1);
+                    }
+                    return lease.getPort() != null;
+                }
+            });
+            assertThat(leased.await(TIMEOUT, TimeUnit.MILLISECONDS), is(true));
+
+            this.broker.closePort(PORT);
+
+            assertThat(reader.get(TIMEOUT, TimeUnit.MILLISECONDS), is(true));
+            assertThat(this.broker.isKnown(PORT), is(false));
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    void acquire_ShouldForgetPort_WhenHandleIsClosedAndNobodyWaits() throws InterruptedException {
+        try ( Lease lease = this.broker.acquireShared(PORT, 9600, TIMEOUT) ) {
+            assertThat(this.broker.isKnown(PORT), is(true));
+        }
+        // the open handle is kept
+        assertThat(this.broker.isKnown(PORT), is(true));
+
+        try ( Lease lease = this.broker.acquireClosed(PORT, TIMEOUT) ) {
+            assertThat(this.broker.isKnown(PORT), is(true));
+        }
+        assertThat(this.broker.isKnown(PORT), is(false));
+
+        this.broker.closePort("ttyUSB0");
+        assertThat(this.broker.isKnown("ttyUSB0"), is(false));
+    }
+
+    @Test
+    void disconnected_ShouldForgetPort_WhenNobodyHoldsLease() throws InterruptedException {
+        SerialPort port;
+        try ( Lease lease = this.broker.acquireShared(PORT, 9600, TIMEOUT) ) {
+            port = lease.getPort();
+        }
+
+        this.broker.disconnected(PORT, port);
+
+        assertThat(this.disconnected, contains(PORT));
+        assertThat(this.broker.isKnown(PORT), is(false));
+    }
+
+    @Test
+    void acquireClosed_ShouldCloseHandle_UntilNextLease() throws InterruptedException {
+        SerialPort port;
+        try ( Lease lease = this.broker.acquireShared(PORT, 9600, TIMEOUT) ) {
+            port = lease.getPort();
+        }
+        try ( Lease lease = this.broker.acquireClosed(PORT, TIMEOUT) ) {
+            assertThat(lease.getPort(), nullValue());
+        }
+        try ( Lease lease = this.broker.acquireShared(PORT, 9600, TIMEOUT) ) {
+            assertThat(lease.getPort(), not(sameInstance(port)));
+        }
+
+        assertThat(this.opened.get(), is(2));
+        assertThat(this.disconnected, empty());
+    }
+}
@@ -0,0 +1,157 @@
+package de.fhg.iais.roberta.connection.wired;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import de.fhg.iais.roberta.util.SerialDevice;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+
+class UsbDeviceMonitorTests {
+    private static final Logger LOG = LoggerFactory.getLogger(UsbDeviceMonitorTests.class);
+
+    @TempDir
+    Path tempDir;
+
+    private Path sysfs = null;
+    private Path dev = null;
+    private UsbDeviceMonitor monitor = null;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        this.sysfs = Files.createDirectories(this.tempDir.resolve("sys/bus/usb/devices"));
+        this.dev = Files.createDirectories(this.tempDir.resolve("dev"));
+    }
+
+    @Test
+    void scan_ShouldReturnDevicesWithTty_WhenTreeContainsUsbDevices() throws IOException {
+        this.plugIn("1-1", "2341", "0043", "ttyACM0", false);
+        this.plugIn("1-2", "0d28", "0204", "ttyACM1", true);
+        // hub without tty
+        Files.createDirectories(this.sysfs.resolve("usb1"));
+        Files.write(this.sysfs.resolve("usb1/idVendor"), Collections.singletonList("1d6b"));
+        Files.write(this.sysfs.resolve("usb1/idProduct"), Collections.singletonList("0002"));
+
+        List<SerialDevice> devices = UsbDeviceMonitor.scan(this.sysfs);
+
+        assertThat(devices, contains(new SerialDevice("2341", "0043", "", ""), new SerialDevice("0d28", "0204", "", "")));
+        assertThat(devices.get(0).port, is("ttyACM0"));
+        assertThat(devices.get(1).port, is("ttyACM1"));
+    }
+
+    @Test
+    void getDevices_ShouldContainDevice_WhenTtyNodeIsCreated() throws IOException, InterruptedException {
+        this.monitor = new UsbDeviceMonitor(this.sysfs, this.dev, false);
+        this.monitor.start();
+        assertThat(this.monitor.isWatching(), is(true));
+        assertThat(this.monitor.getDevices(), empty());
+
+        this.assertDetected();
+    }
+
+    @Test
+    void getDevices_ShouldContainDevice_WhenPolling() throws IOException, InterruptedException {
+        this.monitor = new UsbDeviceMonitor(this.sysfs, this.dev, true);
+        this.monitor.start();
+        assertThat(this.monitor.isWatching(), is(false));
+
+        this.assertDetected();
+    }
+
+    @Test
+    void start_ShouldKeepWatchingDev_WhenSysfsIsMissing() throws IOException {
+        unplug(this.sysfs);
+        this.monitor = new UsbDeviceMonitor(this.sysfs, this.dev, false);
+        this.monitor.start();
+
+        assertThat(this.monitor.isWatching(), is(true));
+        assertThat(this.monitor.getDevices(), empty());
+    }
+
+    @Test
+    void getDevices_ShouldNotContainDevice_WhenTtyNodeIsMissing() throws IOException, InterruptedException {
+        this.plugIn("1-1", "2341", "0043", "ttyACM0", false);
+        Files.createFile(this.dev.resolve("ttyACM0"));
+        this.monitor = new UsbDeviceMonitor(this.sysfs, this.dev, false);
+        this.monitor.start();
+        assertThat(this.monitor.getDevices().get(0).port, is("ttyACM0"));
+
+        // the node is removed before the sysfs entry of the unplugged device
+        CountDownLatch removed = new CountDownLatch(1);
+        this.monitor.registerListener(devices -> {
+            if ( devices.isEmpty() ) {
+                removed.countDown();
+            }
+        });
+        Files.delete(this.dev.resolve("ttyACM0"));
+        assertThat(removed.await(2L, TimeUnit.SECONDS), is(true));
+    }
+
+    private void assertDetected() throws IOException, InterruptedException {
+        CountDownLatch detected = new CountDownLatch(1);
+        this.monitor.registerListener(devices -> {
+            if ( !devices.isEmpty() ) {
+                detected.countDown();
+            }
+        });
+
+        long start = System.nanoTime();
+        this.plugIn("1-1", "2341", "0043", "ttyACM0", false);
+        Files.createFile(this.dev.resolve("ttyACM0"));
+        assertThat(detected.await(2L, TimeUnit.SECONDS), is(true));
+        LOG.info("Device detected after {} ms, watching: {}", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), this.monitor.isWatching());
+        assertThat(this.monitor.getDevices().get(0).port, is("ttyACM0"));
+
+        CountDownLatch removed = new CountDownLatch(1);
+        this.monitor.registerListener(devices -> {
+            if ( devices.isEmpty() ) {
+                removed.countDown();
+            }
+        });
+        Files.delete(this.dev.resolve("ttyACM0"));
+        unplug(this.sysfs.resolve("1-1"));
+        assertThat(removed.await(2L, TimeUnit.SECONDS), is(true));
+    }
+
+    // creates the sysfs entries of a device, the tty is either named directly or nested in a directory called tty
+    private void plugIn(String name, String idVendor, String idProduct, String tty, boolean nested) throws IOException {
+        Path deviceDir = Files.createDirectories(this.sysfs.resolve(name));
+        Files.write(deviceDir.resolve("idVendor"), Collections.singletonList(idVendor));
+        Files.write(deviceDir.resolve("idProduct"), Collections.singletonList(idProduct));
+        Path interfaceDir = deviceDir.resolve(name + ":1.0");
+        if ( nested ) {
+            Files.createDirectories(interfaceDir.resolve("tty").resolve(tty));
+        } else {
+            Files.createDirectories(interfaceDir.resolve(tty));
+        }
+    }
+
+    private static void unplug(Path deviceDir) throws IOException {
+        try (Stream<Path> paths = Files.walk(deviceDir)) {
+            paths.sorted((first, second) -> second.compareTo(first)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        if ( this.monitor != null ) {
+            this.monitor.close();
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package de.fhg.iais.roberta.connection.wired.mBot2;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Emulates the upload protocol of an mBot2 behind a serial line, without threads.
+ * Written frames arrive after their time on the line and the USB latency. The robot processes one frame at a time and buffers a limited number
+ * of frames, frames arriving at a full buffer are rejected. Responses can be read once they would have arrived. The uploaded file is kept for
+ * comparison with the program.
+ */
+final class Mbot2Emulator implements Mbot2Transport {
+    static final long READ_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(100);
+    static final long CHATTER_INTERVAL = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final byte[] MODE_RESPONSE = { (byte) 0xF3, (byte) 0xF6, 0x03, 0x00, 0x0D, 0x00, 0x00, 0x0D, (byte) 0xF4 };
+    private static final byte[] ACK = { (byte) 0xF3, (byte) 0xFA, 0x07, 0x00, 0x01, 0x00, 0x5E, (byte) 0xF0, 0x01, 0x00, 0x00, 0x50, (byte) 0xF4 };
+    private static final byte[] NAK = { (byte) 0xF3, (byte) 0xFA, 0x07, 0x00, 0x01, 0x00, 0x5E, (byte) 0xF0, 0x01, 0x00, 0x01, 0x51, (byte) 0xF4 };
+
+    private final long byteNanos;
+    private final long latencyNanos;
+    private final long processingNanos;
+    private final int bufferedFrames;
+
+    private final ByteBuffer input = ByteBuffer.allocate(4096).order(ByteOrder.LITTLE_ENDIAN);
+    private final Deque<Long> processing = new ArrayDeque<>(); // the times buffered frames are processed
+    private final Deque<Response> responses = new ArrayDeque<>();
+    private final Set<Integer> rejectOnce = new HashSet<>();
+    private final Set<Integer> dropAckOnce = new HashSet<>();
+    private int rejectAlways = -1;
+    private byte[] chatter = null;
+
+    private long receiveFreeAt = 0L;
+    private long robotFreeAt = 0L;
+    private long sendFreeAt = 0L;
+    private int dataFrames = 0;
+    private int rejected = 0;
+    private boolean uploadMode = false;
+    private byte[] file = null;
+
+    /**
+     * Creates an emulator.
+     *
+     * @param baudRate the baud rate of the serial line
+     * @param latency the one way latency of USB in microseconds
+     * @param processing the time the robot needs for a frame in microseconds
+     * @param bufferedFrames the number of frames the robot buffers while processing
+     */
+    Mbot2Emulator(int baudRate, long latency, long processing, int bufferedFrames) {
+        this.byteNanos = TimeUnit.SECONDS.toNanos(10) / baudRate; // start, eight data and a stop bit
+        this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latency);
+        this.processingNanos = TimeUnit.MICROSECONDS.toNanos(processing);
+        this.bufferedFrames = bufferedFrames;
+    }
+
+    /**
+     * Rejects the data frame with the index once.
+     *
+     * @param index the index of the data frame, counted from 0 in order of arrival
+     */
+    void rejectOnce(int index) {
+        this.rejectOnce.add(index);
+    }
+
+    /**
+     * Receives the data frame with the index once, but its acknowledgement gets lost.
+     *
+     * @param index the index of the data frame, counted from 0 in order of arrival
+     */
+    void dropAckOnce(int index) {
+        this.dropAckOnce.add(index);
+    }
+
+    /**
+     * Rejects every data frame from the index on.
+     *
+     * @param index the index of the data frame, counted from 0 in order of arrival
+     */
+    void rejectAlways(int index) {
+        this.rejectAlways = index;
+    }
+
+    /**
+     * Lets the robot print the output without pause, e.g. a program that keeps running during the upload.
+     *
+     * @param output the output printed every {@link #CHATTER_INTERVAL}
+     */
+    void chatter(byte[] output) {
+        this.chatter = output;
+    }
+
+    byte[] getFile() {
+        return this.file;
+    }
+
+    int getRejected() {
+        return this.rejected;
+    }
+
+    @Override
+    public int write(byte[] data, int length) {
+        long now = System.nanoTime();
+        this.input.put(data, 0, length);
+        // Buffer methods, as ByteBuffer only overrides them since Java 9
+        Buffer view = this.input;
+        view.flip();
+        while ( this.input.remaining() >= 4 ) {
+            int start = this.input.position();
+            int frameSize = 4 + (this.input.getShort(start + 2) & 0xFFFF) + 2;
+            if ( this.input.remaining() < frameSize ) {
+                break;
+            }
+            this.receiveFreeAt = Math.max(now + this.latencyNanos, this.receiveFreeAt) + (frameSize * this.byteNanos);
+            this.receive(start, frameSize, this.receiveFreeAt);
+            view.position(start + frameSize);
+        }
+        this.input.compact();
+        return length;
+    }
+
+    @Override
+    public int read(byte[] buffer, int length) {
+        long deadline = System.nanoTime() + READ_TIMEOUT;
+        while ( true ) {
+            long now = System.nanoTime();
+            Response next = this.responses.peek();
+            if ( (next != null) && (next.availableAt <= now) ) {
+                int count = 0;
+                while ( (next != null) && (next.availableAt <= now) && ((count + next.bytes.length) <= length) ) {
+                    System.arraycopy(next.bytes, 0, buffer, count, next.bytes.length);
+                    count += next.bytes.length;
+                    this.responses.poll();
+                    next = this.responses.peek();
+                }
+                return count;
+            }
+            if ( this.chatter != null ) {
+                LockSupport.parkNanos(CHATTER_INTERVAL);
+                int count = Math.min(length, this.chatter.length);
+                System.arraycopy(this.chatter, 0, buffer, 0, count);
+                return count;
+            }
+            if ( now >= deadline ) {
+                return 0;
+            }
+            LockSupport.parkNanos(Math.min(deadline, (next == null) ? deadline : next.availableAt) - now);
+        }
+    }
+
+    private void receive(int start, int frameSize, long arrival) {
+        while ( !this.processing.isEmpty() && (this.processing.peek() <= arrival) ) {
+            this.processing.poll();
+        }
+        if ( this.input.get(start + 4) == 0x0D ) {
+            this.uploadMode = true;
+            this.respond(MODE_RESPONSE, arrival + this.processingNanos);
+            return;
+        }
+        boolean valid = this.uploadMode && (this.input.get(start) == (byte) 0xF3) && (this.input.get((start + frameSize) - 1) == (byte) 0xF4);
+        byte checksum = 0x00;
+        for ( int i = start + 4; i < ((start + frameSize) - 2); i++ ) {
+            checksum += this.input.get(i);
+        }
+        valid &= checksum == this.input.get((start + frameSize) - 2);
+        byte instruction = this.input.get(start + 7);
+        boolean dropAck = false;
+        if ( instruction == 0x02 ) {
+            int index = this.dataFrames++;
+            valid &= !this.rejectOnce.remove(index) && ((this.rejectAlways < 0) || (index < this.rejectAlways));
+            dropAck = this.dropAckOnce.remove(index);
+        }
+        if ( !valid || (this.processing.size() >= this.bufferedFrames) ) {
+            this.rejected++;
+            this.respond(NAK, arrival);
+            return;
+        }
+        this.robotFreeAt = Math.max(arrival, this.robotFreeAt) + this.processingNanos;
+        this.processing.add(this.robotFreeAt);
+        int data = start + 10;
+        if ( instruction == 0x01 ) {
+            this.file = new byte[this.input.getInt(data + 1)];
+        } else {
+            int offset = this.input.getInt(data);
+            int dataSize = (this.input.getShort(start + 8) & 0xFFFF) - 4;
+            for ( int i = 0; i < dataSize; i++ ) {
+                this.file[offset + i] = this.input.get(data + 4 + i);
+            }
+        }
+        if ( !dropAck ) {
+            this.respond(ACK, this.robotFreeAt);
+        }
+    }
+
+    private void respond(byte[] response, long sent) {
+        this.sendFreeAt = Math.max(sent, this.sendFreeAt) + (response.length * this.byteNanos);
+        this.responses.add(new Response(this.sendFreeAt + this.latencyNanos, response));
+    }
+
+    private static final class Response {
+        private final long availableAt;
+        private final byte[] bytes;
+
+        Response(long availableAt, byte[] bytes) {
+            this.availableAt = availableAt;
+            this.bytes = bytes;
+        }
+    }
+}
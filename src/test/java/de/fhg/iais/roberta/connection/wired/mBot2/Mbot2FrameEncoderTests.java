@@ -0,0 +1,262 @@
+package de.fhg.iais.roberta.connection.wired.mBot2;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+class Mbot2FrameEncoderTests {
+    private static final Logger LOG = LoggerFactory.getLogger(Mbot2FrameEncoderTests.class);
+
+    private static final String FILE_NAME = "/flash/main.py";
+    private static final int PROGRAM_SIZE = 100 * 1024;
+    private static final int WARMUP = 5;
+    private static final int ITERATIONS = 20;
+    private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+
+    @Test
+    void encode_ShouldProduceLegacyFrames_WhenGivenProgramsOfAnySize() {
+        Random random = new Random(42);
+        for ( int size : new int[] { 0, 1, 3, 4, 5, 63, 64, 65, 128, 1000, PROGRAM_SIZE } ) {
+            byte[] program = new byte[size];
+            random.nextBytes(program);
+
+            List<byte[]> expected = new LegacyEncoder(program).generatePayloads();
+            Mbot2FrameEncoder encoder = new Mbot2FrameEncoder(ByteBuffer.wrap(program), FILE_NAME, Mbot2FrameEncoder.DEFAULT_CHUNK_SIZE);
+
+            assertThat(encoder.getFrameCount(), is(expected.size()));
+            for ( int i = 0; i < expected.size(); i++ ) {
+                ByteBuffer frame = encoder.encode(i);
+                assertThat("frame " + i + " of " + size, Arrays.copyOf(frame.array(), frame.remaining()), is(expected.get(i)));
+            }
+        }
+    }
+
+    @Test
+    void encode_ShouldAllocateLessAndBeFaster_ThanLegacyEncoder() {
+        byte[] program = new byte[PROGRAM_SIZE];
+        new Random(42).nextBytes(program);
+
+        long[] legacy = measure(() -> {
+            long sum = 0;
+            for ( byte[] frame : new LegacyEncoder(program).generatePayloads() ) {
+                sum += frame.length;
+            }
+            return sum;
+        });
+        long[] encoder = measure(() -> {
+            long sum = 0;
+            Mbot2FrameEncoder frames = new Mbot2FrameEncoder(ByteBuffer.wrap(program), FILE_NAME, Mbot2FrameEncoder.DEFAULT_CHUNK_SIZE);
+            for ( int i = 0; i < frames.getFrameCount(); i++ ) {
+                sum += frames.encode(i).remaining();
+            }
+            return sum;
+        });
+        LOG.info("Encoding {} KB per upload: legacy {} us and {} KB allocated, encoder {} us and {} KB allocated",
+            PROGRAM_SIZE / 1024,
+            TimeUnit.NANOSECONDS.toMicros(legacy[0]),
+            legacy[1] / 1024,
+            TimeUnit.NANOSECONDS.toMicros(encoder[0]),
+            encoder[1] / 1024);
+
+        assertThat(encoder[1], lessThan(legacy[1] / 100));
+        assertThat(encoder[0], lessThan(legacy[0]));
+    }
+
+    // returns the mean time in nanoseconds and the mean allocated bytes of an upload
+    private static long[] measure(Upload upload) {
+        long frameBytes = 0;
+        for ( int i = 0; i < WARMUP; i++ ) {
+            frameBytes += upload.encode();
+        }
+        long allocated = getAllocatedBytes();
+        long start = System.nanoTime();
+        for ( int i = 0; i < ITERATIONS; i++ ) {
+            frameBytes += upload.encode();
+        }
+        long time = (System.nanoTime() - start) / ITERATIONS;
+        allocated = (getAllocatedBytes() - allocated) / ITERATIONS;
+        assertThat(frameBytes, greaterThan(0L));
+        return new long[] { time, allocated };
+    }
+
+    private static long getAllocatedBytes() {
+        if ( THREAD_MX_BEAN instanceof com.sun.management.ThreadMXBean ) {
+            return ((com.sun.management.ThreadMXBean) THREAD_MX_BEAN).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0L;
+    }
+
+    private interface Upload {
+        long encode();
+    }
+
+    /**
+     * The encoder Mbot2Communicator used before, kept as the reference for the frames.
+     */
+    private static class LegacyEncoder {
+        private final List<byte[]> payloads = new ArrayList<>();
+        private final List<Byte> fileContent = new ArrayList<>();
+
+        LegacyEncoder(byte[] program) {
+            for ( byte value : program ) {
+                this.fileContent.add(value);
+            }
+        }
+
+        List<byte[]> generatePayloads() {
+            this.generatePayloadList();
+            return this.payloads;
+        }
+
+        private void generatePayloadList() {
+            List<Byte> dataFrame = new ArrayList<>();
+            List<Byte> uploadFrame = new ArrayList<>();
+            List<List<Byte>> fileDataFrame = new ArrayList<>();
+            byte[] modeUpload = new byte[] {(byte) 0xF3, (byte) 0xF6, 0x03, 0x00, 0x0D, 0x00, 0x00, 0x0D, (byte) 0xF4};
+            byte frameHeader = (byte) 0xF3;
+            byte frameFooter = (byte) 0xF4;
+            byte protocolId = 0x01;
+            byte deviceId = 0x00;
+            byte serviceId = 0x5E;
+            byte len1;
+            byte len2;
+            byte headerChecksum;
+            byte fileDataChecksum;
+            int frameSize;
+
+            payloads.clear();
+            payloads.add(modeUpload);
+
+            fileDataFrame.add(generateHeader());
+            fileDataFrame.addAll(generateBody());
+
+            for ( List<Byte> frame : fileDataFrame ) {
+                uploadFrame.add(protocolId);
+                uploadFrame.add(deviceId);
+                uploadFrame.add(serviceId);
+                uploadFrame.addAll(frame);
+
+                frameSize = uploadFrame.size();
+                len1 = (byte) (frameSize % 256);
+                len2 = (byte) (frameSize / 256);
+                headerChecksum = (byte) (frameHeader + len1 + len2);
+                fileDataChecksum = calculateChecksum(uploadFrame);
+
+                dataFrame.add(frameHeader);
+                dataFrame.add(headerChecksum);
+                dataFrame.add(len1);
+                dataFrame.add(len2);
+                dataFrame.addAll(uploadFrame);
+                dataFrame.add(fileDataChecksum);
+                dataFrame.add(frameFooter);
+
+                payloads.add(convertArrayListToByteArray(dataFrame));
+
+                dataFrame.clear();
+                uploadFrame.clear();
+            }
+        }
+
+        private List<Byte> generateHeader() {
+            List<Byte> frame = new ArrayList<>();
+            List<Byte> data = new ArrayList<>();
+            String fileName = "/flash/main.py";
+            int fileSize = this.fileContent.size();
+            byte instructionId = 0x01;
+            byte fileType = 0x00;
+            byte[] sizeByte = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(fileSize).array();
+
+            data.add(fileType);
+            for ( byte value : sizeByte ) {
+                data.add(value);
+            }
+            data.addAll(xor32BitChecksum());
+            for ( byte value : fileName.getBytes() ) {
+                data.add(value);
+            }
+            frame.add(instructionId);
+            frame.add((byte) data.size());
+            frame.add((byte) 0x00);
+            frame.addAll(data);
+            return frame;
+        }
+
+        private List<List<Byte>> generateBody() {
+            List<List<Byte>> bodyArr = new ArrayList<>();
+            List<Byte> frame;
+            List<Byte> data;
+            byte[] sentDataArray;
+            int dataSizeToSend;
+            byte instructionID = 0x02;
+            int maxSize = 0x40;
+
+            for ( int sentData = 0x00; sentData < fileContent.size(); sentData += dataSizeToSend ) {
+                frame = new ArrayList<>();
+                data = new ArrayList<>();
+
+                dataSizeToSend = Math.min(maxSize, this.fileContent.size() - sentData);
+                sentDataArray = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(sentData).array();
+                for ( byte value : sentDataArray ) {
+                    data.add(value);
+                }
+                data.addAll(this.fileContent.subList(sentData, dataSizeToSend + sentData));
+                frame.add(instructionID);
+                frame.add((byte) data.size());
+                frame.add((byte) 0x00);
+                frame.addAll(data);
+                bodyArr.add(frame);
+            }
+            return bodyArr;
+        }
+
+        private List<Byte> xor32BitChecksum() {
+            int fileSize = fileContent.size();
+            byte[] checksum = new byte[] {0x00, 0x00, 0x00, 0x00};
+            byte padding = (byte) (fileSize % 4);
+            for ( int i = 0; i < fileSize / 4; i++ ) {
+                checksum[0] ^= fileContent.get(i * 4);
+                checksum[1] ^= fileContent.get(i * 4 + 1);
+                checksum[2] ^= fileContent.get(i * 4 + 2);
+                checksum[3] ^= fileContent.get(i * 4 + 3);
+            }
+            if ( padding != 0 ) {
+                for ( int i = 0; i < padding; i++ ) {
+                    checksum[i] ^= fileContent.get(4 * (fileSize / 4) + i);
+                }
+            }
+            return Arrays.asList(ArrayUtils.toObject(checksum));
+        }
+
+        private byte calculateChecksum(List<Byte> values) {
+            byte checksum = 0x00;
+            for ( int value : values ) {
+                checksum += value;
+            }
+            return checksum;
+        }
+
+        private byte[] convertArrayListToByteArray(List<Byte> arrayList) {
+            byte[] result = new byte[arrayList.size()];
+            for ( int i = 0; i < arrayList.size(); i++ ) {
+                result[i] = arrayList.get(i);
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package de.fhg.iais.roberta.connection.wired.mBot2;
+
+import org.apache.commons.codec.binary.Hex;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.nullValue;
+
+class Mbot2ResponseParserTests {
+    private static final Logger LOG = LoggerFactory.getLogger(Mbot2ResponseParserTests.class);
+
+    private static final byte[] ACK = bytes(0xF3, 0xFA, 0x07, 0x00, 0x01, 0x00, 0x5E, 0xF0, 0x01, 0x00, 0x00, 0x50, 0xF4);
+    private static final byte[] NAK = bytes(0xF3, 0xFA, 0x07, 0x00, 0x01, 0x00, 0x5E, 0xF0, 0x01, 0x00, 0x01, 0x51, 0xF4);
+    private static final byte[] MODE = bytes(0xF3, 0xF6, 0x03, 0x00, 0x0D, 0x00, 0x00, 0x0D, 0xF4);
+    private static final int ITERATIONS = 100000;
+
+    @Test
+    void poll_ShouldReturnAck_WhenFrameArrivesByteByByte() {
+        Mbot2ResponseParser parser = new Mbot2ResponseParser();
+        for ( int i = 0; i < (ACK.length - 1); i++ ) {
+            parser.feed(ACK, i, 1);
+            assertThat(parser.poll(), is(nullValue()));
+        }
+        parser.feed(ACK, ACK.length - 1, 1);
+
+        assertThat(parser.poll(), is(Mbot2ResponseParser.Response.ACK));
+        assertThat(parser.poll(), is(nullValue()));
+    }
+
+    @Test
+    void poll_ShouldReturnEachResponse_WhenSeveralArriveInOneRead() {
+        Mbot2ResponseParser parser = new Mbot2ResponseParser();
+        byte[] data = concat(MODE, ACK, NAK, ACK);
+        parser.feed(data, 0, data.length);
+
+        assertThat(parser.poll(), is(Mbot2ResponseParser.Response.ACK));
+        assertThat(parser.poll(), is(Mbot2ResponseParser.Response.ACK));
+        assertThat(parser.poll(), is(Mbot2ResponseParser.Response.NAK));
+        assertThat(parser.poll(), is(Mbot2ResponseParser.Response.ACK));
+        assertThat(parser.poll(), is(nullValue()));
+    }
+
+    @Test
+    void poll_ShouldSkipOutput_WhenItIsNoResponse() {
+        Mbot2ResponseParser parser = new Mbot2ResponseParser();
+        // text output, a stray header byte, a frame of another service and a header with a wrong checksum
+        byte[] other = bytes(0xF3, 0xF6, 0x03, 0x00, 0x01, 0x00, 0x28, 0x29, 0xF4);
+        byte[] data = concat("hello\r\n".getBytes(), bytes(0xF3, 0x00), other, bytes(0xF3, 0x00, 0x07, 0x00), ACK);
+        parser.feed(data, 0, data.length);
+
+        assertThat(parser.poll(), is(Mbot2ResponseParser.Response.ACK));
+        assertThat(parser.poll(), is(nullValue()));
+    }
+
+    @Test
+    void poll_ShouldReturnCorrupt_WhenBodyChecksumDoesNotMatch() {
+        Mbot2ResponseParser parser = new Mbot2ResponseParser();
+        byte[] data = ACK.clone();
+        data[11] = 0x42;
+        parser.feed(data, 0, data.length);
+        parser.feed(ACK, 0, ACK.length);
+
+        assertThat(parser.poll(), is(Mbot2ResponseParser.Response.CORRUPT));
+        assertThat(parser.poll(), is(Mbot2ResponseParser.Response.ACK));
+    }
+
+    @Test
+    void feed_ShouldKeepReceiving_WhenMoreThanTheBufferIsFedWithoutPolling() {
+        Mbot2ResponseParser parser = new Mbot2ResponseParser();
+        byte[] noise = new byte[5000];
+        noise[100] = (byte) 0xF3;
+        parser.feed(noise, 0, noise.length);
+        parser.feed(ACK, 0, 5);
+        parser.feed(ACK, 5, ACK.length - 5);
+
+        assertThat(parser.poll(), is(Mbot2ResponseParser.Response.ACK));
+    }
+
+    @Test
+    void poll_ShouldBeFaster_ThanMatchingHexStrings() {
+        // a read of the legacy receive loop, the response at its end
+        byte[] read = new byte[128];
+        System.arraycopy(ACK, 0, read, read.length - ACK.length, ACK.length);
+        Pattern responsePattern = Pattern.compile("f3(fa070001005ef001000((0)|(1))50|(f603000d00000d))f4");
+        Mbot2ResponseParser parser = new Mbot2ResponseParser();
+
+        long legacy = 0;
+        long parsed = 0;
+        for ( int round = 0; round < 2; round++ ) { // the first round warms up
+            long start = System.nanoTime();
+            int matches = 0;
+            for ( int i = 0; i < ITERATIONS; i++ ) {
+                Matcher matcher = responsePattern.matcher(Hex.encodeHexString(read));
+                if ( matcher.find() && (matcher.group(4) == null) ) {
+                    matches++;
+                }
+            }
+            legacy = System.nanoTime() - start;
+            assertThat(matches, is(ITERATIONS));
+
+            start = System.nanoTime();
+            int acks = 0;
+            for ( int i = 0; i < ITERATIONS; i++ ) {
+                parser.feed(read, 0, read.length);
+                if ( parser.poll() == Mbot2ResponseParser.Response.ACK ) {
+                    acks++;
+                }
+            }
+            parsed = System.nanoTime() - start;
+            assertThat(acks, is(ITERATIONS));
+        }
+        LOG.info("Checking a read of {} bytes: hex and regex {} ns, parser {} ns", read.length, legacy / ITERATIONS, parsed / ITERATIONS);
+
+        assertThat(parsed, lessThan(legacy));
+        assertThat(TimeUnit.NANOSECONDS.toMillis(parsed), lessThan(1000L));
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for ( int i = 0; i < values.length; i++ ) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    private static byte[] concat(byte[]... arrays) {
+        int length = 0;
+        for ( byte[] array : arrays ) {
+            length += array.length;
+        }
+        byte[] result = new byte[length];
+        int offset = 0;
+        for ( byte[] array : arrays ) {
+            System.arraycopy(array, 0, result, offset, array.length);
+            offset += array.length;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,167 @@
+package de.fhg.iais.roberta.connection.wired.mBot2;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class Mbot2TransferTests {
+    private static final Logger LOG = LoggerFactory.getLogger(Mbot2TransferTests.class);
+
+    private static final String FILE_NAME = "/flash/main.py";
+    private static final int BAUD_RATE = 115200;
+    private static final long LATENCY = 1000L; // a USB full speed frame
+    private static final long PROCESSING = 500L;
+    private static final int PROGRAM_SIZE = 4 * 1024;
+
+    @Test
+    void run_ShouldUploadProgram_WhenWaitingForEachResponse() throws InterruptedException {
+        byte[] program = program(PROGRAM_SIZE);
+        Mbot2Emulator emulator = new Mbot2Emulator(BAUD_RATE, LATENCY, PROCESSING, 1);
+        Mbot2Transfer transfer = transfer(emulator, program, 1, Mbot2FrameEncoder.DEFAULT_CHUNK_SIZE);
+
+        assertThat(transfer.run(), is(true));
+        assertThat(emulator.getFile(), is(program));
+        assertThat(transfer.getSummary().getFrames(), is(2 + (PROGRAM_SIZE / Mbot2FrameEncoder.DEFAULT_CHUNK_SIZE)));
+        assertThat(transfer.getSummary().getRetransmits(), is(0));
+    }
+
+    @Test
+    void run_ShouldUploadProgram_WhenSendingWindowsOfLargerChunks() throws InterruptedException {
+        byte[] program = program(PROGRAM_SIZE + 17);
+        Mbot2Emulator emulator = new Mbot2Emulator(BAUD_RATE, LATENCY, PROCESSING, 8);
+        Mbot2Transfer transfer = transfer(emulator, program, 8, 256);
+
+        assertThat(transfer.run(), is(true));
+        assertThat(emulator.getFile(), is(program));
+        assertThat(emulator.getRejected(), is(0));
+    }
+
+    @Test
+    void run_ShouldFallBackToStopAndWait_WhenRobotRejectsFramesOfWindow() throws InterruptedException {
+        byte[] program = program(1024);
+        // the robot needs longer for a frame than the line, so its buffer fills up
+        Mbot2Emulator emulator = new Mbot2Emulator(BAUD_RATE, LATENCY, 20000L, 2);
+        Mbot2Transfer transfer = transfer(emulator, program, 8, Mbot2FrameEncoder.DEFAULT_CHUNK_SIZE);
+
+        assertThat(transfer.run(), is(true));
+        assertThat(emulator.getFile(), is(program));
+        assertThat(emulator.getRejected(), greaterThan(0));
+        assertThat(transfer.getSummary().toString().contains("window 8 then 1"), is(true));
+    }
+
+    @Test
+    void run_ShouldResendOnlyRejectedFrame_WhenWaitingForEachResponse() throws InterruptedException {
+        byte[] program = program(PROGRAM_SIZE);
+        Mbot2Emulator emulator = new Mbot2Emulator(BAUD_RATE, LATENCY, PROCESSING, 1);
+        emulator.rejectOnce(10);
+        emulator.rejectOnce(20);
+        Mbot2Transfer transfer = transfer(emulator, program, 1, Mbot2FrameEncoder.DEFAULT_CHUNK_SIZE);
+
+        assertThat(transfer.run(), is(true));
+        assertThat(emulator.getFile(), is(program));
+        assertThat(transfer.getSummary().getRetransmits(), is(2));
+    }
+
+    @Test
+    void run_ShouldResendFrame_WhenItsAcknowledgementIsLost() throws InterruptedException {
+        byte[] program = program(1024);
+        Mbot2Emulator emulator = new Mbot2Emulator(BAUD_RATE, LATENCY, PROCESSING, 1);
+        emulator.dropAckOnce(7);
+        Mbot2Transfer transfer = transfer(emulator, program, 1, Mbot2FrameEncoder.DEFAULT_CHUNK_SIZE);
+
+        assertThat(transfer.run(), is(true));
+        assertThat(emulator.getFile(), is(program));
+        assertThat(emulator.getRejected(), is(0));
+        assertThat(transfer.getSummary().getFrames(), is(2 + (1024 / Mbot2FrameEncoder.DEFAULT_CHUNK_SIZE)));
+        assertThat(transfer.getSummary().getRetransmits(), is(1));
+    }
+
+    @Test
+    void run_ShouldFail_WhenFrameIsRejectedOnEveryAttempt() throws InterruptedException {
+        byte[] program = program(PROGRAM_SIZE);
+        Mbot2Emulator emulator = new Mbot2Emulator(BAUD_RATE, LATENCY, PROCESSING, 1);
+        emulator.rejectAlways(5);
+        Mbot2Transfer transfer = transfer(emulator, program, 1, Mbot2FrameEncoder.DEFAULT_CHUNK_SIZE);
+
+        assertThat(transfer.run(), is(false));
+        assertThat(emulator.getRejected(), is(Mbot2Transfer.MAX_FRAME_ATTEMPTS));
+        assertThat(transfer.getSummary().getFrames(), is(2 + 5));
+    }
+
+    @Test
+    void run_ShouldFail_WhenRetransmitBudgetIsUsedUp() throws InterruptedException {
+        byte[] program = program(PROGRAM_SIZE);
+        Mbot2Emulator emulator = new Mbot2Emulator(BAUD_RATE, LATENCY, PROCESSING, 1);
+        for ( int i = 0; i <= Mbot2Transfer.MAX_RETRANSMITS; i++ ) {
+            emulator.rejectOnce(i * 2);
+        }
+        Mbot2Transfer transfer = transfer(emulator, program, 1, Mbot2FrameEncoder.DEFAULT_CHUNK_SIZE);
+
+        assertThat(transfer.run(), is(false));
+        assertThat(transfer.getSummary().getRetransmits(), is(Mbot2Transfer.MAX_RETRANSMITS));
+    }
+
+    @Test
+    void run_ShouldResendRejectedFrame_WhenRobotPrintsOutputContinuously() {
+        byte[] program = program(1024);
+        Mbot2Emulator emulator = new Mbot2Emulator(BAUD_RATE, LATENCY, PROCESSING, 1);
+        emulator.chatter("distance: 42\r\n".getBytes(StandardCharsets.US_ASCII));
+        emulator.rejectOnce(3);
+        Mbot2Transfer transfer = transfer(emulator, program, 1, Mbot2FrameEncoder.DEFAULT_CHUNK_SIZE);
+
+        // without a deadline discarding the input before the retransmit would never end
+        assertTimeoutPreemptively(Duration.ofMillis(Mbot2Transfer.RESPONSE_TIMEOUT * 5), () -> assertThat(transfer.run(), is(true)));
+        assertThat(emulator.getFile(), is(program));
+        assertThat(transfer.getSummary().getRetransmits(), is(1));
+    }
+
+    @Test
+    void run_ShouldBeFaster_WhenFramesArePipelined() throws InterruptedException {
+        byte[] program = program(PROGRAM_SIZE);
+        StringBuilder table = new StringBuilder("Upload of ").append(PROGRAM_SIZE).append(" bytes at ").append(BAUD_RATE).append(" baud in ms:");
+        long stopAndWait = 0L;
+        long pipelined = 0L;
+        for ( int chunkSize : new int[] { 64, 128, 256 } ) {
+            table.append(System.lineSeparator()).append("chunk ").append(chunkSize).append(':');
+            for ( int window : new int[] { 1, 2, 4, 8 } ) {
+                Mbot2Emulator emulator = new Mbot2Emulator(BAUD_RATE, LATENCY, PROCESSING, 8);
+                Mbot2Transfer transfer = transfer(emulator, program, window, chunkSize);
+
+                assertThat(transfer.run(), is(true));
+                assertThat(emulator.getFile(), is(program));
+                long elapsed = transfer.getSummary().getElapsedMillis();
+                table.append(" window ").append(window).append(' ').append(elapsed);
+                if ( chunkSize == Mbot2FrameEncoder.DEFAULT_CHUNK_SIZE ) {
+                    if ( window == 1 ) {
+                        stopAndWait = elapsed;
+                    } else if ( window == 4 ) {
+                        pipelined = elapsed;
+                    }
+                }
+            }
+        }
+        LOG.info("{}", table);
+
+        assertThat(stopAndWait, greaterThan(pipelined));
+    }
+
+    private static Mbot2Transfer transfer(Mbot2Emulator emulator, byte[] program, int window, int chunkSize) {
+        return new Mbot2Transfer(emulator, new Mbot2FrameEncoder(ByteBuffer.wrap(program), FILE_NAME, chunkSize), window, chunkSize);
+    }
+
+    private static byte[] program(int size) {
+        byte[] program = new byte[size];
+        new Random(42).nextBytes(program);
+        return program;
+    }
+}
@@ -0,0 +1,102 @@
+package de.fhg.iais.roberta.connection.wired.spike;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SpikeLineReaderTests {
+    private static final long TIMEOUT = 500L;
+
+    private final Deque<String> reads = new ArrayDeque<>();
+    private final List<String> otherOutput = new ArrayList<>();
+    private boolean disconnected = false;
+
+    private final SpikeLineReader reader = new SpikeLineReader((buffer, length) -> {
+        String read = this.reads.poll();
+        if ( read == null ) {
+            return this.disconnected ? -1 : 0;
+        }
+        byte[] bytes = read.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(bytes, 0, buffer, 0, bytes.length);
+        return bytes.length;
+    }, output -> this.otherOutput.add(new String(output, StandardCharsets.UTF_8)));
+
+    @Test
+    void await_ShouldReturnResponse_WhenItIsSplitAcrossReads() {
+        this.reads.add("{\"i\": \"ab");
+        this.reads.add("cd\", \"r\": {\"transfer");
+        this.reads.add("id\": \"42\"}}\r");
+
+        JSONObject response = this.reader.await("abcd", TIMEOUT);
+
+        assertThat(response.getJSONObject("r").getString("transferid"), is("42"));
+        assertThat(this.otherOutput, is(empty()));
+    }
+
+    @Test
+    void await_ShouldDivertOtherLines_WhenTheyArriveWithTheResponse() {
+        this.reads.add("{\"m\": 0, \"p\": [1, 2]}\r\n{\"i\": \"old1\", \"r\": null}\rhello\r{\"i\": \"abcd\", \"r\": null}\r{\"m\": 2, \"p\": [");
+        this.reads.add("8.3]}\r");
+
+        JSONObject response = this.reader.await("abcd", TIMEOUT);
+        assertThat(response.getString("i"), is("abcd"));
+        assertThat(this.reader.await("efgh", TIMEOUT), is(nullValue()));
+
+        assertThat(this.otherOutput, contains("{\"m\": 0, \"p\": [1, 2]}\r", "hello\r", "{\"m\": 2, \"p\": [8.3]}\r"));
+    }
+
+    @Test
+    void await_ShouldIgnoreStaleBytes_WhenAwaitingTheNextResponse() {
+        // the remainder of the first response must not be taken for the second
+        this.reads.add("{\"i\": \"abcd\", \"r\": null}\r{\"i\": \"efgh\", \"r\": ");
+        this.reads.add("{\"next_ptr\": 512}}\r");
+
+        assertThat(this.reader.await("abcd", TIMEOUT).getString("i"), is("abcd"));
+        assertThat(this.reader.await("efgh", TIMEOUT).getJSONObject("r").getInt("next_ptr"), is(512));
+    }
+
+    @Test
+    void await_ShouldThrow_WhenResponseIsBroken() {
+        this.reads.add("{\"i\": \"abcd\", \"r\": {\"transferid\": \r");
+
+        assertThrows(JSONException.class, () -> this.reader.await("abcd", TIMEOUT));
+    }
+
+    @Test
+    void await_ShouldThrow_WhenIdOfResponseIsBroken() {
+        this.reads.add("{\"i\": \"ab?d\", \"r\": {\"transferid\": \"42\"\r");
+
+        assertThrows(JSONException.class, () -> this.reader.await("abcd", TIMEOUT));
+        assertThat(this.otherOutput, is(empty()));
+    }
+
+    @Test
+    void feed_ShouldPassOnBrokenObject_WhenNoRequestIsPending() {
+        byte[] line = "{\"m\": 2, \"p\": [8.\r".getBytes(StandardCharsets.UTF_8);
+
+        this.reader.feed(line, line.length);
+
+        assertThat(this.otherOutput, contains("{\"m\": 2, \"p\": [8.\r"));
+    }
+
+    @Test
+    void await_ShouldReturnNull_WhenRobotIsDisconnected() {
+        this.reads.add("{\"i\": \"ab");
+        this.disconnected = true;
+
+        assertThat(this.reader.await("abcd", TIMEOUT), is(nullValue()));
+    }
+}
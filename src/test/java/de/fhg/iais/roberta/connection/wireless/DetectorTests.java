@@ -0,0 +1,143 @@
+package de.fhg.iais.roberta.connection.wireless;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.NetworkInterface;
+import java.net.UnknownHostException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jmdns.JmDNS;
+import javax.jmdns.ServiceInfo;
+
+import de.fhg.iais.roberta.connection.IRobot;
+import de.fhg.iais.roberta.connection.wireless.nao.Nao;
+import de.fhg.iais.roberta.connection.wireless.robotino.Robotino;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.isA;
+import static org.hamcrest.Matchers.lessThan;
+
+class DetectorTests {
+    private static final Logger LOG = LoggerFactory.getLogger(DetectorTests.class);
+
+    private static final long TIMEOUT = 10000L;
+    private static final long RESOLVE_TIME = 200L;
+
+    private JmDNS announcer = null;
+    private mDnsDetector detector = null;
+    private HostnameDetector hostnameDetector = null;
+
+    @Test
+    void detectRobots_ShouldReturnAnnouncedNao_WhenBrowsing() throws IOException, InterruptedException {
+        InetAddress loopback = InetAddress.getByName("127.0.0.1");
+        Map<InetAddress, NetworkInterface> addresses = Collections.singletonMap(loopback, NetworkInterface.getByInetAddress(loopback));
+        this.detector = new mDnsDetector(() -> addresses);
+        assertThat(this.detector.detectRobots(), empty());
+
+        this.announcer = JmDNS.create(loopback, "announcer");
+        this.announcer.registerService(ServiceInfo.create("_naoqi._tcp.local.", "TestNao", 9559, "test"));
+
+        long start = System.currentTimeMillis();
+        List<IRobot> robots = this.detector.detectRobots();
+        while ( robots.isEmpty() && ((System.currentTimeMillis() - start) < TIMEOUT) ) {
+            Thread.sleep(50L);
+            robots = this.detector.detectRobots();
+        }
+        LOG.info("Found {} after {} ms", robots, System.currentTimeMillis() - start);
+        assertThat(robots, contains(isA(Nao.class)));
+
+        long detectStart = System.nanoTime();
+        this.detector.detectRobots();
+        assertThat(System.nanoTime() - detectStart, lessThan(100000000L));
+    }
+
+    @Test
+    void detectRobots_ShouldTakeAsLongAsSlowestLookup_WhenResolvingHostnamesConcurrently() {
+        Map<String, Class<? extends AbstractWirelessRobot>> hostnames = new HashMap<>(3);
+        hostnames.put("robotino1.local", Robotino.class);
+        hostnames.put("robotino2.local", Robotino.class);
+        hostnames.put("missing.local", Robotino.class);
+        this.hostnameDetector = new HostnameDetector(hostnames, hostname -> {
+            sleep(RESOLVE_TIME);
+            if ( hostname.startsWith("missing") ) {
+                throw new UnknownHostException(hostname);
+            }
+            return InetAddress.getLoopbackAddress();
+        }, TIMEOUT, TIMEOUT);
+
+        long start = System.nanoTime();
+        List<IRobot> robots = this.hostnameDetector.detectRobots();
+        long cycleTime = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        LOG.info("Resolved {} hostnames in {} ms, {} ms per lookup", hostnames.size(), cycleTime, RESOLVE_TIME);
+
+        assertThat(robots, contains(isA(Robotino.class)));
+        assertThat(cycleTime, lessThan(hostnames.size() * RESOLVE_TIME));
+    }
+
+    @Test
+    void detectRobots_ShouldNotResolveAgain_WhenHostnameIsUnresolvable() {
+        AtomicInteger lookups = new AtomicInteger();
+        this.hostnameDetector = new HostnameDetector(Collections.singletonMap("missing.local", Robotino.class), hostname -> {
+            lookups.incrementAndGet();
+            throw new UnknownHostException(hostname);
+        }, TIMEOUT, TIMEOUT);
+
+        assertThat(this.hostnameDetector.detectRobots(), empty());
+        assertThat(this.hostnameDetector.detectRobots(), empty());
+        assertThat(lookups.get(), is(1));
+    }
+
+    @Test
+    void detectRobots_ShouldReturnAtDeadline_WhenLookupIsSlow() {
+        AtomicInteger lookups = new AtomicInteger();
+        long probeTimeout = RESOLVE_TIME / 4L;
+        this.hostnameDetector = new HostnameDetector(Collections.singletonMap("robotino.local", Robotino.class), hostname -> {
+            lookups.incrementAndGet();
+            sleep(RESOLVE_TIME);
+            return InetAddress.getLoopbackAddress();
+        }, probeTimeout, TIMEOUT);
+
+        long start = System.nanoTime();
+        assertThat(this.hostnameDetector.detectRobots(), empty());
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), lessThan(RESOLVE_TIME));
+
+        // the lookup finishes in the background and is picked up by a later cycle
+        sleep(RESOLVE_TIME);
+        assertThat(this.hostnameDetector.detectRobots(), contains(isA(Robotino.class)));
+        assertThat(lookups.get(), is(1));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if ( this.hostnameDetector != null ) {
+            this.hostnameDetector.close();
+        }
+        if ( this.announcer != null ) {
+            this.announcer.close();
+        }
+        if ( this.detector != null ) {
+            this.detector.close();
+        }
+    }
+}
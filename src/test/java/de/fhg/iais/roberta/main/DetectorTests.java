@@ -1,12 +1,16 @@
 package de.fhg.iais.roberta.main;
 
 import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import de.fhg.iais.roberta.connection.IDetector;
 import de.fhg.iais.roberta.connection.IRobot;
@@ -14,18 +18,26 @@ import de.fhg.iais.roberta.connection.wired.WiredRobotType;
 import de.fhg.iais.roberta.connection.wired.arduino.Arduino;
 import de.fhg.iais.roberta.connection.wired.ev3.Ev3;
 import de.fhg.iais.roberta.testUtils.TestListenable;
+import de.fhg.iais.roberta.main.RobotDetectorHelper.DetectorStatistics;
 import de.fhg.iais.roberta.util.IOraListenable;
+import de.fhg.iais.roberta.util.IOraListener;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.isA;
 import static org.hamcrest.Matchers.iterableWithSize;
+import static org.hamcrest.Matchers.lessThan;
 import static org.hamcrest.Matchers.notNullValue;
 
 class DetectorTests {
+    private static final Logger LOG = LoggerFactory.getLogger(DetectorTests.class);
+
+    private static final long INTERVAL = 20L;
+    private static final long MEASUREMENT_TIME = 1000L;
 
     @Test
     void getDetectedRobots_ShouldOnlyReturnDetectedRobots_WhenRun() {
@@ -91,6 +103,152 @@ class DetectorTests {
         assertThat(selectedRobot, isA(Arduino.class));
     }
 
+    @Test
+    void getStatistics_ShouldShowBackoff_WhenResultsDoNotChange() throws InterruptedException {
+        CountingDetector detector = new CountingDetector(INTERVAL);
+        RobotDetectorHelper robotDetectorHelper = new RobotDetectorHelper(Collections.singletonList(detector));
+        try {
+            Thread.sleep(MEASUREMENT_TIME);
+            DetectorStatistics statistics = robotDetectorHelper.getStatistics().get(detector);
+            LOG.info("{} runs in {} ms with {} ms base interval: {}", detector.runs.get(), MEASUREMENT_TIME, INTERVAL, statistics);
+
+            // without backoff the detector would run every 20 ms
+            assertThat(detector.runs.get(), lessThan((int) (MEASUREMENT_TIME / INTERVAL) / 2));
+            assertThat(statistics.getInterval(), is(INTERVAL * 8L));
+            assertThat(statistics.getRuns(), is((long) detector.runs.get()));
+        } finally {
+            robotDetectorHelper.close();
+        }
+    }
+
+    @Test
+    void getStatistics_ShouldKeepBaseInterval_WhenDetectorDoesNotSignalChanges() throws InterruptedException {
+        CountingDetector detector = new CountingDetector(INTERVAL);
+        detector.signalsChanges = false;
+        RobotDetectorHelper robotDetectorHelper = new RobotDetectorHelper(Collections.singletonList(detector));
+        try {
+            Thread.sleep(MEASUREMENT_TIME / 4L);
+            DetectorStatistics statistics = robotDetectorHelper.getStatistics().get(detector);
+
+            // a new robot would only be found in the next run
+            assertThat(statistics.getInterval(), is(INTERVAL));
+            assertThat(detector.runs.get(), greaterThan((int) (MEASUREMENT_TIME / 4L / INTERVAL) / 2));
+        } finally {
+            robotDetectorHelper.close();
+        }
+    }
+
+    @Test
+    void getRegistry_ShouldKeepRobot_WhenDetectorIsBackedOffBeyondRobotTtl() throws InterruptedException {
+        CountingDetector detector = new CountingDetector(INTERVAL);
+        // the backed off detector runs every 160 ms
+        RobotDetectorHelper robotDetectorHelper = new RobotDetectorHelper(Collections.singletonList(detector), INTERVAL);
+        List<IRobot> removed = new CopyOnWriteArrayList<>();
+        robotDetectorHelper.getRegistry().registerListener(change -> removed.addAll(change.getRemoved()));
+        try {
+            Thread.sleep(MEASUREMENT_TIME * 2L);
+
+            assertThat(robotDetectorHelper.getStatistics().get(detector).getInterval(), is(INTERVAL * 8L));
+            assertThat(robotDetectorHelper.getRegistry().getRobots(), contains(isA(Ev3.class)));
+            assertThat(removed, is(empty()));
+        } finally {
+            robotDetectorHelper.close();
+        }
+    }
+
+    @Test
+    void wakeUp_ShouldRunDetectorImmediately_WhenDetectorSignalsChange() throws InterruptedException {
+        CountingDetector detector = new CountingDetector(MEASUREMENT_TIME * 10L);
+        RobotDetectorHelper robotDetectorHelper = new RobotDetectorHelper(Collections.singletonList(detector));
+        try {
+            while ( !robotDetectorHelper.allDetectorsRanOnce() ) {
+                Thread.sleep(1L);
+            }
+            assertThat(detector.runs.get(), is(1));
+
+            detector.changeListener.update(detector);
+            long start = System.currentTimeMillis();
+            while ( (detector.runs.get() < 2) && ((System.currentTimeMillis() - start) < MEASUREMENT_TIME) ) {
+                Thread.sleep(1L);
+            }
+            assertThat(detector.runs.get(), is(2));
+        } finally {
+            robotDetectorHelper.close();
+        }
+    }
+
+    @Test
+    void pause_ShouldStopDetection_WhenConnectorIsRunning() throws InterruptedException {
+        CountingDetector detector = new CountingDetector(1L);
+        detector.changing = true;
+        RobotDetectorHelper robotDetectorHelper = new RobotDetectorHelper(Collections.singletonList(detector));
+        try {
+            Thread.sleep(INTERVAL);
+            robotDetectorHelper.pause();
+            Thread.sleep(INTERVAL);
+            int runs = detector.runs.get();
+            Thread.sleep(INTERVAL * 5L);
+            assertThat(detector.runs.get(), is(runs));
+
+            robotDetectorHelper.resume();
+            Thread.sleep(INTERVAL);
+            assertThat(detector.runs.get(), greaterThan(runs));
+        } finally {
+            robotDetectorHelper.close();
+        }
+    }
+
+    @Test
+    void awaitSelectedRobot_ShouldSelectRobot_WhenRegistryIsCompleteWithOneRobot() throws InterruptedException {
+        RobotDetectorHelper robotDetectorHelper = new RobotDetectorHelper(Arrays.asList(new TestEv3DetectedDetector(), new TestNoRobotDetectedDetector()));
+        try {
+            // same as the auto selection of the main loop
+            robotDetectorHelper.getRegistry().registerListener(change -> {
+                if ( change.isComplete() && (change.getRobots().size() == 1) ) {
+                    robotDetectorHelper.update(change.getRobots().get(0));
+                }
+            });
+            robotDetectorHelper.reset();
+
+            IRobot selectedRobot = robotDetectorHelper.awaitSelectedRobot(MEASUREMENT_TIME);
+            assertThat(selectedRobot, isA(Ev3.class));
+        } finally {
+            robotDetectorHelper.close();
+        }
+    }
+
+    /**
+     * Counts its runs, finds a different robot in every run if changing is set.
+     */
+    private static class CountingDetector implements IDetector {
+        private final long interval;
+        private final AtomicInteger runs = new AtomicInteger();
+        private volatile boolean changing = false;
+        private boolean signalsChanges = true;
+        private IOraListener<IDetector> changeListener = null;
+
+        CountingDetector(long interval) {
+            this.interval = interval;
+        }
+
+        @Override
+        public List<IRobot> detectRobots() {
+            int run = this.runs.incrementAndGet();
+            return Collections.singletonList(new Ev3(this.changing ? ("EV3 " + run) : "EV3"));
+        }
+
+        @Override
+        public long getInterval() {
+            return this.interval;
+        }
+
+        @Override
+        public boolean registerChangeListener(IOraListener<IDetector> listener) {
+            this.changeListener = listener;
+            return this.signalsChanges;
+        }
+    }
+
     private static class TestEv3DetectedDetector implements IDetector {
         @Override
         public List<IRobot> detectRobots() {
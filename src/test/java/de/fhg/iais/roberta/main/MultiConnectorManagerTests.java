@@ -0,0 +1,320 @@
+package de.fhg.iais.roberta.main;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.fhg.iais.roberta.connection.AbstractConnector;
+import de.fhg.iais.roberta.connection.IConnector;
+import de.fhg.iais.roberta.connection.IRobot;
+import de.fhg.iais.roberta.util.ExecutorFactory;
+import de.fhg.iais.roberta.util.ExecutorFactory.ExecutionMode;
+import de.fhg.iais.roberta.util.OraTokenGenerator;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.iterableWithSize;
+
+class MultiConnectorManagerTests {
+    private static final Logger LOG = LoggerFactory.getLogger(MultiConnectorManagerTests.class);
+
+    private static final int ROBOTS = 20;
+    private static final long SERVER_DELAY = 20L;
+    private static final long MEASUREMENT_TIME = 2000L;
+    private static final long TIMEOUT = 5000L;
+
+    private static final int[] SCALING_CONNECTORS = { 1, 10, 100, 500 };
+    private static final long SIMULATED_LONG_POLL = 50L; // the server holds each push request this long
+    private static final long SCALING_MEASUREMENT_TIME = 500L;
+
+    private final AtomicLong pushes = new AtomicLong();
+    private final AtomicLong pushNanos = new AtomicLong();
+
+    private HttpServer server = null;
+    private ExecutorService serverExecutor = null;
+    private ScheduledExecutorService longPollExecutor = null;
+    private MultiConnectorManager connectorManager = null;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        this.serverExecutor = Executors.newFixedThreadPool(ROBOTS);
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        this.server.setExecutor(this.serverExecutor);
+        this.server.createContext("/rest/pushcmd", exchange -> {
+            exchange.getRequestBody().close();
+            try {
+                Thread.sleep(SERVER_DELAY);
+            } catch ( InterruptedException e ) {
+                Thread.currentThread().interrupt();
+            }
+            answer(exchange);
+        });
+        // holds the push requests without occupying a server thread, like the server does for many robots
+        this.longPollExecutor = Executors.newSingleThreadScheduledExecutor();
+        this.server.createContext("/rest/longpoll/rest/pushcmd", exchange -> {
+            exchange.getRequestBody().close();
+            this.longPollExecutor.schedule(() -> {
+                answer(exchange);
+                return null;
+            }, SIMULATED_LONG_POLL, TimeUnit.MILLISECONDS);
+        });
+        this.server.start();
+    }
+
+    @Test
+    void update_ShouldRunConnectorPerRobot_WhenRobotsAreAvailable() throws InterruptedException {
+        String serverAddress = "localhost:" + this.server.getAddress().getPort();
+        this.connectorManager = new MultiConnectorManager(ROBOTS, robot -> new SimulatedConnector((SimulatedRobot) robot, serverAddress));
+
+        List<IRobot> robots = new ArrayList<>(ROBOTS);
+        for ( int i = 0; i < ROBOTS; i++ ) {
+            robots.add(new SimulatedRobot(i));
+        }
+
+        long start = System.currentTimeMillis();
+        this.connectorManager.update(robots);
+        while ( (this.connectorManager.getTokens().size() < ROBOTS) && ((System.currentTimeMillis() - start) < TIMEOUT) ) {
+            Thread.sleep(10L);
+        }
+        LOG.info("{} robots registered in {} ms", ROBOTS, System.currentTimeMillis() - start);
+        assertThat(this.connectorManager.getTokens().size(), is(ROBOTS));
+        assertThat(new HashSet<>(this.connectorManager.getTokens().values()), iterableWithSize(ROBOTS));
+
+        long pushesBefore = this.pushes.get();
+        long pushNanosBefore = this.pushNanos.get();
+        Thread.sleep(MEASUREMENT_TIME);
+        long measuredPushes = this.pushes.get() - pushesBefore;
+        long measuredNanos = this.pushNanos.get() - pushNanosBefore;
+        LOG.info("{} robots: {} pushes per second, mean latency {} ms with {} ms server delay",
+            ROBOTS,
+            (measuredPushes * 1000L) / MEASUREMENT_TIME,
+            (measuredPushes == 0L) ? 0L : (measuredNanos / measuredPushes) / 1000000L,
+            SERVER_DELAY);
+        assertThat(measuredPushes, greaterThan((long) ROBOTS));
+
+        // unplug half of the robots
+        List<IRobot> remaining = robots.subList(0, ROBOTS / 2);
+        this.connectorManager.update(remaining);
+        assertThat(this.connectorManager.getConnectorCount(), is(ROBOTS / 2));
+        assertThat(this.connectorManager.getTokens().keySet(), iterableWithSize(ROBOTS / 2));
+    }
+
+    @Test
+    void update_ShouldLimitConnectors_WhenTooManyRobotsAreAvailable() {
+        String serverAddress = "localhost:" + this.server.getAddress().getPort();
+        this.connectorManager = new MultiConnectorManager(2, robot -> new SimulatedConnector((SimulatedRobot) robot, serverAddress));
+
+        List<IRobot> robots = new ArrayList<>(3);
+        for ( int i = 0; i < 3; i++ ) {
+            robots.add(new SimulatedRobot(i));
+        }
+        this.connectorManager.update(robots);
+        assertThat(this.connectorManager.getConnectorCount(), is(2));
+    }
+
+    @Test
+    void update_ShouldServeAllRobots_WhenScalingUpSimulatedConnectors() throws InterruptedException {
+        List<ExecutionMode> modes = new ArrayList<>(2);
+        modes.add(ExecutionMode.PLATFORM);
+        if ( ExecutorFactory.isVirtualThreadSupported() ) {
+            modes.add(ExecutionMode.VIRTUAL);
+        } else {
+            LOG.info("Virtual threads are not supported by this runtime, only measuring platform threads");
+        }
+
+        String serverAddress = "localhost:" + this.server.getAddress().getPort() + "/rest/longpoll";
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        for ( ExecutionMode mode : modes ) {
+            for ( int connectors : SCALING_CONNECTORS ) {
+                AtomicLong polls = new AtomicLong();
+                CountDownLatch registered = new CountDownLatch(connectors);
+                MultiConnectorManager manager = new MultiConnectorManager(connectors,
+                    robot -> new LongPollConnector((SimulatedRobot) robot, serverAddress, polls, registered),
+                    ExecutorFactory.newExecutor(mode, connectors));
+                try {
+                    int threadsBefore = threadMXBean.getThreadCount();
+                    List<IRobot> robots = new ArrayList<>(connectors);
+                    for ( int i = 0; i < connectors; i++ ) {
+                        robots.add(new SimulatedRobot(i));
+                    }
+                    manager.update(robots);
+                    assertThat(registered.await(TIMEOUT, TimeUnit.MILLISECONDS), is(true));
+
+                    long pollsBefore = polls.get();
+                    Thread.sleep(SCALING_MEASUREMENT_TIME);
+                    long measuredPolls = polls.get() - pollsBefore;
+                    LOG.info("{} threads, {} connectors: {} polls per second, {} additional OS threads",
+                        mode,
+                        connectors,
+                        (measuredPolls * 1000L) / SCALING_MEASUREMENT_TIME,
+                        threadMXBean.getThreadCount() - threadsBefore);
+                    assertThat(measuredPolls, greaterThanOrEqualTo((long) connectors));
+                } finally {
+                    manager.close();
+                }
+            }
+        }
+    }
+
+    private static void answer(HttpExchange exchange) throws IOException {
+        byte[] response = new JSONObject().put(IConnector.KEY_CMD, IConnector.CMD_REPEAT).toString().getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, response.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(response);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        if ( this.connectorManager != null ) {
+            this.connectorManager.close();
+        }
+        this.server.stop(0);
+        this.serverExecutor.shutdownNow();
+        this.longPollExecutor.shutdownNow();
+    }
+
+    private static class SimulatedRobot implements IRobot {
+        private final int id;
+
+        SimulatedRobot(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public String getPrettyName() {
+            return "Simulated robot " + this.id;
+        }
+
+        @Override
+        public String getName() {
+            return "simulated" + this.id;
+        }
+
+        @Override
+        public ConnectionType getConnectionType() {
+            return ConnectionType.WIRED;
+        }
+
+        @Override
+        public IConnector<? extends IRobot> createConnector() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return (obj instanceof SimulatedRobot) && (((SimulatedRobot) obj).id == this.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.id);
+        }
+    }
+
+    private class SimulatedConnector extends AbstractConnector<SimulatedRobot> {
+        SimulatedConnector(SimulatedRobot robot, String serverAddress) {
+            super(robot);
+            this.updateCustomServerAddress(serverAddress);
+        }
+
+        @Override
+        protected void runLoopBody() {
+            switch ( this.state ) {
+                case DISCOVER:
+                    this.fire(State.WAIT_FOR_CONNECT_BUTTON_PRESS);
+                    break;
+                case CONNECT_BUTTON_IS_PRESSED:
+                    this.token = OraTokenGenerator.generateToken();
+                    this.fire(State.WAIT_FOR_SERVER);
+                    this.push(CMD_REGISTER);
+                    break;
+                case WAIT_FOR_CMD:
+                    this.push(CMD_PUSH);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void push(String command) {
+            JSONObject request = new JSONObject().put(KEY_TOKEN, this.token).put(KEY_CMD, command);
+            long start = System.nanoTime();
+            try {
+                this.serverCommunicator.pushRequest(request);
+                MultiConnectorManagerTests.this.pushNanos.addAndGet(System.nanoTime() - start);
+                MultiConnectorManagerTests.this.pushes.incrementAndGet();
+                if ( this.state != State.WAIT_FOR_CMD ) {
+                    this.fire(State.WAIT_FOR_CMD);
+                }
+            } catch ( IOException e ) {
+                this.reset(State.ERROR_HTTP);
+            }
+        }
+    }
+
+    /**
+     * Simulates a robot whose server push request is held by the server for a while, the connector thread blocks without doing any work.
+     */
+    private static class LongPollConnector extends AbstractConnector<SimulatedRobot> {
+        private final AtomicLong polls;
+        private final CountDownLatch registered;
+
+        LongPollConnector(SimulatedRobot robot, String serverAddress, AtomicLong polls, CountDownLatch registered) {
+            super(robot);
+            this.updateCustomServerAddress(serverAddress);
+            this.polls = polls;
+            this.registered = registered;
+        }
+
+        @Override
+        protected void runLoopBody() {
+            switch ( this.state ) {
+                case DISCOVER:
+                    this.fire(State.WAIT_FOR_CONNECT_BUTTON_PRESS);
+                    break;
+                case CONNECT_BUTTON_IS_PRESSED:
+                    this.token = OraTokenGenerator.generateToken();
+                    this.fire(State.WAIT_FOR_CMD);
+                    this.registered.countDown();
+                    break;
+                case WAIT_FOR_CMD:
+                    try {
+                        this.serverCommunicator.pushRequest(new JSONObject().put(KEY_TOKEN, this.token).put(KEY_CMD, CMD_PUSH));
+                        this.polls.incrementAndGet();
+                    } catch ( IOException e ) {
+                        LOG.error("Push request failed: {}", e.getMessage());
+                        this.close();
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+}
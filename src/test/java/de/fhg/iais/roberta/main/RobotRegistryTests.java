@@ -0,0 +1,102 @@
+package de.fhg.iais.roberta.main;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.fhg.iais.roberta.connection.IRobot;
+import de.fhg.iais.roberta.connection.wired.WiredRobotType;
+import de.fhg.iais.roberta.connection.wired.arduino.Arduino;
+import de.fhg.iais.roberta.connection.wired.ev3.Ev3;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.iterableWithSize;
+
+class RobotRegistryTests {
+    private static final long TTL = 3000L;
+
+    private final AtomicLong clock = new AtomicLong();
+    private final List<RobotRegistry.Change> changes = new ArrayList<>(5);
+    private final IRobot ev3 = new Ev3("EV3");
+    private final IRobot arduino = new Arduino(WiredRobotType.UNO, "1234");
+
+    private RobotRegistry registry = null;
+
+    @BeforeEach
+    void setUp() {
+        this.registry = new RobotRegistry(TTL, this.clock::get);
+        this.registry.registerListener(this.changes::add);
+    }
+
+    @Test
+    void update_ShouldFireOnlyChanges_WhenRobotsAreDetectedRepeatedly() {
+        this.registry.update(Collections.singletonList(this.ev3), false);
+        this.registry.update(Collections.singletonList(new Ev3("EV3")), false);
+        this.registry.update(Arrays.asList(this.ev3, this.arduino), false);
+
+        assertThat(this.changes, iterableWithSize(2));
+        assertThat(this.changes.get(0).getAdded(), contains(this.ev3));
+        assertThat(this.changes.get(1).getAdded(), contains(this.arduino));
+        assertThat(this.changes.get(1).getRobots(), contains(this.ev3, this.arduino));
+    }
+
+    @Test
+    void expire_ShouldRemoveRobot_WhenNotDetectedForTtl() {
+        this.registry.update(Arrays.asList(this.ev3, this.arduino), true);
+        this.clock.addAndGet(TTL);
+        this.registry.update(Collections.singletonList(this.arduino), true);
+
+        // a missed detection does not remove the robot
+        this.registry.expire();
+        assertThat(this.registry.getRobots(), contains(this.ev3, this.arduino));
+        assertThat(this.changes, iterableWithSize(1));
+
+        this.clock.incrementAndGet();
+        this.registry.expire();
+        assertThat(this.registry.getRobots(), contains(this.arduino));
+        assertThat(this.changes, iterableWithSize(2));
+        assertThat(this.changes.get(1).getRemoved(), contains(this.ev3));
+        assertThat(this.changes.get(1).getAdded(), empty());
+    }
+
+    @Test
+    void expire_ShouldKeepRobot_WhenItsTtlIsLongerThanDefault() {
+        this.registry.update(Collections.singletonMap(this.ev3, TTL * 10L), true);
+        this.clock.addAndGet(TTL * 2L);
+
+        this.registry.expire();
+        assertThat(this.registry.getRobots(), contains(this.ev3));
+
+        // a robot that is no longer detected stays at most for the default time to live
+        this.registry.update(Collections.emptyMap(), true);
+        this.clock.addAndGet(TTL + 1L);
+        this.registry.expire();
+        assertThat(this.registry.getRobots(), is(empty()));
+        assertThat(this.changes.get(this.changes.size() - 1).getRemoved(), contains(this.ev3));
+    }
+
+    @Test
+    void update_ShouldFireOnce_WhenRegistryBecomesComplete() {
+        this.registry.update(Collections.singletonList(this.ev3), false);
+        this.registry.update(Collections.singletonList(this.ev3), true);
+        this.registry.update(Collections.singletonList(this.ev3), true);
+
+        assertThat(this.changes, iterableWithSize(2));
+        assertThat(this.changes.get(0).isComplete(), is(false));
+        assertThat(this.changes.get(1).isComplete(), is(true));
+        assertThat(this.changes.get(1).getAdded(), empty());
+
+        this.registry.clear();
+        assertThat(this.changes, iterableWithSize(3));
+        assertThat(this.changes.get(2).getRemoved(), contains(this.ev3));
+        assertThat(this.changes.get(2).isComplete(), is(false));
+    }
+}
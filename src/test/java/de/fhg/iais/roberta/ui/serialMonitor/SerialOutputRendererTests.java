@@ -0,0 +1,161 @@
+package de.fhg.iais.roberta.ui.serialMonitor;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+
+import de.fhg.iais.roberta.util.ByteRingBuffer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.startsWith;
+
+class SerialOutputRendererTests {
+    private static final Logger LOG = LoggerFactory.getLogger(SerialOutputRendererTests.class);
+
+    private static final long STRESS_TIME = 1000L;
+    private static final long PROBE_INTERVAL = 5L;
+    private static final Pattern SENSOR_LINE = Pattern.compile("^Sensor value: (\\d+), ultrasonic: 123 cm, äöü$", Pattern.MULTILINE);
+
+    private final ByteRingBuffer buffer = new ByteRingBuffer(64 * 1024);
+    private final JTextArea textArea = new JTextArea();
+
+    @Test
+    void render_ShouldDecodeCharacters_WhenSequencesAreSplitAcrossReads() throws InvocationTargetException, InterruptedException {
+        SerialOutputRenderer renderer = new SerialOutputRenderer(this.buffer, this.textArea, 100, 1000);
+        String text = "Grüße € 🤖\n";
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+
+        SwingUtilities.invokeAndWait(() -> {
+            for ( int i = 0; i < bytes.length; i++ ) {
+                this.buffer.write(bytes, i, 1);
+                renderer.render();
+            }
+        });
+
+        assertThat(this.textArea.getText(), is(text));
+    }
+
+    @Test
+    void render_ShouldRemoveOldestOutput_WhenLimitsAreExceeded() throws InvocationTargetException, InterruptedException {
+        SerialOutputRenderer renderer = new SerialOutputRenderer(this.buffer, this.textArea, 3, 20);
+
+        SwingUtilities.invokeAndWait(() -> {
+            for ( int i = 0; i < 5; i++ ) {
+                byte[] line = ("line" + i + '\n').getBytes(StandardCharsets.UTF_8);
+                this.buffer.write(line, 0, line.length);
+                renderer.render();
+            }
+        });
+        assertThat(this.textArea.getText(), is("line3\nline4\n"));
+
+        SwingUtilities.invokeAndWait(() -> {
+            byte[] line = "0123456789012345678901234".getBytes(StandardCharsets.UTF_8);
+            this.buffer.write(line, 0, line.length);
+            renderer.render();
+        });
+        // a single line longer than the limit is cut
+        assertThat(this.textArea.getText(), is("56789012345678901234"));
+    }
+
+    @Test
+    void render_ShouldRemoveWholeLines_WhenCharacterLimitIsExceeded() throws InvocationTargetException, InterruptedException {
+        SerialOutputRenderer renderer = new SerialOutputRenderer(this.buffer, this.textArea, 100, 20);
+
+        SwingUtilities.invokeAndWait(() -> {
+            for ( int i = 0; i < 5; i++ ) {
+                byte[] line = ("line" + i + '\n').getBytes(StandardCharsets.UTF_8);
+                this.buffer.write(line, 0, line.length);
+                renderer.render();
+            }
+        });
+
+        // the limit of 20 characters cuts into line1, which is removed completely
+        assertThat(this.textArea.getText(), is("line2\nline3\nline4\n"));
+    }
+
+    // the latency of the event dispatch thread depends on the machine, it is only logged as a benchmark
+    @Test
+    void render_ShouldKeepLimitsAndOrder_WhenOutputIsFloodedBeyondLineLimit() throws InvocationTargetException, InterruptedException {
+        this.flood(1000, 100000);
+    }
+
+    @Test
+    void render_ShouldKeepLimitsAndOrder_WhenOutputIsFloodedBeyondCharacterLimit() throws InvocationTargetException, InterruptedException {
+        this.flood(100000, 10000);
+    }
+
+    private void flood(int maxLines, int maxChars) throws InvocationTargetException, InterruptedException {
+        SerialOutputRenderer renderer = new SerialOutputRenderer(this.buffer, this.textArea, maxLines, maxChars);
+        SwingUtilities.invokeAndWait(renderer::start);
+
+        // a robot printing in a tight loop, far faster than any baud rate, at least enough to exceed the limits
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread producer = new Thread(() -> {
+            for ( long i = 0; running.get() || (this.buffer.getWritten() <= (2L * maxChars)); i++ ) {
+                byte[] line = ("Sensor value: " + i + ", ultrasonic: 123 cm, äöü\n").getBytes(StandardCharsets.UTF_8);
+                this.buffer.write(line, 0, line.length);
+            }
+        }, "SerialFlood");
+        producer.start();
+
+        AtomicLong maxLatency = new AtomicLong();
+        AtomicLong totalLatency = new AtomicLong();
+        long probes = 0;
+        long end = System.currentTimeMillis() + STRESS_TIME;
+        while ( System.currentTimeMillis() < end ) {
+            long posted = System.nanoTime();
+            SwingUtilities.invokeAndWait(() -> {
+                long latency = System.nanoTime() - posted;
+                totalLatency.addAndGet(latency);
+                maxLatency.accumulateAndGet(latency, Math::max);
+            });
+            probes++;
+            Thread.sleep(PROBE_INTERVAL);
+        }
+        running.set(false);
+        producer.join();
+        SwingUtilities.invokeAndWait(renderer::stop);
+
+        long written = this.buffer.getWritten();
+        LOG.info("{} bytes produced, {} overwritten before rendering, EDT latency mean {} us, max {} ms over {} probes",
+            written,
+            this.buffer.getOverwritten(),
+            TimeUnit.NANOSECONDS.toMicros(totalLatency.get() / probes),
+            TimeUnit.NANOSECONDS.toMillis(maxLatency.get()),
+            probes);
+
+        assertThat(written, greaterThan(2L * maxChars));
+        assertThat(this.textArea.getDocument().getLength(), lessThanOrEqualTo(maxChars));
+        assertThat(this.textArea.getLineCount(), lessThanOrEqualTo(maxLines));
+        assertThat(this.textArea.getText(), startsWith("Sensor"));
+        assertThat(this.textArea.getText(), endsWith("\n"));
+        // output that was overwritten in the buffer is skipped, but the rendered values never go back
+        long previous = -1L;
+        int lines = 0;
+        Matcher matcher = SENSOR_LINE.matcher(this.textArea.getText());
+        while ( matcher.find() ) {
+            lines++;
+            long value = Long.parseLong(matcher.group(1));
+            assertThat(value, greaterThan(previous));
+            previous = value;
+        }
+        assertThat(previous, greaterThan(-1L));
+        // the first and the last line are complete, the lines between are only cut where the buffer was overwritten
+        assertThat(lines, greaterThan(0));
+    }
+}
@@ -1,19 +1,41 @@
 package de.fhg.iais.roberta.util;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import de.fhg.iais.roberta.connection.wired.WiredRobotType;
+
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
 
 class UtilsTests {
+    private static final Logger LOG = LoggerFactory.getLogger(UtilsTests.class);
+
+    private static final int LOOKUPS = 1000000;
+
+    @TempDir
+    Path tempDir;
+
     @Test
     void generateToken_ShouldReturnToken_WhenRun() {
         String token = OraTokenGenerator.generateToken();
@@ -49,4 +71,112 @@ class UtilsTests {
         String artifactId = instance.getProperty("artifactId");
         assertThat(artifactId, is("OpenRobertaConnector"));
     }
+
+    @Test
+    void get_ShouldReturnRobotType_WhenIdsAreSupported() {
+        WiredRobotIdTable table = WiredRobotIdFileHelper.getTable();
+        Map<SerialDevice, WiredRobotType> map = WiredRobotIdFileHelper.load().getFirst();
+
+        assertThat(table.size(), is(map.size()));
+        assertThat(table.toMap(), is(map));
+        for ( Map.Entry<SerialDevice, WiredRobotType> entry : map.entrySet() ) {
+            SerialDevice device = entry.getKey();
+            assertThat(table.get(device), is(entry.getValue()));
+            assertThat(table.get(new SerialDevice(device.vendorId.toUpperCase(), device.productId.toUpperCase(), "ttyACM0", "")), is(entry.getValue()));
+        }
+        assertThat(table.get(new SerialDevice("ffff", "ffff", "", "")), nullValue());
+        assertThat(table.get(new SerialDevice("notanid", "0043", "", "")), nullValue());
+    }
+
+    @Test
+    void getTable_ShouldReloadTable_WhenFileIsModified() throws IOException {
+        File file = this.tempDir.resolve("wired-robot-ids.txt").toFile();
+        Files.write(file.toPath(), Arrays.asList("# test", "2341,0043,uno", "2341,xyz,uno"));
+
+        WiredRobotIdTable table = WiredRobotIdFileHelper.getTable(file);
+        assertThat(table.get(0x2341, 0x0043), is(WiredRobotType.UNO));
+        assertThat(table.getErrors().get(3), is("errorConfigProductId"));
+        assertThat(WiredRobotIdFileHelper.getTable(file), sameInstance(table));
+
+        Files.write(file.toPath(), Collections.singletonList("2341,0043,mega"));
+        assertThat(file.setLastModified(file.lastModified() + 1000L), is(true));
+        WiredRobotIdTable reloaded = WiredRobotIdFileHelper.getTable(file);
+        assertThat(reloaded.get(0x2341, 0x0043), is(WiredRobotType.MEGA));
+        assertThat(reloaded.getErrors().isEmpty(), is(true));
+    }
+
+    @Test
+    void get_ShouldFindSameRobotsAsMapLookup_WhenLookingUpDevices() {
+        WiredRobotIdTable table = WiredRobotIdFileHelper.getTable();
+        Map<SerialDevice, WiredRobotType> map = WiredRobotIdFileHelper.load().getFirst();
+        List<SerialDevice> devices = new ArrayList<>(map.keySet());
+        devices.add(new SerialDevice("FFFF", "FFFF", "ttyUSB0", ""));
+
+        // warm up both variants before measuring
+        lookUpInMap(map, devices);
+        lookUpInTable(table, devices);
+
+        long start = System.nanoTime();
+        int foundInMap = lookUpInMap(map, devices);
+        long mapTime = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int foundInTable = lookUpInTable(table, devices);
+        long tableTime = System.nanoTime() - start;
+
+        LOG.info("{} lookups: map {} ns/op, table {} ns/op", LOOKUPS, (double) mapTime / LOOKUPS, (double) tableTime / LOOKUPS);
+        assertThat(foundInTable, is(foundInMap));
+    }
+
+    private static int lookUpInMap(Map<SerialDevice, WiredRobotType> map, List<SerialDevice> devices) {
+        int found = 0;
+        for ( int i = 0; i < LOOKUPS; i++ ) {
+            if ( map.get(devices.get(i % devices.size())) != null ) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    private static int lookUpInTable(WiredRobotIdTable table, List<SerialDevice> devices) {
+        int found = 0;
+        for ( int i = 0; i < LOOKUPS; i++ ) {
+            if ( table.get(devices.get(i % devices.size())) != null ) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    @Test
+    void read_ShouldReturnBytesInOrder_WhenBufferWrapsAround() {
+        ByteRingBuffer buffer = new ByteRingBuffer(8);
+        byte[] dst = new byte[8];
+
+        buffer.write(new byte[] { 1, 2, 3, 4, 5, 6 }, 0, 6);
+        assertThat(buffer.read(dst, 0, 4), is(4));
+        buffer.write(new byte[] { 7, 8, 9, 10, 11 }, 0, 5);
+
+        assertThat(buffer.available(), is(7));
+        assertThat(buffer.read(dst, 0, dst.length), is(7));
+        assertThat(Arrays.copyOf(dst, 7), is(new byte[] { 5, 6, 7, 8, 9, 10, 11 }));
+        assertThat(buffer.read(dst, 0, dst.length), is(0));
+    }
+
+    @Test
+    void write_ShouldOverwriteOldestBytes_WhenBufferIsFull() {
+        ByteRingBuffer buffer = new ByteRingBuffer(4);
+        byte[] dst = new byte[4];
+
+        buffer.write(new byte[] { 1, 2, 3 }, 0, 3);
+        buffer.write(new byte[] { 4, 5, 6 }, 0, 3);
+        assertThat(buffer.read(dst, 0, dst.length), is(4));
+        assertThat(dst, is(new byte[] { 3, 4, 5, 6 }));
+
+        buffer.write(new byte[] { 0, 7, 8, 9, 10, 11, 12 }, 1, 6);
+        assertThat(buffer.peek(dst, 0, dst.length), is(4));
+        assertThat(dst, is(new byte[] { 9, 10, 11, 12 }));
+        assertThat(buffer.getWritten(), is(12L));
+        assertThat(buffer.getOverwritten(), is(4L));
+    }
 }